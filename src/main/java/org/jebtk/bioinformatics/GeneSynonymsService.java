@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,14 +49,15 @@ import org.jebtk.core.text.TextUtils;
 public class GeneSynonymsService {
 
   /**
-   * The constant INSTANCE.
+   * The constant DEFAULT_GENES_FILE.
    */
-  private static final GeneSynonymsService INSTANCE = new GeneSynonymsService();
+  public static final File DEFAULT_GENES_FILE = new File("res/gene_synonyms.txt");
 
   /**
-   * The constant DEFAULT_GENES_FILE.
+   * The constant INSTANCE. Declared after DEFAULT_GENES_FILE, which the
+   * constructor reads.
    */
-  public static final File DEFAULT_GENES_FILE = new File("res/gene_synonyms.txt");
+  private static final GeneSynonymsService INSTANCE = new GeneSynonymsService();
 
   /**
    * Gets the single instance of GeneSynonymsService.
@@ -72,6 +74,12 @@ public class GeneSynonymsService {
   // genome, group, feature name
   private Map<String, Set<String>> map = new HashMap<String, Set<String>>();
 
+  /**
+   * The synonyms keyed by lower case name, so names that differ only in case
+   * share their synonyms.
+   */
+  private Map<String, Set<String>> ignoreCaseMap = new HashMap<String, Set<String>>();
+
   /**
    * Instantiates a new gene synonyms service.
    */
@@ -104,17 +112,35 @@ public class GeneSynonymsService {
 
         tokens = TextUtils.fastSplit(line, TextUtils.TAB_DELIMITER);
 
-        if (!map.containsKey(tokens.get(0))) {
-          map.put(tokens.get(0), new HashSet<String>());
-        }
-
-        map.get(tokens.get(0)).add(tokens.get(1));
+        add(tokens.get(0), tokens.get(1));
       }
     } finally {
       reader.close();
     }
   }
 
+  /**
+   * Add a synonym of a name.
+   *
+   * @param name    the name
+   * @param synonym the synonym
+   */
+  public void add(String name, String synonym) {
+    if (!map.containsKey(name)) {
+      map.put(name, new HashSet<String>());
+    }
+
+    map.get(name).add(synonym);
+
+    String key = name.toLowerCase(Locale.ROOT);
+
+    if (!ignoreCaseMap.containsKey(key)) {
+      ignoreCaseMap.put(key, new HashSet<String>());
+    }
+
+    ignoreCaseMap.get(key).add(synonym);
+  }
+
   /**
    * Gets the synonyms.
    *
@@ -128,4 +154,21 @@ public class GeneSynonymsService {
 
     return new HashSet<String>(map.get(name));
   }
+
+  /**
+   * Gets the synonyms of a name, ignoring case. The synonyms of every name
+   * that differs from it only in case are returned.
+   *
+   * @param name the name
+   * @return the synonyms or null if the name has none.
+   */
+  public Set<String> getSynonymsIgnoreCase(String name) {
+    String key = name.toLowerCase(Locale.ROOT);
+
+    if (!ignoreCaseMap.containsKey(key)) {
+      return null;
+    }
+
+    return new HashSet<String>(ignoreCaseMap.get(key));
+  }
 }
\ No newline at end of file
@@ -166,7 +166,10 @@ public class Search {
    * @param features the features
    * @param skip     the skip
    * @return the int
+   * @deprecated Use {@link org.jebtk.bioinformatics.search.FeatureCoordinates}
+   *             which finds overlapping features exactly in logarithmic time.
    */
+  @Deprecated
   public static final int jumpSearchInner(int value, List<Feature> features, int skip) {
     int index = -1;
 
@@ -242,7 +245,10 @@ public class Search {
    * @param features the features
    * @param skip     the skip
    * @return the int
+   * @deprecated Use {@link org.jebtk.bioinformatics.search.FeatureCoordinates}
+   *             which finds overlapping features exactly in logarithmic time.
    */
+  @Deprecated
   public static final int jumpSearchOuter(int value, List<Feature> features, int skip) {
     int index = -1;
 
@@ -290,6 +296,97 @@ public class Search {
     return index;
   }
 
+  /**
+   * Returns the first index at or after a hint of a feature ending at or after
+   * a value. The features must be sorted so that their ends are ascending, e.g.
+   * ordered features that do not overlap. The search gallops forward from the
+   * hint in doubling steps and then bisects, so when a sorted list of values is
+   * searched, passing each result as the hint for the next costs time
+   * logarithmic in the distance moved rather than in the list size.
+   *
+   * @param value    the value
+   * @param features the features
+   * @param hint     the index to search from
+   * @return the index or the size of the list if no feature ends at or after
+   *         the value.
+   */
+  public static int gallopEnd(int value, List<Feature> features, int hint) {
+    int n = features.size();
+
+    if (hint >= n || features.get(hint).getEnd() >= value) {
+      return hint;
+    }
+
+    // end(lo) < value is always true
+    int lo = hint;
+    int step = 1;
+    int hi = hint + 1;
+
+    while (hi < n && features.get(hi).getEnd() < value) {
+      lo = hi;
+      step <<= 1;
+      hi = hint + step;
+    }
+
+    hi = Math.min(hi, n);
+
+    while (lo + 1 < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (features.get(mid).getEnd() < value) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return hi;
+  }
+
+  /**
+   * Returns the first index at or after a hint of a feature starting after a
+   * value. The features must be sorted by start. Searches in the same way as
+   * {@link #gallopEnd(int, List, int)}.
+   *
+   * @param value    the value
+   * @param features the features
+   * @param hint     the index to search from
+   * @return the index or the size of the list if no feature starts after the
+   *         value.
+   */
+  public static int gallopStart(int value, List<Feature> features, int hint) {
+    int n = features.size();
+
+    if (hint >= n || features.get(hint).getStart() > value) {
+      return hint;
+    }
+
+    // start(lo) <= value is always true
+    int lo = hint;
+    int step = 1;
+    int hi = hint + 1;
+
+    while (hi < n && features.get(hi).getStart() <= value) {
+      lo = hi;
+      step <<= 1;
+      hi = hint + step;
+    }
+
+    hi = Math.min(hi, n);
+
+    while (lo + 1 < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (features.get(mid).getStart() <= value) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return hi;
+  }
+
   /**
    * Performs a basic linear search of the features and return the first position
    * to make the cut.
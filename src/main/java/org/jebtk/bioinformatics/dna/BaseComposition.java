@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.dna;
+
+/**
+ * Base composition of a range of a packed chromosome. Counts are computed
+ * with bit operations and popcounts over whole bytes of the 2 bit and 1 bit
+ * buffers; only the unaligned bases at either end of a range are decoded one
+ * at a time. In the 2 bit encoding N is stored as A, so N never contributes to
+ * the C, G or CpG counts.
+ *
+ * @author Antony Holmes
+ */
+public class BaseComposition {
+
+  /** Selects which value of a composition to report. */
+  public static enum Metric {
+    /** Fraction of non-N bases that are G or C. */
+    GC,
+    /** Observed / expected CpG ratio. */
+    CPG_OE,
+    /** Fraction of bases that are N. */
+    N,
+    /** Fraction of bases that are repeat (soft) masked. */
+    MASKED
+  }
+
+  /** Low bit of each 2 bit base in a byte. */
+  private static final int LO = 0x55;
+
+  private int mLength = 0;
+  private int mC = 0;
+  private int mG = 0;
+  private int mCpG = 0;
+  private int mN = 0;
+  private int mMasked = 0;
+
+  /**
+   * Gets the number of bases.
+   *
+   * @return the length
+   */
+  public int getLength() {
+    return mLength;
+  }
+
+  public int getC() {
+    return mC;
+  }
+
+  public int getG() {
+    return mG;
+  }
+
+  public int getCpG() {
+    return mCpG;
+  }
+
+  public int getN() {
+    return mN;
+  }
+
+  public int getMasked() {
+    return mMasked;
+  }
+
+  /**
+   * Returns the GC fraction of the non-N bases.
+   *
+   * @return the gc
+   */
+  public double gc() {
+    int l = mLength - mN;
+
+    return l > 0 ? (double) (mC + mG) / l : 0;
+  }
+
+  /**
+   * Returns the observed / expected CpG ratio, CpG * L / (C * G).
+   *
+   * @return the double
+   */
+  public double cpgOE() {
+    long cg = (long) mC * mG;
+
+    return cg > 0 ? (double) mCpG * (mLength - mN) / cg : 0;
+  }
+
+  /**
+   * Returns the fraction of bases that are N.
+   *
+   * @return the double
+   */
+  public double nFraction() {
+    return mLength > 0 ? (double) mN / mLength : 0;
+  }
+
+  /**
+   * Returns the fraction of bases that are repeat masked.
+   *
+   * @return the double
+   */
+  public double maskedFraction() {
+    return mLength > 0 ? (double) mMasked / mLength : 0;
+  }
+
+  /**
+   * Returns the value of a metric.
+   *
+   * @param metric the metric
+   * @return the double
+   */
+  public double get(Metric metric) {
+    switch (metric) {
+    case CPG_OE:
+      return cpgOE();
+    case N:
+      return nFraction();
+    case MASKED:
+      return maskedFraction();
+    default:
+      return gc();
+    }
+  }
+
+  /**
+   * Compute the composition of a zero based, inclusive range of a chromosome.
+   *
+   * @param chr   the chr
+   * @param start the start
+   * @param end   the end
+   * @return the base composition
+   */
+  public static BaseComposition count(Chr2Bit chr, int start, int end) {
+    BaseComposition ret = new BaseComposition();
+
+    start = Math.max(0, start);
+    end = Math.min(end, chr.length() - 1);
+
+    if (end < start) {
+      return ret;
+    }
+
+    ret.mLength = end - start + 1;
+
+    count2Bit(chr, start, end, ret);
+
+    ret.mN = count1Bit(chr.getN(), start, end);
+    ret.mMasked = count1Bit(chr.getMask(), start, end);
+
+    return ret;
+  }
+
+  /**
+   * Count C, G and CpG.
+   */
+  private static void count2Bit(Chr2Bit chr, int start, int end, BaseComposition ret) {
+    byte[] dna = chr.getDna();
+
+    int i = start;
+
+    // Previous base was C
+    boolean prevC = false;
+
+    // Unaligned bases at the start
+    while (i <= end && (i & 3) != 0) {
+      prevC = countBase(chr.base(i), prevC, ret);
+      ++i;
+    }
+
+    // Whole bytes of 4 bases
+    while (i + 3 <= end) {
+      int b = dna[i >> 2] & 0xff;
+
+      int lo = b & LO;
+      int hi = (b >> 1) & LO;
+
+      // C = 01, G = 10
+      int c = lo & ~hi;
+      int g = hi & ~lo;
+
+      ret.mC += Integer.bitCount(c);
+      ret.mG += Integer.bitCount(g);
+
+      // CpG within the byte: a C followed by G in the next (lower) base
+      ret.mCpG += Integer.bitCount(c & (g << 2));
+
+      // CpG spanning the previous byte and the first base of this one
+      if (prevC && (g & 0x40) != 0) {
+        ++ret.mCpG;
+      }
+
+      prevC = (c & 1) != 0;
+
+      i += 4;
+    }
+
+    // Unaligned bases at the end
+    while (i <= end) {
+      prevC = countBase(chr.base(i), prevC, ret);
+      ++i;
+    }
+  }
+
+  private static boolean countBase(int v, boolean prevC, BaseComposition ret) {
+    switch (v) {
+    case 1:
+      ++ret.mC;
+      return true;
+    case 2:
+      ++ret.mG;
+
+      if (prevC) {
+        ++ret.mCpG;
+      }
+
+      return false;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Count the set bits of a 1 bit buffer in a range.
+   */
+  private static int count1Bit(byte[] buf, int start, int end) {
+    if (buf == null) {
+      return 0;
+    }
+
+    end = Math.min(end, buf.length * 8 - 1);
+
+    int ret = 0;
+
+    int i = start;
+
+    while (i <= end && (i & 7) != 0) {
+      ret += (buf[i >> 3] >> (7 - (i & 7))) & 1;
+      ++i;
+    }
+
+    while (i + 7 <= end) {
+      ret += Integer.bitCount(buf[i >> 3] & 0xff);
+      i += 8;
+    }
+
+    while (i <= end) {
+      ret += (buf[i >> 3] >> (7 - (i & 7))) & 1;
+      ++i;
+    }
+
+    return ret;
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.dna;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+
+/**
+ * A whole chromosome held in memory in the packed Ext2Bit layout: 4 bases per
+ * byte (A = 0, C = 1, G = 2, T = 3, first base in the highest bits) plus
+ * optional 1 bit per base N and repeat mask buffers (first base in the highest
+ * bit). Instances own their buffers so they can be processed on separate
+ * threads. Positions are zero based.
+ *
+ * @author Antony Holmes
+ */
+public class Chr2Bit {
+  private final Chromosome mChr;
+  private final int mLength;
+  private final byte[] mDna;
+  private final byte[] mN;
+  private final byte[] mMask;
+
+  /**
+   * Instantiates a new packed chromosome.
+   *
+   * @param chr    the chr
+   * @param length the number of bases
+   * @param dna    the 2 bit bases
+   * @param n      the 1 bit N mask, may be null
+   * @param mask   the 1 bit repeat mask, may be null
+   */
+  public Chr2Bit(Chromosome chr, int length, byte[] dna, byte[] n, byte[] mask) {
+    mChr = chr;
+    mLength = Math.min(length, dna.length * 4);
+    mDna = dna;
+    mN = n;
+    mMask = mask;
+  }
+
+  /**
+   * Gets the chr.
+   *
+   * @return the chr
+   */
+  public Chromosome getChr() {
+    return mChr;
+  }
+
+  /**
+   * Returns the number of bases.
+   *
+   * @return the int
+   */
+  public int length() {
+    return mLength;
+  }
+
+  /**
+   * Returns the 2 bit code (0 - 3) of the base at i.
+   *
+   * @param i the i
+   * @return the int
+   */
+  public int base(int i) {
+    return (mDna[i >> 2] >> (6 - ((i & 3) << 1))) & 3;
+  }
+
+  /**
+   * Returns true if the base at i is N.
+   *
+   * @param i the i
+   * @return true, if is n
+   */
+  public boolean isN(int i) {
+    return bit(mN, i);
+  }
+
+  /**
+   * Returns true if the base at i is repeat masked.
+   *
+   * @param i the i
+   * @return true, if is masked
+   */
+  public boolean isMasked(int i) {
+    return bit(mMask, i);
+  }
+
+  /**
+   * Returns true if the chromosome has N data.
+   *
+   * @return true, if successful
+   */
+  public boolean hasN() {
+    return mN != null;
+  }
+
+  /**
+   * Returns true if the chromosome has repeat mask data.
+   *
+   * @return true, if successful
+   */
+  public boolean hasMask() {
+    return mMask != null;
+  }
+
+  /**
+   * Gets the packed 2 bit bases.
+   *
+   * @return the dna
+   */
+  public byte[] getDna() {
+    return mDna;
+  }
+
+  /**
+   * Gets the packed 1 bit N mask.
+   *
+   * @return the n or null.
+   */
+  public byte[] getN() {
+    return mN;
+  }
+
+  /**
+   * Gets the packed 1 bit repeat mask.
+   *
+   * @return the mask or null.
+   */
+  public byte[] getMask() {
+    return mMask;
+  }
+
+  private static boolean bit(byte[] buf, int i) {
+    if (buf == null) {
+      return false;
+    }
+
+    int b = i >> 3;
+
+    return b < buf.length && ((buf[b] >> (7 - (i & 7))) & 1) == 1;
+  }
+}
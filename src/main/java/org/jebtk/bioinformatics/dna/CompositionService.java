@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.dna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.jebtk.bioinformatics.dna.BaseComposition.Metric;
+import org.jebtk.bioinformatics.ext.ucsc.BedGraph;
+import org.jebtk.bioinformatics.ext.ucsc.BedGraphElement;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicElement;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.GenomicType;
+import org.jebtk.core.collections.ArrayListCreator;
+import org.jebtk.core.collections.DefaultTreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes base composition tracks (GC, CpG o/e, N and repeat masked fraction)
+ * directly from the packed chromosome data of an Ext2Bit reader. Each
+ * chromosome is loaded and processed as a separate parallel task.
+ *
+ * @author Antony Holmes
+ */
+public class CompositionService {
+
+  /**
+   * The Class CompositionServiceLoader.
+   */
+  private static class CompositionServiceLoader {
+
+    /** The Constant INSTANCE. */
+    private static final CompositionService INSTANCE = new CompositionService();
+  }
+
+  /**
+   * Gets the single instance of CompositionService.
+   *
+   * @return single instance of CompositionService
+   */
+  public static CompositionService getInstance() {
+    return CompositionServiceLoader.INSTANCE;
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(CompositionService.class);
+
+  private CompositionService() {
+    // Do nothing
+  }
+
+  /**
+   * Compute a metric in fixed size, non-overlapping windows tiling whole
+   * chromosomes.
+   *
+   * @param reader the reader
+   * @param genome the genome
+   * @param chrs   the chromosomes to process
+   * @param window the window size in bp
+   * @param metric the metric
+   * @return a bedgraph with one element per window
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public BedGraph windows(final Ext2BitMemSequenceReader reader, final Genome genome, Collection<Chromosome> chrs,
+      final int window, final Metric metric) throws IOException {
+    LOG.info("Computing {} in {} bp windows...", metric, window);
+
+    final int w = Math.max(1, window);
+
+    List<Chromosome> list = new ArrayList<Chromosome>(chrs);
+
+    Collections.sort(list);
+
+    List<List<GenomicElement>> results = parallel(list, chr -> {
+      Chr2Bit packed = reader.getChr2Bit(genome, chr);
+
+      if (packed == null) {
+        return Collections.emptyList();
+      }
+
+      List<GenomicElement> ret = new ArrayList<GenomicElement>(packed.length() / w + 1);
+
+      for (int s = 0; s < packed.length(); s += w) {
+        int e = Math.min(s + w, packed.length()) - 1;
+
+        BaseComposition c = BaseComposition.count(packed, s, e);
+
+        // Regions are one based
+        ret.add(new BedGraphElement(GenomicType.REGION, new GenomicRegion(chr, s + 1, e + 1), c.get(metric)));
+      }
+
+      return ret;
+    });
+
+    return toBedGraph(metric, results);
+  }
+
+  /**
+   * Compute a metric for each region in a list.
+   *
+   * @param reader  the reader
+   * @param genome  the genome
+   * @param regions the regions
+   * @param metric  the metric
+   * @return a bedgraph with one element per region
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public BedGraph regions(final Ext2BitMemSequenceReader reader, final Genome genome,
+      Collection<GenomicRegion> regions, final Metric metric) throws IOException {
+    final Map<Chromosome, List<GenomicRegion>> chrMap = DefaultTreeMap
+        .create(new ArrayListCreator<GenomicRegion>());
+
+    for (GenomicRegion region : regions) {
+      chrMap.get(region.getChr()).add(region);
+    }
+
+    List<Chromosome> list = new ArrayList<Chromosome>(chrMap.keySet());
+
+    List<List<GenomicElement>> results = parallel(list, chr -> {
+      Chr2Bit packed = reader.getChr2Bit(genome, chr);
+
+      if (packed == null) {
+        return Collections.emptyList();
+      }
+
+      List<GenomicRegion> chrRegions = chrMap.get(chr);
+
+      List<GenomicElement> ret = new ArrayList<GenomicElement>(chrRegions.size());
+
+      for (GenomicRegion region : chrRegions) {
+        BaseComposition c = BaseComposition.count(packed, region.getStart() - 1, region.getEnd() - 1);
+
+        ret.add(new BedGraphElement(GenomicType.REGION, region, c.get(metric)));
+      }
+
+      return ret;
+    });
+
+    return toBedGraph(metric, results);
+  }
+
+  /**
+   * Compute the full composition of a single region.
+   *
+   * @param reader the reader
+   * @param genome the genome
+   * @param region the region
+   * @return the base composition
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public BaseComposition composition(Ext2BitMemSequenceReader reader, Genome genome, GenomicRegion region)
+      throws IOException {
+    Chr2Bit packed = reader.getChr2Bit(genome, region.getChr());
+
+    if (packed == null) {
+      return new BaseComposition();
+    }
+
+    return BaseComposition.count(packed, region.getStart() - 1, region.getEnd() - 1);
+  }
+
+  /**
+   * Processes one chromosome.
+   */
+  private static interface ChrTask {
+    public List<GenomicElement> process(Chromosome chr) throws IOException;
+  }
+
+  /**
+   * Run a task on each chromosome in parallel, returning the results in
+   * chromosome order.
+   */
+  private static List<List<GenomicElement>> parallel(List<Chromosome> chrs, ChrTask task) throws IOException {
+    try {
+      return chrs.parallelStream().map(chr -> {
+        try {
+          return task.process(chr);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }).collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static BedGraph toBedGraph(Metric metric, List<List<GenomicElement>> results) {
+    BedGraph ret = new BedGraph(metric.toString().toLowerCase());
+
+    for (List<GenomicElement> elements : results) {
+      ret.addAll(elements);
+    }
+
+    return ret;
+  }
+}
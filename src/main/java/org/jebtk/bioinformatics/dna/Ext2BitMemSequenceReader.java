@@ -27,6 +27,7 @@
  */
 package org.jebtk.bioinformatics.dna;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
@@ -37,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
 import org.jebtk.bioinformatics.genomic.Genome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
 import org.jebtk.bioinformatics.genomic.RepeatMaskType;
@@ -174,11 +176,24 @@ public class Ext2BitMemSequenceReader extends ChrSequenceReader {
    * edu.columbia.rdf.lib.bioinformatics.genome.RepeatMaskType)
    */
   @Override
-  public final SequenceRegion getSequence(Genome genome, GenomicRegion region, boolean displayUpper,
+  public final synchronized SequenceRegion getSequence(Genome genome, GenomicRegion region, boolean displayUpper,
       RepeatMaskType repeatMaskType) throws IOException {
     Chromosome chr = region.getChr();
 
     // Cache file names
+    addFiles(chr);
+
+    return new SequenceRegion(region, getSequence2Bit(region, displayUpper, repeatMaskType));
+  }
+
+  /**
+   * Cache the file names associated with a chromosome. Must be called whilst
+   * holding the reader's lock since the file maps are shared with
+   * {@link #getChr2Bit(Genome, Chromosome)}.
+   *
+   * @param chr the chr
+   */
+  private void addFiles(Chromosome chr) {
     if (!mFileMap.containsKey(chr)) {
       addFile(chr, ".dna.2bit", mFile, mFileMap);
 
@@ -186,8 +201,78 @@ public class Ext2BitMemSequenceReader extends ChrSequenceReader {
 
       addFile(chr, ".mask.1bit", mFile, mMaskFileMap);
     }
+  }
 
-    return new SequenceRegion(region, getSequence2Bit(region, displayUpper, repeatMaskType));
+  /**
+   * Load an entire chromosome in its packed form. Unlike
+   * {@link #getSequence(Genome, GenomicRegion, boolean, RepeatMaskType)}, the
+   * returned buffers are newly allocated and not shared with the reader, so
+   * several chromosomes can be loaded and processed in parallel.
+   *
+   * @param genome the genome, used to look up the chromosome length.
+   * @param chr    the chr
+   * @return the packed chromosome or null if there is no data for it.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Chr2Bit getChr2Bit(Genome genome, Chromosome chr) throws IOException {
+    Path dnaFile;
+    Path nFile;
+    Path maskFile;
+
+    synchronized (this) {
+      addFiles(chr);
+
+      dnaFile = mFileMap.get(chr);
+      nFile = mNFileMap.get(chr);
+      maskFile = mMaskFileMap.get(chr);
+    }
+
+    byte[] dna = readEncodedBases(dnaFile);
+
+    if (dna == null) {
+      return null;
+    }
+
+    int length = ChromosomeService.getInstance().size(genome, chr);
+
+    if (length < 1) {
+      // If the size is unknown, assume the buffer is full. At worst this
+      // adds up to 3 trailing bases of padding.
+      length = dna.length * 4;
+    }
+
+    return new Chr2Bit(chr, length, dna, readEncodedBases(nFile), readEncodedBases(maskFile));
+  }
+
+  /**
+   * Read all of the encoded bytes in a file into a new buffer.
+   *
+   * @param file the file
+   * @return the bytes or null if file is null.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static byte[] readEncodedBases(Path file) throws IOException {
+    if (file == null) {
+      return null;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    InputStream in = FileUtils.newBufferedInputStream(file);
+
+    try {
+      byte[] buf = new byte[65536];
+
+      int n;
+
+      while ((n = in.read(buf)) != -1) {
+        out.write(buf, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+
+    return out.toByteArray();
   }
 
   private static boolean addFile(Chromosome chr, String ext, Path dir, Map<Chromosome, Path> fileMap) {
@@ -225,8 +310,8 @@ public class Ext2BitMemSequenceReader extends ChrSequenceReader {
    * @return the sequence4 bit
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  public Sequence getSequence2Bit(GenomicRegion region, boolean displayUpper, RepeatMaskType repeatMaskType)
-      throws IOException {
+  public synchronized Sequence getSequence2Bit(GenomicRegion region, boolean displayUpper,
+      RepeatMaskType repeatMaskType) throws IOException {
 
     Chromosome chr = region.getChr();
     int start = region.getStart();
@@ -489,7 +574,7 @@ public class Ext2BitMemSequenceReader extends ChrSequenceReader {
    * 
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  public int getN(Chromosome chr, int start, int end, byte[] ret) throws IOException {
+  public synchronized int getN(Chromosome chr, int start, int end, byte[] ret) throws IOException {
     if (!mNFileMap.containsKey(chr)) {
       return -1;
     }
@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.dna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.core.collections.ArrayListCreator;
+import org.jebtk.core.collections.DefaultTreeMap;
+
+/**
+ * Counts k-mers (k &lt;= 31) directly from packed 2 bit chromosome data. Each
+ * k-mer is rolled into a 64 bit integer as bases are read so no strings are
+ * created. k-mers spanning an N are skipped. In canonical mode a k-mer and its
+ * reverse complement are counted together under whichever encoding is smaller.
+ *
+ * @author Antony Holmes
+ */
+public class KmerCounter {
+
+  /** The largest k that fits in a 64 bit k-mer. */
+  public static final int MAX_K = 31;
+
+  private final int mK;
+
+  private final boolean mCanonical;
+
+  /** Mask to keep the lowest 2k bits. */
+  private final long mMask;
+
+  /** Shift to place a base in the highest position of a k-mer. */
+  private final int mShift;
+
+  /**
+   * Instantiates a new k-mer counter.
+   *
+   * @param k         the k
+   * @param canonical true to count a k-mer and its reverse complement together.
+   */
+  public KmerCounter(int k, boolean canonical) {
+    if (k < 1 || k > MAX_K) {
+      throw new IllegalArgumentException("k must be between 1 and " + MAX_K + ".");
+    }
+
+    mK = k;
+    mCanonical = canonical;
+    mMask = (1L << (2 * k)) - 1;
+    mShift = 2 * (k - 1);
+  }
+
+  /**
+   * Gets the k.
+   *
+   * @return the k
+   */
+  public int getK() {
+    return mK;
+  }
+
+  /**
+   * Count k-mers across a whole chromosome.
+   *
+   * @param chr    the chr
+   * @param counts the counts
+   */
+  public void count(Chr2Bit chr, KmerCounts counts) {
+    count(chr, 0, chr.length() - 1, counts);
+  }
+
+  /**
+   * Count the k-mers lying entirely within a zero based range of a chromosome.
+   *
+   * @param chr    the chr
+   * @param start  the zero based start
+   * @param end    the zero based end (inclusive)
+   * @param counts the counts
+   */
+  public void count(Chr2Bit chr, int start, int end, KmerCounts counts) {
+    start = Math.max(0, start);
+    end = Math.min(end, chr.length() - 1);
+
+    byte[] dna = chr.getDna();
+    byte[] n = chr.getN();
+
+    long fwd = 0;
+    long rev = 0;
+
+    // Number of valid bases in the current k-mer
+    int l = 0;
+
+    int i = start;
+
+    while (i <= end) {
+      if (n != null) {
+        int b = i >> 3;
+
+        // Skip whole bytes of N in one step
+        if ((i & 7) == 0 && b < n.length && n[b] == -1) {
+          l = 0;
+          i += 8;
+          continue;
+        }
+
+        if (b < n.length && ((n[b] >> (7 - (i & 7))) & 1) == 1) {
+          l = 0;
+          ++i;
+          continue;
+        }
+      }
+
+      int v = (dna[i >> 2] >> (6 - ((i & 3) << 1))) & 3;
+
+      fwd = ((fwd << 2) | v) & mMask;
+      rev = (rev >>> 2) | ((long) (3 - v) << mShift);
+
+      if (++l >= mK) {
+        if (mCanonical) {
+          counts.increment(Math.min(fwd, rev));
+        } else {
+          counts.increment(fwd);
+        }
+      }
+
+      ++i;
+    }
+  }
+
+  /**
+   * Count the k-mers in a list of regions. Regions are grouped by chromosome
+   * so each chromosome is loaded once.
+   *
+   * @param reader  the reader
+   * @param genome  the genome
+   * @param regions the regions
+   * @return the k-mer counts
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public KmerCounts count(Ext2BitMemSequenceReader reader, Genome genome, Collection<GenomicRegion> regions)
+      throws IOException {
+    final Map<Chromosome, List<GenomicRegion>> chrMap = DefaultTreeMap
+        .create(new ArrayListCreator<GenomicRegion>());
+
+    for (GenomicRegion region : regions) {
+      chrMap.get(region.getChr()).add(region);
+    }
+
+    return count(reader, genome, chrMap.keySet(), chrMap);
+  }
+
+  /**
+   * Count the k-mers across whole chromosomes.
+   *
+   * @param reader the reader
+   * @param genome the genome
+   * @param chrs   the chrs
+   * @return the k-mer counts
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public KmerCounts countChrs(Ext2BitMemSequenceReader reader, Genome genome, Collection<Chromosome> chrs)
+      throws IOException {
+    return count(reader, genome, chrs, null);
+  }
+
+  /**
+   * Count k-mers with one task per chromosome running in parallel. Each task
+   * loads its chromosome, counts into its own table and the tables are merged
+   * at the end, so no locking is needed whilst counting.
+   *
+   * @param reader the reader
+   * @param genome the genome
+   * @param chrs   the chrs
+   * @param chrMap optional regions per chromosome. If null whole chromosomes
+   *               are counted.
+   * @return the k-mer counts
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private KmerCounts count(final Ext2BitMemSequenceReader reader, final Genome genome, Collection<Chromosome> chrs,
+      final Map<Chromosome, List<GenomicRegion>> chrMap) throws IOException {
+    List<Chromosome> list = new ArrayList<Chromosome>(chrs);
+
+    try {
+      return list.parallelStream().map(chr -> {
+        KmerCounts counts = new KmerCounts(mK);
+
+        Chr2Bit packed;
+
+        try {
+          packed = reader.getChr2Bit(genome, chr);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+
+        if (packed != null) {
+          if (chrMap != null) {
+            for (GenomicRegion region : chrMap.get(chr)) {
+              // Regions are one based
+              count(packed, region.getStart() - 1, region.getEnd() - 1, counts);
+            }
+          } else {
+            count(packed, counts);
+          }
+        }
+
+        return counts;
+      }).reduce((c1, c2) -> {
+        // Always merge the smaller table into the larger
+        if (c1.size() < c2.size()) {
+          c2.addAll(c1);
+          return c2;
+        } else {
+          c1.addAll(c2);
+          return c1;
+        }
+      }).orElse(new KmerCounts(mK));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Encode a k-mer string into 2 bits per base.
+   *
+   * @param kmer the kmer
+   * @return the encoded k-mer or -1 if it contains a base other than ACGT.
+   */
+  public static long encode(String kmer) {
+    long ret = 0;
+
+    for (int i = 0; i < kmer.length(); ++i) {
+      int v;
+
+      switch (kmer.charAt(i)) {
+      case 'A':
+      case 'a':
+        v = 0;
+        break;
+      case 'C':
+      case 'c':
+        v = 1;
+        break;
+      case 'G':
+      case 'g':
+        v = 2;
+        break;
+      case 'T':
+      case 't':
+        v = 3;
+        break;
+      default:
+        return -1;
+      }
+
+      ret = (ret << 2) | v;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Decode a 2 bit k-mer back into a string.
+   *
+   * @param kmer the kmer
+   * @param k    the k
+   * @return the string
+   */
+  public static String decode(long kmer, int k) {
+    char[] buf = new char[k];
+
+    for (int i = k - 1; i >= 0; --i) {
+      buf[i] = DNASequenceReader.toChar((int) (kmer & 3));
+      kmer >>>= 2;
+    }
+
+    return new String(buf);
+  }
+}
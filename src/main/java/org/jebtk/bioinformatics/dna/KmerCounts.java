@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.dna;
+
+import java.util.Arrays;
+
+/**
+ * Counts of 2 bit encoded k-mers stored in a primitive open addressing hash
+ * table (linear probing), so counting does not box keys or allocate entries.
+ * Encoded k-mers are never negative so -1 marks an empty slot.
+ *
+ * @author Antony Holmes
+ */
+public class KmerCounts {
+
+  /**
+   * Receives each k-mer and its count.
+   */
+  public static interface KmerVisitor {
+    public void visit(long kmer, long count);
+  }
+
+  private static final long EMPTY = -1;
+
+  private static final double LOAD_FACTOR = 0.7;
+
+  /** The largest power of 2 array size. */
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private final int mK;
+
+  /** The largest array size this table may grow to. */
+  private final int mMaxCapacity;
+
+  private long[] mKeys;
+
+  private long[] mCounts;
+
+  private int mSize = 0;
+
+  private int mThreshold;
+
+  /**
+   * Instantiates a new k-mer count table.
+   *
+   * @param k the k
+   */
+  public KmerCounts(int k) {
+    this(k, 1024);
+  }
+
+  /**
+   * Instantiates a new k-mer count table.
+   *
+   * @param k        the k
+   * @param capacity the expected number of distinct k-mers
+   */
+  public KmerCounts(int k, int capacity) {
+    this(k, capacity, MAX_CAPACITY);
+  }
+
+  /**
+   * Instantiates a new k-mer count table that never grows beyond a number of
+   * slots. Once it reaches that size the table fills past its load factor
+   * until only one slot is empty, after which adding another distinct k-mer
+   * throws an IllegalStateException.
+   *
+   * @param k           the k
+   * @param capacity    the expected number of distinct k-mers
+   * @param maxCapacity the largest number of slots, rounded down to a power of
+   *                    2 between 16 and 2^30.
+   */
+  public KmerCounts(int k, int capacity, int maxCapacity) {
+    mK = k;
+    mMaxCapacity = Math.max(16, Integer.highestOneBit(Math.min(maxCapacity, MAX_CAPACITY)));
+
+    // For small k, never allocate more slots than there are k-mers
+    if (k < 16) {
+      capacity = Math.min(capacity, 1 << (2 * k));
+    }
+
+    long slots = Math.max(16, (long) (capacity / LOAD_FACTOR));
+
+    int n = slots >= mMaxCapacity ? mMaxCapacity : Integer.highestOneBit((int) slots - 1) << 1;
+
+    alloc(n);
+  }
+
+  private void alloc(int n) {
+    mKeys = new long[n];
+    mCounts = new long[n];
+    Arrays.fill(mKeys, EMPTY);
+    mThreshold = (int) (n * LOAD_FACTOR);
+  }
+
+  /**
+   * Gets the k.
+   *
+   * @return the k
+   */
+  public int getK() {
+    return mK;
+  }
+
+  /**
+   * Returns the number of distinct k-mers.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Increment the count of a k-mer.
+   *
+   * @param kmer the kmer
+   */
+  public void increment(long kmer) {
+    add(kmer, 1);
+  }
+
+  /**
+   * Add to the count of a k-mer.
+   *
+   * @param kmer  the kmer
+   * @param count the count
+   */
+  public void add(long kmer, long count) {
+    int mask = mKeys.length - 1;
+    int i = hash(kmer) & mask;
+
+    while (true) {
+      long key = mKeys[i];
+
+      if (key == kmer) {
+        mCounts[i] += count;
+        return;
+      }
+
+      if (key == EMPTY) {
+        mKeys[i] = kmer;
+        mCounts[i] = count;
+
+        if (++mSize > mThreshold) {
+          rehash();
+        }
+
+        return;
+      }
+
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Returns the count of a k-mer.
+   *
+   * @param kmer the kmer
+   * @return the count
+   */
+  public long get(long kmer) {
+    int mask = mKeys.length - 1;
+    int i = hash(kmer) & mask;
+
+    while (true) {
+      long key = mKeys[i];
+
+      if (key == kmer) {
+        return mCounts[i];
+      }
+
+      if (key == EMPTY) {
+        return 0;
+      }
+
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Returns the count of a k-mer.
+   *
+   * @param kmer the kmer, e.g. ACGT
+   * @return the count
+   */
+  public long get(String kmer) {
+    return get(KmerCounter.encode(kmer));
+  }
+
+  /**
+   * Add all of the counts from another table to this one.
+   *
+   * @param counts the counts
+   */
+  public void addAll(KmerCounts counts) {
+    for (int i = 0; i < counts.mKeys.length; ++i) {
+      if (counts.mKeys[i] != EMPTY) {
+        add(counts.mKeys[i], counts.mCounts[i]);
+      }
+    }
+  }
+
+  /**
+   * Visit every k-mer in the table in no particular order.
+   *
+   * @param visitor the visitor
+   */
+  public void visit(KmerVisitor visitor) {
+    for (int i = 0; i < mKeys.length; ++i) {
+      if (mKeys[i] != EMPTY) {
+        visitor.visit(mKeys[i], mCounts[i]);
+      }
+    }
+  }
+
+  private void rehash() {
+    if (mKeys.length >= mMaxCapacity) {
+      if (mSize < mKeys.length - 1) {
+        // Cannot grow so fill beyond the load factor, always leaving one
+        // empty slot so that probes terminate
+        mThreshold = mKeys.length - 2;
+        return;
+      }
+
+      throw new IllegalStateException("Too many distinct k-mers to count.");
+    }
+
+    long[] keys = mKeys;
+    long[] counts = mCounts;
+
+    alloc(keys.length * 2);
+
+    mSize = 0;
+
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i] != EMPTY) {
+        add(keys[i], counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Mix the bits of the key so that k-mers sharing a prefix do not cluster.
+   *
+   * @param key the key
+   * @return the int
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+
+    return (int) key;
+  }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.dna;
+
+import java.util.Arrays;
+
+/**
+ * Stores the N or repeat mask blocks of a chromosome as sorted primitive
+ * start/end arrays. Blocks are closed intervals (both ends inclusive) in
+ * whatever coordinate system the caller uses. A region lookup costs one binary
+ * search for the first block and then walks forward linearly, so no objects
+ * are created per base.
+ *
+ * @author Antony Holmes
+ */
+public class SequenceBlocks {
+
+  /** The m starts. */
+  private int[] mStarts;
+
+  /** The m ends. */
+  private int[] mEnds;
+
+  /** The m size. */
+  private int mSize = 0;
+
+  /** Whether the blocks are known to be sorted and non-overlapping. */
+  private boolean mSorted = true;
+
+  /**
+   * Instantiates a new empty set of blocks.
+   */
+  public SequenceBlocks() {
+    this(16);
+  }
+
+  /**
+   * Instantiates a new set of blocks.
+   *
+   * @param capacity the initial capacity
+   */
+  public SequenceBlocks(int capacity) {
+    capacity = Math.max(1, capacity);
+
+    mStarts = new int[capacity];
+    mEnds = new int[capacity];
+  }
+
+  /**
+   * Add a block.
+   *
+   * @param start the start
+   * @param end   the end
+   */
+  public void add(int start, int end) {
+    if (start > end) {
+      int t = start;
+      start = end;
+      end = t;
+    }
+
+    if (mSize == mStarts.length) {
+      int n = mSize * 2;
+
+      mStarts = Arrays.copyOf(mStarts, n);
+      mEnds = Arrays.copyOf(mEnds, n);
+    }
+
+    if (mSize > 0 && start <= mEnds[mSize - 1]) {
+      mSorted = false;
+    }
+
+    mStarts[mSize] = start;
+    mEnds[mSize] = end;
+
+    ++mSize;
+  }
+
+  /**
+   * Sort the blocks and merge any that overlap so that both the start and end
+   * arrays are in ascending order. Blocks read from a 2bit file are normally
+   * already in order so this is usually a no-op.
+   */
+  private void organize() {
+    if (mSorted) {
+      return;
+    }
+
+    long[] packed = new long[mSize];
+
+    for (int i = 0; i < mSize; ++i) {
+      packed[i] = ((long) mStarts[i] << 32) | (mEnds[i] & 0xffffffffL);
+    }
+
+    Arrays.sort(packed);
+
+    int n = 0;
+
+    for (int i = 0; i < mSize; ++i) {
+      int start = (int) (packed[i] >> 32);
+      int end = (int) packed[i];
+
+      if (n > 0 && start <= mEnds[n - 1] + 1) {
+        mEnds[n - 1] = Math.max(mEnds[n - 1], end);
+      } else {
+        mStarts[n] = start;
+        mEnds[n] = end;
+        ++n;
+      }
+    }
+
+    mSize = n;
+    mSorted = true;
+  }
+
+  /**
+   * Returns the number of blocks.
+   *
+   * @return the int
+   */
+  public int size() {
+    organize();
+
+    return mSize;
+  }
+
+  /**
+   * Returns the index of the first block whose end is at or after p.
+   *
+   * @param p the position
+   * @return the index or size() if there is no such block.
+   */
+  public int find(int p) {
+    organize();
+
+    int is = 0;
+    int ie = mSize;
+
+    while (is < ie) {
+      int im = (is + ie) >>> 1;
+
+      if (mEnds[im] < p) {
+        is = im + 1;
+      } else {
+        ie = im;
+      }
+    }
+
+    return is;
+  }
+
+  /**
+   * Returns true if any block overlaps the closed range [start, end].
+   *
+   * @param start the start
+   * @param end   the end
+   * @return true, if successful
+   */
+  public boolean overlaps(int start, int end) {
+    int i = find(start);
+
+    return i < mSize && mStarts[i] <= end;
+  }
+
+  /**
+   * Set every base of buf covered by a block to c.
+   *
+   * @param s   the position of buf[0]
+   * @param l   the number of bases in buf to consider
+   * @param c   the replacement character
+   * @param buf the buffer
+   */
+  public void fill(int s, int l, char c, char[] buf) {
+    int e = s + l - 1;
+
+    for (int i = find(s); i < mSize && mStarts[i] <= e; ++i) {
+      int bs = Math.max(s, mStarts[i]) - s;
+      int be = Math.min(e, mEnds[i]) - s;
+
+      Arrays.fill(buf, bs, be + 1, c);
+    }
+  }
+
+  /**
+   * Convert every base of buf covered by a block to lowercase.
+   *
+   * @param s   the position of buf[0]
+   * @param l   the number of bases in buf to consider
+   * @param buf the buffer
+   */
+  public void toLower(int s, int l, char[] buf) {
+    int e = s + l - 1;
+
+    for (int i = find(s); i < mSize && mStarts[i] <= e; ++i) {
+      int bs = Math.max(s, mStarts[i]) - s;
+      int be = Math.min(e, mEnds[i]) - s;
+
+      for (int j = bs; j <= be; ++j) {
+        buf[j] = DNASequenceReader.toLower(buf[j]);
+      }
+    }
+  }
+}
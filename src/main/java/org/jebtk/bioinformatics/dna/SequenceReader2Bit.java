@@ -31,13 +31,8 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
-import org.jebtk.bioinformatics.gapsearch.BinaryGapSearch;
-import org.jebtk.bioinformatics.gapsearch.BinarySearch;
-import org.jebtk.bioinformatics.gapsearch.GappedSearchFeatures;
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.Genome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
@@ -55,13 +50,11 @@ import org.jebtk.core.io.FileUtils;
  */
 public class SequenceReader2Bit extends ChrSequenceReader {
 
-  /** The m N map. */
-  private BinaryGapSearch<GenomicRegion> mNMap = new BinarySearch<GenomicRegion>(); // new
-                                                                                    // BinarySearch<GenomicRegion>();
+  /** The N blocks of each chromosome. */
+  private Map<Chromosome, SequenceBlocks> mNMap = new HashMap<Chromosome, SequenceBlocks>(100);
 
-  /** The m mask map. */
-  private BinaryGapSearch<GenomicRegion> mMaskMap = new BinarySearch<GenomicRegion>(); // new
-                                                                                       // BinarySearch<GenomicRegion>();
+  /** The repeat mask blocks of each chromosome. */
+  private Map<Chromosome, SequenceBlocks> mMaskMap = new HashMap<Chromosome, SequenceBlocks>(100);
 
   /** The m offset map. */
   private Map<Chromosome, Integer> mOffsetMap = new HashMap<Chromosome, Integer>(100);
@@ -127,19 +120,23 @@ public class SequenceReader2Bit extends ChrSequenceReader {
 
       int nc = in.readInt();
 
-      for (int i = 0; i < nc; ++i) {
-        GenomicRegion region = new GenomicRegion(chr, in.readInt(), in.readInt());
+      SequenceBlocks blocks = new SequenceBlocks(nc);
 
-        mNMap.add(region, region);
+      for (int i = 0; i < nc; ++i) {
+        blocks.add(in.readInt(), in.readInt());
       }
 
+      mNMap.put(chr, blocks);
+
       int mc = in.readInt();
 
-      for (int i = 0; i < mc; ++i) {
-        GenomicRegion region = new GenomicRegion(chr, in.readInt(), in.readInt());
+      blocks = new SequenceBlocks(mc);
 
-        mMaskMap.add(region, region);
+      for (int i = 0; i < mc; ++i) {
+        blocks.add(in.readInt(), in.readInt());
       }
+
+      mMaskMap.put(chr, blocks);
     } finally {
       in.close();
     }
@@ -204,38 +201,32 @@ public class SequenceReader2Bit extends ChrSequenceReader {
         break;
       }
 
-      char c = toChar(v); // , repeatMaskType);
+      buffer[i] = toChar(v);
 
-      GenomicRegion testRegion = new GenomicRegion(chr, s, s);
+      ++s;
+    }
 
-      //
-      // Determine if N
-      //
+    // Overlay the N and mask blocks. Each is a single binary search to the
+    // first block touching the region followed by a linear walk.
+    s = start - 1;
 
-      if (overlaps(mNMap, testRegion)) {
-        c = 'N';
-      }
+    SequenceBlocks blocks = mNMap.get(chr);
 
-      //
-      // Determine if masked
-      //
+    if (blocks != null) {
+      blocks.fill(s, l, 'N', buffer);
+    }
 
-      // System.err.println("test repeat region " + testRegion);
+    if (repeatMaskType != RepeatMaskType.UPPERCASE) {
+      blocks = mMaskMap.get(chr);
 
-      if (repeatMaskType != RepeatMaskType.UPPERCASE) {
-        if (overlaps(mMaskMap, testRegion)) {
-          if (repeatMaskType == RepeatMaskType.LOWERCASE) {
-            c = toLower(c);
-          } else {
-            // Mask to N
-            c = 'N';
-          }
+      if (blocks != null) {
+        if (repeatMaskType == RepeatMaskType.LOWERCASE) {
+          blocks.toLower(s, l, buffer);
+        } else {
+          // Mask to N
+          blocks.fill(s, l, 'N', buffer);
         }
       }
-
-      buffer[i] = c;
-
-      ++s;
     }
 
     String dna = new String(buffer);
@@ -247,27 +238,6 @@ public class SequenceReader2Bit extends ChrSequenceReader {
     }
   }
 
-  /**
-   * Determine if region overlaps an N or mask region.
-   *
-   * @param binSearch  the bin search
-   * @param testRegion the test region
-   * @return true, if successful
-   */
-  private static boolean overlaps(BinaryGapSearch<GenomicRegion> binSearch, GenomicRegion testRegion) {
-    List<GappedSearchFeatures<GenomicRegion>> allFeatures = binSearch.getFeatures(testRegion);
-
-    for (GappedSearchFeatures<GenomicRegion> feature : allFeatures) {
-      for (Entry<GenomicRegion, List<GenomicRegion>> r : feature) {
-        if (GenomicRegion.overlaps(r.getKey(), testRegion)) {
-          return true;
-        }
-      }
-    }
-
-    return false;
-  }
-
   /**
    * Gets the bytes4 bit.
    *
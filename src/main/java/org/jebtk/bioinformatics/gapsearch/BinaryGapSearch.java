@@ -28,7 +28,9 @@
 package org.jebtk.bioinformatics.gapsearch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -54,10 +56,19 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
   /**
    * The member auto sorted.
    */
-  protected boolean mAutoSorted = false;
+  protected volatile boolean mAutoSorted = false;
 
-  /** The m bins. */
-  protected IterMap<Chromosome, List<Integer>> mBins = new IterHashMap<Chromosome, List<Integer>>(25);
+  /**
+   * The sorted bins of each chromosome. This is replaced, never modified,
+   * when the bins are sorted so readers always see a complete snapshot.
+   */
+  protected volatile IterMap<Chromosome, List<Integer>> mBins = new IterHashMap<Chromosome, List<Integer>>(25);
+
+  /**
+   * Features ordered by start for nearest feature queries, built on the first
+   * such query after features are added.
+   */
+  private volatile Map<Chromosome, IntervalIndex> mNearest = null;
 
   /**
    * Instantiates a new binary gap search.
@@ -75,33 +86,47 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
     super(binSize);
   }
 
-  /*
-   * (non-Javadoc)
-   * 
-   * @see edu.columbia.rdf.lib.bioinformatics.gapsearch.GapSearch#addFeature(edu.
-   * columbia.rdf.lib.bioinformatics.genome.Chromosome, int, int,
-   * java.lang.Object)
+  /**
+   * Discard the sorted bins and nearest feature arrays so they are rebuilt
+   * to include newly added features.
    */
   @Override
-  public void add(GenomicRegion region, T feature) {
-    super.add(region, feature);
-
+  protected void invalidate() {
     mAutoSorted = false;
+    mNearest = null;
   }
 
   /**
-   * Organize if not done so.
+   * Sort the bins and freeze the search.
+   */
+  @Override
+  public void freeze() {
+    organize();
+
+    super.freeze();
+  }
+
+  /**
+   * Organize if not done so. The sorted bins are built in a new map which is
+   * then published, so concurrent queries can trigger this safely and only
+   * one will do the work.
    */
   protected void organize() {
-    if (!mAutoSorted) {
+    if (mAutoSorted) {
+      return;
+    }
 
-      mBins.clear();
+    synchronized (this) {
+      if (!mAutoSorted) {
+        IterMap<Chromosome, List<Integer>> bins = new IterHashMap<Chromosome, List<Integer>>(25);
 
-      for (Entry<Chromosome, IterMap<Integer, GappedSearchFeatures<T>>> f : mFeatures) {
-        mBins.put(f.getKey(), CollectionUtils.sortKeys(f.getValue()));
-      }
+        for (Entry<Chromosome, IterMap<Integer, GappedSearchFeatures<T>>> f : mFeatures) {
+          bins.put(f.getKey(), Collections.unmodifiableList(CollectionUtils.sortKeys(f.getValue())));
+        }
 
-      mAutoSorted = true;
+        mBins = bins;
+        mAutoSorted = true;
+      }
     }
   }
 
@@ -113,15 +138,27 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
    */
   @Override
   public List<GappedSearchFeatures<T>> getFeatures(Chromosome chr, int start, int end) {
+    Map<Chromosome, FrozenBins<T>> frozen = mFrozen;
+
+    if (frozen != null) {
+      FrozenBins<T> bins = frozen.get(chr);
+
+      if (bins == null) {
+        return Collections.emptyList();
+      }
+
+      return bins.range(getStartIndex(bins.mBins, start / mBinSize), getEndIndex(bins.mBins, end / mBinSize));
+    }
+
     // Make sure everything is sorted before doing anything
     organize();
 
-    Map<Integer, GappedSearchFeatures<T>> features = mFeatures.get(chr);
+    Map<Integer, GappedSearchFeatures<T>> features = getChrFeatures(chr);
     List<Integer> bins = mBins.get(chr);
 
     // SysUtils.err().println("bins", chr, mBins.keySet());
 
-    if (features == null || features.size() == 0) {
+    if (features == null || bins == null || features.size() == 0) {
       return Collections.emptyList();
     }
 
@@ -313,6 +350,22 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
     return is;
   }
 
+  /**
+   * Gets the start index in an array of ordered bins.
+   *
+   * @param bins  the bins
+   * @param start the start
+   * @return The start index in the bins that is closest (or contains) to the
+   *         start.
+   * @see #getStartIndex(List, int)
+   */
+  public static int getStartIndex(int[] bins, int start) {
+    int i = Arrays.binarySearch(bins, start);
+
+    // Otherwise the bin before the insertion point
+    return i >= 0 ? i : Math.max(0, -i - 2);
+  }
+
   /**
    * Gets the closest index of features that either overlap this position or the
    * index of features just outside this point.
@@ -365,6 +418,25 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
     return ie;
   }
 
+  /**
+   * Gets the end index in an array of ordered bins.
+   *
+   * @param bins the bins
+   * @param end  the end
+   * @return the end index
+   * @see #getEndIndex(List, int)
+   */
+  public static int getEndIndex(int[] bins, int end) {
+    if (bins.length < 2) {
+      return bins.length - 1;
+    }
+
+    int i = Arrays.binarySearch(bins, end);
+
+    // Otherwise the bin at the insertion point
+    return i >= 0 ? i : Math.min(-i - 1, bins.length - 1);
+  }
+
   /**
    * Contains chr.
    *
@@ -384,7 +456,11 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
   public int size(Chromosome chr) {
     int ret = 0;
 
-    IterMap<Integer, GappedSearchFeatures<T>> features = mFeatures.get(chr);
+    IterMap<Integer, GappedSearchFeatures<T>> features = getChrFeatures(chr);
+
+    if (features == null) {
+      return 0;
+    }
 
     for (Entry<Integer, GappedSearchFeatures<T>> f : features) {
       ret += f.getValue().size();
@@ -414,6 +490,93 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
     return mBins.get(chr);
   }
 
+  /**
+   * Find the k features nearest to a region.
+   *
+   * @param region the region
+   * @param k      the number of features to find
+   * @return the features in order of distance.
+   */
+  public List<T> getNearestFeatures(GenomicRegion region, int k) {
+    NearestFeatures<T> ret = new NearestFeatures<T>();
+
+    getNearestFeatures(region, k, -1, Direction.BOTH, ret);
+
+    return ret.toList();
+  }
+
+  /**
+   * Find the k features nearest to a region, ordered by the number of bases
+   * between the region and each feature (0 if they overlap). Unlike
+   * {@link #getClosestFeatures(Chromosome, int, int, int)}, which ranks whole
+   * bins, this works on the features themselves and walks outwards from the
+   * region over arrays sorted by start, so no maps are created per query.
+   *
+   * @param region      the region
+   * @param k           the number of features to find
+   * @param maxDistance ignore features further away than this, or -1 for no
+   *                    limit
+   * @param direction   where the region must lie relative to each feature
+   * @param ret         buffer to receive the features, which is cleared first
+   */
+  public void getNearestFeatures(GenomicRegion region, int k, int maxDistance, Direction direction,
+      NearestFeatures<T> ret) {
+    ret.clear();
+
+    IntervalIndex index = getNearestIndex(region.getChr());
+
+    if (index != null) {
+      ret.search(index, region.getStart(), region.getEnd(), k, maxDistance, direction);
+    }
+  }
+
+  /**
+   * Returns the features of a chromosome sorted by start, building the arrays
+   * for every chromosome from the bins if necessary.
+   *
+   * @param chr the chr
+   * @return the index or null if the chromosome has no features.
+   */
+  protected IntervalIndex getNearestIndex(Chromosome chr) {
+    Map<Chromosome, IntervalIndex> nearest = mNearest;
+
+    if (nearest == null) {
+      synchronized (this) {
+        nearest = mNearest;
+
+        if (nearest == null) {
+          nearest = new HashMap<Chromosome, IntervalIndex>();
+
+          for (Entry<Chromosome, IterMap<Integer, GappedSearchFeatures<T>>> f : mFeatures) {
+            IntervalIndex.Builder builder = new IntervalIndex.Builder(f.getKey());
+
+            for (Entry<Integer, GappedSearchFeatures<T>> bin : f.getValue()) {
+              for (Entry<GenomicRegion, List<T>> r : bin.getValue()) {
+                GenomicRegion region = r.getKey();
+
+                // A feature is held in every bin it spans so only take it
+                // from the bin of its start
+                if (getBin(region.getStart()) == bin.getKey()) {
+                  for (T item : r.getValue()) {
+                    builder.add(region.getStart(), region.getEnd(), region.getStrand(), item);
+                  }
+                }
+              }
+            }
+
+            if (builder.size() > 0) {
+              nearest.put(f.getKey(), builder.build());
+            }
+          }
+
+          mNearest = nearest;
+        }
+      }
+    }
+
+    return nearest.get(chr);
+  }
+
   /**
    * Return the nth closest features by bin.
    *
@@ -427,10 +590,14 @@ public class BinaryGapSearch<T> extends FixedGapSearch<T> {
     // Make sure everything is sorted before doing anything
     organize();
 
-    Map<Integer, GappedSearchFeatures<T>> features = mFeatures.get(chr);
+    Map<Integer, GappedSearchFeatures<T>> features = getChrFeatures(chr);
 
     List<Integer> bins = mBins.get(chr);
 
+    if (features == null || bins == null || bins.size() == 0) {
+      return Collections.emptyList();
+    }
+
     int bs = start;
     int be = end;
 
@@ -27,8 +27,10 @@
  */
 package org.jebtk.bioinformatics.gapsearch;
 
-import org.jebtk.bioinformatics.genomic.Chromosome;
+import java.util.Collection;
+
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.core.collections.IterMap;
 
 /**
  * Uses a binary search to identify the closest points to a genomic coordinate
@@ -46,34 +48,28 @@ public class BinarySearch<T> extends BinaryGapSearch<T> {
     super(1);
   }
 
-  /*
-   * (non-Javadoc)
-   * 
-   * @see edu.columbia.rdf.lib.bioinformatics.gapsearch.GapSearch#addFeature(edu.
-   * columbia.rdf.lib.bioinformatics.genome.Chromosome, int, int,
-   * java.lang.Object)
-   */
   @Override
-  public void add(GenomicRegion region, T feature) {
-    Chromosome chr = region.getChr();
-    int start = region.getStart();
-    int end = region.getEnd();
+  protected void add(IterMap<Integer, GappedSearchFeatures<T>> features, GenomicRegion region, T feature) {
+    // Index the feature at both its start and end
+    getOrCreateBin(features, region.getStart()).add(region, feature);
 
-    if (!mFeatures.get(chr).containsKey(start)) {
-      mFeatures.get(chr).put(start, new GappedSearchFeatures<T>(start));
+    if (region.getEnd() != region.getStart()) {
+      getOrCreateBin(features, region.getEnd()).add(region, feature);
     }
 
-    mFeatures.get(chr).get(start).add(region, feature);
-
-    if (!mFeatures.get(chr).containsKey(end)) {
-      mFeatures.get(chr).put(end, new GappedSearchFeatures<T>(end));
-    }
+    // Indicate that indexes will need to be rebuilt before searching
+    invalidate();
+  }
 
-    mFeatures.get(chr).get(end).add(region, feature);
+  @Override
+  protected void addAll(IterMap<Integer, GappedSearchFeatures<T>> features, GenomicRegion region,
+      Collection<T> values) {
+    getOrCreateBin(features, region.getStart()).addAll(region, values);
 
-    ++mSize;
+    if (region.getEnd() != region.getStart()) {
+      getOrCreateBin(features, region.getEnd()).addAll(region, values);
+    }
 
-    // Indicate that indexes will need to be rebuilt before searching
-    mAutoSorted = false;
+    invalidate();
   }
 }
@@ -28,12 +28,16 @@
 package org.jebtk.bioinformatics.gapsearch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
@@ -42,12 +46,20 @@ import org.jebtk.core.collections.ArrayListCreator;
 import org.jebtk.core.collections.CollectionUtils;
 import org.jebtk.core.collections.DefaultTreeMap;
 import org.jebtk.core.collections.IterMap;
+import org.jebtk.core.collections.IterTreeMap;
 import org.jebtk.core.collections.TreeMapCreator;
 import org.jebtk.core.collections.UniqueArrayList;
 import org.jebtk.core.sys.SysUtils;
 
 /**
  * Use fixed size blocks to find features.
+ * 
+ * Features are added to a mutable map of bins. Once loading is complete,
+ * {@link #freeze()} compacts the bins of each chromosome into sorted arrays
+ * and makes the search read only. A frozen search is never modified by a
+ * query so it can be shared between threads without synchronization.
+ * Unfrozen searches can also be queried from multiple threads, provided no
+ * features are added whilst they are being queried.
  *
  * @author Antony Holmes
  * @param <T> the generic type
@@ -74,6 +86,70 @@ public class FixedGapSearch<T> extends GapSearch<T> {
 
   protected final int mBinSize;
 
+  /**
+   * The bins of each chromosome compacted into arrays, or null if the search
+   * has not been frozen.
+   */
+  protected volatile Map<Chromosome, FrozenBins<T>> mFrozen = null;
+
+  /**
+   * The bins of a chromosome in bin order, held in arrays once a search is
+   * frozen. The contents of each bin are also frozen into arrays, see
+   * {@link GappedSearchFeatures#freeze()}.
+   *
+   * @param <T> the generic type
+   */
+  protected static class FrozenBins<T> {
+    /** The sorted bins. */
+    protected final int[] mBins;
+
+    /** The features in each bin. */
+    protected final GappedSearchFeatures<T>[] mFeatures;
+
+    @SuppressWarnings("unchecked")
+    protected FrozenBins(IterMap<Integer, GappedSearchFeatures<T>> features) {
+      List<Integer> bins = CollectionUtils.sortKeys(features);
+
+      mBins = new int[bins.size()];
+      mFeatures = new GappedSearchFeatures[bins.size()];
+
+      for (int i = 0; i < mBins.length; ++i) {
+        mBins[i] = bins.get(i);
+        mFeatures[i] = features.get(mBins[i]);
+      }
+    }
+
+    /**
+     * Returns the index of the first bin greater than or equal to a bin.
+     *
+     * @param bin the bin
+     * @return the index, which is the number of bins if all are smaller.
+     */
+    protected int lowerBound(int bin) {
+      int i = Arrays.binarySearch(mBins, bin);
+
+      return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Returns the features in the bins between two indices (inclusive).
+     *
+     * @param is the start index
+     * @param ie the end index
+     * @return the features
+     */
+    protected List<GappedSearchFeatures<T>> range(int is, int ie) {
+      is = Math.max(0, is);
+      ie = Math.min(ie, mBins.length - 1);
+
+      if (ie < is) {
+        return Collections.emptyList();
+      }
+
+      return Arrays.asList(mFeatures).subList(is, ie + 1);
+    }
+  }
+
   /**
    * The member bin size.
    */
@@ -112,39 +188,183 @@ public class FixedGapSearch<T> extends GapSearch<T> {
    */
   @Override
   public void add(GenomicRegion region, T feature) {
+    checkNotFrozen();
+
+    add(mFeatures.get(region.getChr()), region, feature);
+
+    ++mSize;
+  }
+
+  /**
+   * Add a feature to the bins of its chromosome.
+   *
+   * @param features the bins of the feature's chromosome
+   * @param region   the region
+   * @param feature  the feature
+   */
+  protected void add(IterMap<Integer, GappedSearchFeatures<T>> features, GenomicRegion region, T feature) {
     int startBin = getBin(region.getStart());
     int endBin = getBin(region.getEnd());
 
-    Chromosome chr = region.getChr();
+    for (int bin = startBin; bin <= endBin; ++bin) {
+      getOrCreateBin(features, bin).add(region, feature);
+    }
+
+    invalidate();
+  }
+
+  /**
+   * Add features sharing a region to the bins of their chromosome.
+   *
+   * @param features the bins of the features' chromosome
+   * @param region   the region
+   * @param values   the features
+   */
+  protected void addAll(IterMap<Integer, GappedSearchFeatures<T>> features, GenomicRegion region,
+      Collection<T> values) {
+    int startBin = getBin(region.getStart());
+    int endBin = getBin(region.getEnd());
 
     for (int bin = startBin; bin <= endBin; ++bin) {
-      if (!mFeatures.get(chr).containsKey(bin)) {
-        mFeatures.get(chr).put(bin, new GappedSearchFeatures<T>(bin));
-      }
+      getOrCreateBin(features, bin).addAll(region, values);
+    }
+
+    invalidate();
+  }
 
-      mFeatures.get(chr).get(bin).add(region, feature);
+  /**
+   * Called whenever features are added so that subclasses can discard any
+   * indexes built from the bins. Every path that adds features must call it.
+   */
+  protected void invalidate() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the features of a bin, creating the bin if necessary.
+   *
+   * @param features the bins of a chromosome
+   * @param bin      the bin
+   * @return the gapped search features
+   */
+  protected static <T> GappedSearchFeatures<T> getOrCreateBin(IterMap<Integer, GappedSearchFeatures<T>> features,
+      int bin) {
+    GappedSearchFeatures<T> ret = features.get(bin);
+
+    if (ret == null) {
+      ret = new GappedSearchFeatures<T>(bin);
+      features.put(bin, ret);
     }
 
-    ++mSize;
+    return ret;
   }
 
   public void addAll(GenomicRegion region, Collection<T> features) {
-    int startBin = getBin(region.getStart());
-    int endBin = getBin(region.getEnd());
+    checkNotFrozen();
 
-    Chromosome chr = region.getChr();
+    addAll(mFeatures.get(region.getChr()), region, features);
 
-    for (int bin = startBin; bin <= endBin; ++bin) {
-      if (!mFeatures.get(chr).containsKey(bin)) {
-        mFeatures.get(chr).put(bin, new GappedSearchFeatures<T>(bin));
+    ++mSize;
+  }
+
+  /**
+   * Add features in bulk. The bins of a chromosome are only looked up when the
+   * chromosome changes, so features sorted by chromosome and position load
+   * fastest, though any order gives the same search.
+   *
+   * @param features       the features
+   * @param regionFunction returns the region of each feature
+   */
+  public void addAll(Iterable<? extends T> features, Function<? super T, ? extends GenomicRegion> regionFunction) {
+    addAll(features.iterator(), regionFunction);
+  }
+
+  /**
+   * Add a stream of features in bulk. The stream is consumed sequentially.
+   *
+   * @param features       the features
+   * @param regionFunction returns the region of each feature
+   * @see #addAll(Iterable, Function)
+   */
+  public void addAll(Stream<? extends T> features, Function<? super T, ? extends GenomicRegion> regionFunction) {
+    addAll(features.iterator(), regionFunction);
+  }
+
+  private void addAll(Iterator<? extends T> iter, Function<? super T, ? extends GenomicRegion> regionFunction) {
+    checkNotFrozen();
+
+    Chromosome chr = null;
+    IterMap<Integer, GappedSearchFeatures<T>> chrFeatures = null;
+
+    while (iter.hasNext()) {
+      T feature = iter.next();
+
+      GenomicRegion region = regionFunction.apply(feature);
+
+      if (!region.getChr().equals(chr)) {
+        chr = region.getChr();
+        chrFeatures = mFeatures.get(chr);
       }
 
-      for (T feature : features) {
-        mFeatures.get(chr).get(bin).add(region, feature);
+      add(chrFeatures, region, feature);
+
+      ++mSize;
+    }
+  }
+
+  /**
+   * Compact the bins into arrays and make the search read only. Once frozen,
+   * features can no longer be added and queries do not modify the search, so
+   * it is safe to share between threads. Freezing more than once has no
+   * effect.
+   */
+  public void freeze() {
+    if (mFrozen != null) {
+      return;
+    }
+
+    // Copy into a map that does not create entries for missing
+    // chromosomes on lookup
+    IterMap<Chromosome, IterMap<Integer, GappedSearchFeatures<T>>> features = new IterTreeMap<Chromosome, IterMap<Integer, GappedSearchFeatures<T>>>();
+
+    Map<Chromosome, FrozenBins<T>> frozen = new HashMap<Chromosome, FrozenBins<T>>();
+
+    for (Entry<Chromosome, IterMap<Integer, GappedSearchFeatures<T>>> f : mFeatures) {
+      if (f.getValue().size() > 0) {
+        // Replace the tree map inside each bin with arrays
+        IterMap<Integer, GappedSearchFeatures<T>> bins = new IterTreeMap<Integer, GappedSearchFeatures<T>>();
+
+        for (Entry<Integer, GappedSearchFeatures<T>> bin : f.getValue()) {
+          bins.put(bin.getKey(), bin.getValue().freeze());
+        }
+
+        features.put(f.getKey(), bins);
+        frozen.put(f.getKey(), new FrozenBins<T>(bins));
       }
     }
 
-    ++mSize;
+    mFeatures = features;
+
+    // Publish last
+    mFrozen = frozen;
+  }
+
+  /**
+   * Returns true if the search has been frozen.
+   *
+   * @return true, if is frozen
+   */
+  public boolean isFrozen() {
+    return mFrozen != null;
+  }
+
+  /**
+   * Throw an exception if the search is frozen.
+   */
+  protected void checkNotFrozen() {
+    if (mFrozen != null) {
+      throw new IllegalStateException("Features cannot be added to a frozen search.");
+    }
   }
 
   public int getBin(int x) {
@@ -183,10 +403,28 @@ public class FixedGapSearch<T> extends GapSearch<T> {
     return mFeatures.containsKey(chr);
   }
 
+  /**
+   * Returns the bins of a chromosome.
+   *
+   * @param chr the chr
+   * @return the bins. If the search is frozen, null is returned for a
+   *         chromosome without features.
+   */
   public IterMap<Integer, GappedSearchFeatures<T>> get(Chromosome chr) {
     return mFeatures.get(chr);
   }
 
+  /**
+   * Returns the bins of a chromosome without creating an entry for a
+   * chromosome that has no features, so that queries never modify the search.
+   *
+   * @param chr the chr
+   * @return the bins or null.
+   */
+  protected IterMap<Integer, GappedSearchFeatures<T>> getChrFeatures(Chromosome chr) {
+    return mFeatures.containsKey(chr) ? mFeatures.get(chr) : null;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -228,6 +466,10 @@ public class FixedGapSearch<T> extends GapSearch<T> {
   public List<T> getFeatures(Chromosome chr) {
     List<T> ret = new UniqueArrayList<T>();
 
+    if (!mFeatures.containsKey(chr)) {
+      return ret;
+    }
+
     for (Entry<Integer, GappedSearchFeatures<T>> f : mFeatures.get(chr)) {
       for (Entry<GenomicRegion, List<T>> r : f.getValue()) {
         ret.addAll(r.getValue());
@@ -260,9 +502,21 @@ public class FixedGapSearch<T> extends GapSearch<T> {
    * @return the features by bin
    */
   public List<GappedSearchFeatures<T>> getFeaturesByBin(Chromosome chr, int sbin, int ebin) {
-    Map<Integer, GappedSearchFeatures<T>> features = mFeatures.get(chr);
+    Map<Chromosome, FrozenBins<T>> frozen = mFrozen;
 
-    if (features.size() == 0) {
+    if (frozen != null) {
+      FrozenBins<T> bins = frozen.get(chr);
+
+      if (bins == null) {
+        return Collections.emptyList();
+      }
+
+      return bins.range(bins.lowerBound(sbin), bins.lowerBound(ebin + 1) - 1);
+    }
+
+    Map<Integer, GappedSearchFeatures<T>> features = getChrFeatures(chr);
+
+    if (features == null || features.size() == 0) {
       return Collections.emptyList();
     }
 
@@ -294,7 +548,11 @@ public class FixedGapSearch<T> extends GapSearch<T> {
     int bs = getBin(start);
     int be = getBin(end);
 
-    Map<Integer, GappedSearchFeatures<T>> features = mFeatures.get(chr);
+    Map<Integer, GappedSearchFeatures<T>> features = getChrFeatures(chr);
+
+    if (features == null || features.size() == 0) {
+      return Collections.emptyList();
+    }
 
     List<Integer> bins = CollectionUtils.sortKeys(features);
 
@@ -28,8 +28,10 @@
 package org.jebtk.bioinformatics.gapsearch;
 
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
@@ -37,6 +39,10 @@ import org.jebtk.core.collections.UniqueArrayList;
 
 /**
  * Generic interface for quickly searching for features by genomic location.
+ * 
+ * Queries must not modify a search, so that once its features have been added
+ * a search can be queried from multiple threads at once, for example with
+ * {@link GapSearchAnnotator}.
  *
  * @author Antony Holmes
  * @param <T> the generic type
@@ -161,6 +167,31 @@ public abstract class GapSearch<T> implements Iterable<Chromosome> {
     }
   }
 
+  /**
+   * Append the features overlapping a region by at least minBp to a reusable
+   * result buffer. Unlike the {@link SearchResults} version, this does not
+   * build a tree of the results.
+   *
+   * @param region the region
+   * @param minBp  the minimum overlap
+   * @param ret    the result buffer
+   */
+  public void getOverlappingFeatures(GenomicRegion region, int minBp, OverlapResults<T> ret) {
+    for (GappedSearchFeatures<T> features : getFeatures(region)) {
+      for (Entry<GenomicRegion, List<T>> r : features) {
+        GenomicRegion key = r.getKey();
+
+        int overlap = overlap(region, key);
+
+        if (overlap >= minBp && overlap > 0) {
+          ret.add(key, r.getValue());
+        }
+      }
+    }
+
+    ret.endQuery();
+  }
+
   /**
    * Checks for overlapping features.
    *
@@ -178,9 +209,9 @@ public abstract class GapSearch<T> implements Iterable<Chromosome> {
 
     for (GappedSearchFeatures<T> features : allFeatures) {
       for (Entry<GenomicRegion, List<T>> r : features) {
-        GenomicRegion overlap = GenomicRegion.overlap(region, r.getKey());
+        int overlap = overlap(region, r.getKey());
 
-        if (minBp == -1 || overlap.getLength() >= minBp) {
+        if (overlap > 0 && (minBp == -1 || overlap >= minBp)) {
           return true;
         }
       }
@@ -188,4 +219,61 @@ public abstract class GapSearch<T> implements Iterable<Chromosome> {
 
     return false;
   }
+
+  /**
+   * Count the features overlapping a region by at least minBp without
+   * collecting them.
+   *
+   * @param region the region
+   * @param minBp  the minimum overlap
+   * @return the number of features.
+   */
+  public int countOverlappingFeatures(GenomicRegion region, int minBp) {
+    // Features may be stored in more than one bin
+    Set<GenomicRegion> used = Collections.newSetFromMap(new IdentityHashMap<GenomicRegion, Boolean>());
+
+    int ret = 0;
+
+    for (GappedSearchFeatures<T> features : getFeatures(region)) {
+      for (Entry<GenomicRegion, List<T>> r : features) {
+        int overlap = overlap(region, r.getKey());
+
+        if (overlap > 0 && overlap >= minBp && used.add(r.getKey())) {
+          ret += r.getValue().size();
+        }
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns a feature overlapping a region by at least minBp, stopping at the
+   * first one found.
+   *
+   * @param region the region
+   * @param minBp  the minimum overlap
+   * @return the feature or null if there are no overlapping features.
+   */
+  public T getFirstOverlappingFeature(GenomicRegion region, int minBp) {
+    for (GappedSearchFeatures<T> features : getFeatures(region)) {
+      for (Entry<GenomicRegion, List<T>> r : features) {
+        int overlap = overlap(region, r.getKey());
+
+        if (overlap > 0 && overlap >= minBp && r.getValue().size() > 0) {
+          return r.getValue().get(0);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the number of bases two regions on the same chromosome have in
+   * common, which is not positive if they do not overlap.
+   */
+  private static int overlap(GenomicRegion region1, GenomicRegion region2) {
+    return Math.min(region1.getEnd(), region2.getEnd()) - Math.max(region1.getStart(), region2.getStart()) + 1;
+  }
 }
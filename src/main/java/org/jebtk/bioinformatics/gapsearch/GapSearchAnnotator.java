@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+
+/**
+ * Annotates lists of regions against a shared search in parallel. The list is
+ * split recursively across a fork join pool and the results are returned in
+ * the same order as the regions. Searches are only read, so the search should
+ * not have features added to it whilst an annotation is running, unless it is
+ * an {@link IntervalGapSearch}.
+ *
+ * @author Antony Holmes
+ */
+public class GapSearchAnnotator {
+
+  /** Tasks with fewer regions than this are not split further. */
+  private static final int MIN_TASK_SIZE = 256;
+
+  private GapSearchAnnotator() {
+    // Do nothing
+  }
+
+  /**
+   * Find the features overlapping each region using the common pool.
+   *
+   * @param search  the search
+   * @param regions the regions
+   * @param minBp   the minimum overlap
+   * @return the features overlapping each region.
+   */
+  public static <T> List<List<T>> find(GapSearch<T> search, List<? extends GenomicRegion> regions, int minBp) {
+    return find(ForkJoinPool.commonPool(), search, regions, minBp);
+  }
+
+  /**
+   * Find the features overlapping each region.
+   *
+   * @param pool    the pool
+   * @param search  the search
+   * @param regions the regions
+   * @param minBp   the minimum overlap
+   * @return the features overlapping each region.
+   */
+  public static <T> List<List<T>> find(ForkJoinPool pool, final GapSearch<T> search,
+      List<? extends GenomicRegion> regions, final int minBp) {
+    return annotate(pool, regions, r -> search.find(r, minBp));
+  }
+
+  /**
+   * Find the features closest to each region using the common pool.
+   *
+   * @param search  the search
+   * @param regions the regions
+   * @return the features closest to each region.
+   */
+  public static <T> List<List<T>> closest(GapSearch<T> search, List<? extends GenomicRegion> regions) {
+    return annotate(ForkJoinPool.commonPool(), regions, r -> search.getClosestFeatures(r));
+  }
+
+  /**
+   * Apply a function to each region using the common pool.
+   *
+   * @param regions  the regions
+   * @param function the function
+   * @return the result for each region.
+   */
+  public static <X extends GenomicRegion, R> List<R> annotate(List<X> regions, Function<? super X, ? extends R> function) {
+    return annotate(ForkJoinPool.commonPool(), regions, function);
+  }
+
+  /**
+   * Apply a function to each region in parallel. The function must be safe to
+   * call from multiple threads.
+   *
+   * @param pool     the pool
+   * @param regions  the regions
+   * @param function the function
+   * @return the result for each region, in the same order as the regions.
+   */
+  @SuppressWarnings("unchecked")
+  public static <X extends GenomicRegion, R> List<R> annotate(ForkJoinPool pool, List<X> regions,
+      Function<? super X, ? extends R> function) {
+    if (!(regions instanceof RandomAccess)) {
+      regions = new ArrayList<X>(regions);
+    }
+
+    Object[] ret = new Object[regions.size()];
+
+    pool.invoke(new AnnotateTask<X>(regions, function, ret, 0, ret.length));
+
+    return (List<R>) Arrays.asList(ret);
+  }
+
+  /**
+   * Annotates a range of the regions, splitting in two until the range is
+   * small.
+   */
+  private static class AnnotateTask<X> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<X> mRegions;
+    private final Function<? super X, ?> mFunction;
+    private final Object[] mRet;
+    private final int mStart;
+    private final int mEnd;
+
+    public AnnotateTask(List<X> regions, Function<? super X, ?> function, Object[] ret, int start, int end) {
+      mRegions = regions;
+      mFunction = function;
+      mRet = ret;
+      mStart = start;
+      mEnd = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (mEnd - mStart <= MIN_TASK_SIZE) {
+        for (int i = mStart; i < mEnd; ++i) {
+          mRet[i] = mFunction.apply(mRegions.get(i));
+        }
+      } else {
+        int mid = (mStart + mEnd) >>> 1;
+
+        invokeAll(new AnnotateTask<X>(mRegions, mFunction, mRet, mStart, mid),
+            new AnnotateTask<X>(mRegions, mFunction, mRet, mid, mEnd));
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the payloads of a gap search to and from bytes so they can be
+ * stored in a {@link GapSearchSnapshot}.
+ *
+ * @author Antony Holmes
+ * @param <T> the generic type
+ */
+public interface GapSearchCodec<T> {
+
+  /** Stores strings as UTF-8. */
+  public static final GapSearchCodec<String> STRING = new GapSearchCodec<String>() {
+    @Override
+    public void write(String value, DataOutput out) throws IOException {
+      out.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String read(ByteBuffer buf) {
+      byte[] bytes = new byte[buf.remaining()];
+
+      buf.get(bytes);
+
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  };
+
+  /**
+   * Write a payload.
+   *
+   * @param value the value
+   * @param out   the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void write(T value, DataOutput out) throws IOException;
+
+  /**
+   * Read a payload. The buffer contains exactly the bytes that were written
+   * for it, starting at position 0.
+   *
+   * @param buf the buf
+   * @return the payload
+   */
+  public T read(ByteBuffer buf);
+}
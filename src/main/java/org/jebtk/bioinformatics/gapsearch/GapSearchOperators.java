@@ -0,0 +1,407 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+
+/**
+ * Set operations over the features of a gap search or a map of elements:
+ * merging, complement, per base depth and counts in windows. Features are
+ * read from the sorted primitive arrays of an {@link IntervalIndex} per
+ * chromosome and chromosomes are processed in parallel. Results are returned
+ * as {@link RegionRuns} so no intermediate regions are created.
+ *
+ * @author Antony Holmes
+ */
+public class GapSearchOperators {
+  private final Map<Chromosome, IntervalIndex> mIndexes;
+
+  private GapSearchOperators(Map<Chromosome, IntervalIndex> indexes) {
+    mIndexes = indexes;
+  }
+
+  /**
+   * Create operators over the features of a gap search.
+   *
+   * @param search the search
+   * @return the gap search operators
+   */
+  public static GapSearchOperators create(GapSearch<?> search) {
+    return create(IntervalGapSearch.create(search));
+  }
+
+  private static <T> GapSearchOperators create(IntervalGapSearch<T> search) {
+    Map<Chromosome, IntervalIndex> indexes = new TreeMap<Chromosome, IntervalIndex>();
+
+    for (Chromosome chr : search) {
+      indexes.put(chr, search.getIndex(chr));
+    }
+
+    return new GapSearchOperators(indexes);
+  }
+
+  /**
+   * Create operators over elements grouped by chromosome, such as a
+   * GenomicElementsMap. Only the coordinates of the elements are copied.
+   *
+   * @param elements the elements
+   * @return the gap search operators
+   */
+  public static GapSearchOperators create(
+      Iterable<? extends Entry<Chromosome, ? extends Collection<? extends GenomicRegion>>> elements) {
+    Map<Chromosome, IntervalIndex> indexes = new TreeMap<Chromosome, IntervalIndex>();
+
+    for (Entry<Chromosome, ? extends Collection<? extends GenomicRegion>> e : elements) {
+      if (e.getValue().size() == 0) {
+        continue;
+      }
+
+      IntervalIndex.Builder builder = new IntervalIndex.Builder(e.getKey(), e.getValue().size());
+
+      for (GenomicRegion region : e.getValue()) {
+        builder.add(region.getStart(), region.getEnd(), region.getStrand(), null);
+      }
+
+      indexes.put(e.getKey(), builder.build());
+    }
+
+    return new GapSearchOperators(indexes);
+  }
+
+  /**
+   * Merge features that overlap or are within a distance of each other. The
+   * value of each merged interval is the number of features in it.
+   *
+   * @param distance the maximum gap in bp between features that are merged.
+   *                 Use 0 to merge features that overlap or touch.
+   * @return the merged intervals of each chromosome.
+   */
+  public Map<Chromosome, RegionRuns> merge(final int distance) {
+    return parallel(mIndexes.keySet(), chr -> merge(mIndexes.get(chr), distance));
+  }
+
+  /**
+   * Return the regions of the chromosomes with features that are not covered
+   * by any feature.
+   *
+   * @param genome the genome the chromosome sizes are taken from.
+   * @return the gaps of each chromosome.
+   */
+  public Map<Chromosome, RegionRuns> complement(Genome genome) {
+    return complement(genome, mIndexes.keySet());
+  }
+
+  /**
+   * Return the regions of a set of chromosomes that are not covered by any
+   * feature. Chromosomes without features are a single gap.
+   *
+   * @param genome the genome the chromosome sizes are taken from.
+   * @param chrs   the chrs
+   * @return the gaps of each chromosome.
+   */
+  public Map<Chromosome, RegionRuns> complement(Genome genome, Collection<Chromosome> chrs) {
+    final Map<Chromosome, Integer> sizes = sizes(genome, chrs);
+
+    return parallel(chrs, chr -> complement(chr, mIndexes.get(chr), sizes.get(chr)));
+  }
+
+  /**
+   * Return the number of features covering each base, as runs of bases with
+   * the same depth. Bases not covered by any feature are not included.
+   *
+   * @return the depth of each chromosome.
+   */
+  public Map<Chromosome, RegionRuns> depth() {
+    return parallel(mIndexes.keySet(), chr -> depth(mIndexes.get(chr)));
+  }
+
+  /**
+   * Count the features overlapping fixed size windows tiling the chromosomes
+   * with features.
+   *
+   * @param genome the genome the chromosome sizes are taken from.
+   * @param window the window size in bp
+   * @return the counts of each chromosome.
+   */
+  public Map<Chromosome, RegionRuns> windows(Genome genome, int window) {
+    return windows(genome, mIndexes.keySet(), window);
+  }
+
+  /**
+   * Count the features overlapping fixed size windows tiling a set of
+   * chromosomes. Every window is included, even if its count is 0.
+   *
+   * @param genome the genome the chromosome sizes are taken from.
+   * @param chrs   the chrs
+   * @param window the window size in bp
+   * @return the counts of each chromosome.
+   */
+  public Map<Chromosome, RegionRuns> windows(Genome genome, Collection<Chromosome> chrs, int window) {
+    final Map<Chromosome, Integer> sizes = sizes(genome, chrs);
+
+    final int w = Math.max(1, window);
+
+    return parallel(chrs, chr -> windows(chr, mIndexes.get(chr), sizes.get(chr), w));
+  }
+
+  /**
+   * Merge the features of an index.
+   *
+   * @param index    the index
+   * @param distance the maximum gap in bp between features that are merged.
+   * @return the merged intervals
+   */
+  public static RegionRuns merge(IntervalIndex index, int distance) {
+    RegionRuns ret = new RegionRuns(index.getChr());
+
+    int n = index.size();
+
+    if (n == 0) {
+      return ret;
+    }
+
+    int s = index.getStart(0);
+    int e = index.getEnd(0);
+    int c = 1;
+
+    for (int i = 1; i < n; ++i) {
+      int start = index.getStart(i);
+
+      if ((long) start - e - 1 <= distance) {
+        e = Math.max(e, index.getEnd(i));
+        ++c;
+      } else {
+        ret.add(s, e, c);
+
+        s = start;
+        e = index.getEnd(i);
+        c = 1;
+      }
+    }
+
+    ret.add(s, e, c);
+
+    return ret;
+  }
+
+  /**
+   * Return the gaps between the features of an index.
+   *
+   * @param chr   the chr
+   * @param index the index, which may be null if the chromosome has no
+   *              features.
+   * @param size  the size of the chromosome. If this is not positive, only
+   *              the gaps before the end of the last feature are returned.
+   * @return the gaps, each with value 0.
+   */
+  public static RegionRuns complement(Chromosome chr, IntervalIndex index, int size) {
+    RegionRuns ret = new RegionRuns(chr);
+
+    // The first base not yet known to be covered
+    long p = 1;
+
+    int n = index != null ? index.size() : 0;
+
+    for (int i = 0; i < n; ++i) {
+      int start = index.getStart(i);
+
+      if (start > p && (size <= 0 || p <= size)) {
+        ret.add((int) p, size > 0 ? Math.min(start - 1, size) : start - 1, 0);
+      }
+
+      p = Math.max(p, (long) index.getEnd(i) + 1);
+    }
+
+    if (p <= size) {
+      ret.add((int) p, size, 0);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Return the per base depth of the features of an index as runs.
+   *
+   * @param index the index
+   * @return the runs
+   */
+  public static RegionRuns depth(IntervalIndex index) {
+    RegionRuns ret = new RegionRuns(index.getChr());
+
+    int n = index.size();
+
+    // Starts are already sorted, the ends need sorting
+    int[] ends = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      ends[i] = index.getEnd(i);
+    }
+
+    Arrays.sort(ends);
+
+    int i = 0;
+    int j = 0;
+    int depth = 0;
+    long runStart = 0;
+
+    while (j < n) {
+      // A feature adds to the depth at its start and no longer counts from
+      // the base after its end
+      long ps = i < n ? index.getStart(i) : Long.MAX_VALUE;
+      long pe = (long) ends[j] + 1;
+
+      long p = Math.min(ps, pe);
+
+      int d = depth;
+
+      while (i < n && index.getStart(i) == p) {
+        ++d;
+        ++i;
+      }
+
+      while (j < n && (long) ends[j] + 1 == p) {
+        --d;
+        ++j;
+      }
+
+      if (d != depth) {
+        if (depth > 0) {
+          ret.add((int) runStart, (int) (p - 1), depth);
+        }
+
+        runStart = p;
+        depth = d;
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Count the features of an index overlapping fixed size windows.
+   *
+   * @param chr    the chr
+   * @param index  the index, which may be null if the chromosome has no
+   *               features.
+   * @param size   the size of the chromosome. If this is not positive, the
+   *               windows end at the window containing the last base of any
+   *               feature.
+   * @param window the window size in bp
+   * @return the counts of each window.
+   */
+  public static RegionRuns windows(Chromosome chr, IntervalIndex index, int size, int window) {
+    int n = index != null ? index.size() : 0;
+
+    if (size <= 0) {
+      for (int i = 0; i < n; ++i) {
+        size = Math.max(size, index.getEnd(i));
+      }
+    }
+
+    int nw = size > 0 ? (size - 1) / window + 1 : 0;
+
+    RegionRuns ret = new RegionRuns(chr, nw);
+
+    // Differences between the counts of adjacent windows, so long features
+    // cost the same as short ones
+    int[] counts = new int[nw + 1];
+
+    for (int i = 0; i < n; ++i) {
+      if (index.getStart(i) > size) {
+        // Starts are sorted so no later features are in a window
+        break;
+      }
+
+      int a = (Math.max(1, index.getStart(i)) - 1) / window;
+      int b = Math.min((Math.max(1, index.getEnd(i)) - 1) / window, nw - 1);
+
+      ++counts[a];
+      --counts[b + 1];
+    }
+
+    int c = 0;
+
+    for (int k = 0; k < nw; ++k) {
+      c += counts[k];
+
+      long s = (long) k * window + 1;
+
+      ret.add((int) s, (int) Math.min(s + window - 1, size), c);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Look up chromosome sizes before processing in parallel.
+   */
+  private static Map<Chromosome, Integer> sizes(Genome genome, Collection<Chromosome> chrs) {
+    Map<Chromosome, Integer> ret = new TreeMap<Chromosome, Integer>();
+
+    for (Chromosome chr : chrs) {
+      ret.put(chr, genome != null ? ChromosomeService.getInstance().size(genome, chr) : 0);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Process each chromosome in parallel, returning the results in chromosome
+   * order.
+   */
+  private static Map<Chromosome, RegionRuns> parallel(Collection<Chromosome> chrs,
+      Function<Chromosome, RegionRuns> f) {
+    List<Chromosome> list = new ArrayList<Chromosome>(chrs);
+
+    Collections.sort(list);
+
+    List<RegionRuns> results = list.parallelStream().map(f).collect(Collectors.toList());
+
+    Map<Chromosome, RegionRuns> ret = new TreeMap<Chromosome, RegionRuns>();
+
+    for (int i = 0; i < list.size(); ++i) {
+      ret.put(list.get(i), results.get(i));
+    }
+
+    return ret;
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.jebtk.core.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a built gap search to a binary file that can be memory mapped when a
+ * service starts instead of parsing and indexing text files again. For each
+ * chromosome the file holds the sorted starts, ends and strands, the tree
+ * maxima of its {@link IntervalIndex} and the offsets of each encoded payload
+ * followed by the payloads themselves.
+ * 
+ * On reading, the coordinates are not copied onto the heap. The index reads
+ * them through views of the mapping and payloads are only decoded when a
+ * feature is returned by a query. The mapped pages are shared through the
+ * page cache by every JVM reading the same file. All integers are big endian.
+ *
+ * @author Antony Holmes
+ */
+public class GapSearchSnapshot {
+
+  /** Identifies a snapshot file. */
+  public static final int CHECK = 0x47534e50;
+
+  public static final byte VERSION = 1;
+
+  private static final Logger LOG = LoggerFactory.getLogger(GapSearchSnapshot.class);
+
+  /**
+   * Decodes the payloads of one chromosome from the mapping on first use.
+   */
+  private static class MappedPayloads<T> implements IntervalIndex.Payloads {
+    private final ByteBuffer mData;
+    private final IntBuffer mOffsets;
+    private final GapSearchCodec<T> mCodec;
+    private final AtomicReferenceArray<T> mValues;
+
+    public MappedPayloads(ByteBuffer data, IntBuffer offsets, GapSearchCodec<T> codec) {
+      mData = data;
+      mOffsets = offsets;
+      mCodec = codec;
+      mValues = new AtomicReferenceArray<T>(offsets.capacity() - 1);
+    }
+
+    @Override
+    public Object get(int i) {
+      T ret = mValues.get(i);
+
+      if (ret == null) {
+        ByteBuffer buf = mData.duplicate();
+        buf.limit(mOffsets.get(i + 1));
+        buf.position(mOffsets.get(i));
+
+        ret = mCodec.read(buf.slice());
+
+        // If another thread decoded the value first, use its copy so the
+        // same object is always returned
+        if (!mValues.compareAndSet(i, null, ret)) {
+          ret = mValues.get(i);
+        }
+      }
+
+      return ret;
+    }
+  }
+
+  private GapSearchSnapshot() {
+    // Do nothing
+  }
+
+  /**
+   * Write a gap search to a file. Searches other than an
+   * {@link IntervalGapSearch} are indexed first.
+   *
+   * @param search the search
+   * @param codec  the codec for the payloads
+   * @param file   the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static <T> void write(GapSearch<T> search, GapSearchCodec<T> codec, Path file) throws IOException {
+    IntervalGapSearch<T> intervals = IntervalGapSearch.create(search);
+
+    LOG.info("Writing gap search snapshot to {}...", file);
+
+    DataOutputStream writer = FileUtils.newDataOutputStream(file);
+
+    try {
+      writer.writeInt(CHECK);
+      writer.writeByte(VERSION);
+
+      int chrs = 0;
+
+      for (@SuppressWarnings("unused")
+      Chromosome chr : intervals) {
+        ++chrs;
+      }
+
+      writer.writeInt(chrs);
+
+      for (Chromosome chr : intervals) {
+        write(intervals.getIndex(chr), codec, writer);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Write the index of one chromosome.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> void write(IntervalIndex index, GapSearchCodec<T> codec, DataOutputStream writer)
+      throws IOException {
+    int n = index.size();
+
+    byte[] name = index.getChr().toString().getBytes(StandardCharsets.UTF_8);
+
+    writer.writeInt(name.length);
+    writer.write(name);
+
+    writer.writeInt(n);
+
+    for (int i = 0; i < n; ++i) {
+      writer.writeInt(index.getStart(i));
+    }
+
+    for (int i = 0; i < n; ++i) {
+      writer.writeInt(index.getEnd(i));
+    }
+
+    for (int i = 0; i < n; ++i) {
+      writer.writeInt(index.getMaxEnd(i));
+    }
+
+    for (int i = 0; i < n; ++i) {
+      writer.writeByte(index.getStrand(i) == Strand.ANTISENSE ? 1 : 0);
+    }
+
+    // Encode the payloads first so their offsets can be written before them
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream payloads = new DataOutputStream(bytes);
+
+    writer.writeInt(0);
+
+    for (int i = 0; i < n; ++i) {
+      codec.write((T) index.getValue(i), payloads);
+
+      writer.writeInt(payloads.size());
+    }
+
+    payloads.flush();
+
+    bytes.writeTo(writer);
+  }
+
+  /**
+   * Map a snapshot file into a gap search. More features can be added to the
+   * search, but this decodes the existing payloads of the chromosomes they
+   * are added to.
+   *
+   * @param file  the file
+   * @param codec the codec for the payloads
+   * @return the interval gap search
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static <T> IntervalGapSearch<T> read(Path file, GapSearchCodec<T> codec) throws IOException {
+    LOG.info("Mapping gap search snapshot {}...", file);
+
+    MappedByteBuffer buf;
+
+    // The mapping stays valid after the channel is closed
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is too large to map.");
+      }
+
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      channel.close();
+    }
+
+    if (buf.getInt() != CHECK) {
+      throw new IOException(file + " is not a gap search snapshot.");
+    }
+
+    byte version = buf.get();
+
+    if (version != VERSION) {
+      throw new IOException(file + " has unsupported version " + version + ".");
+    }
+
+    int chrs = buf.getInt();
+
+    Map<Chromosome, IntervalIndex> indexes = new TreeMap<Chromosome, IntervalIndex>();
+
+    for (int c = 0; c < chrs; ++c) {
+      byte[] name = new byte[buf.getInt()];
+      buf.get(name);
+
+      Chromosome chr = Chromosome.newChr(new String(name, StandardCharsets.UTF_8));
+
+      int n = buf.getInt();
+
+      IntBuffer starts = readInts(buf, n);
+      IntBuffer ends = readInts(buf, n);
+      IntBuffer maxEnds = readInts(buf, n);
+
+      ByteBuffer strands = slice(buf, n);
+
+      IntBuffer offsets = readInts(buf, n + 1);
+
+      ByteBuffer data = slice(buf, offsets.get(n));
+
+      indexes.put(chr, new IntervalIndex(chr, starts, ends, maxEnds, strands,
+          new MappedPayloads<T>(data, offsets, codec)));
+    }
+
+    return new IntervalGapSearch<T>(indexes);
+  }
+
+  /**
+   * Return a view of the next n ints of a buffer and skip past them.
+   */
+  private static IntBuffer readInts(ByteBuffer buf, int n) {
+    return slice(buf, 4 * n).asIntBuffer();
+  }
+
+  /**
+   * Return the next bytes of a buffer as a separate buffer and skip past them.
+   */
+  private static ByteBuffer slice(ByteBuffer buf, int bytes) {
+    ByteBuffer ret = buf.slice();
+    ret.limit(bytes);
+
+    buf.position(buf.position() + bytes);
+
+    return ret;
+  }
+}
@@ -27,6 +27,19 @@
  */
 package org.jebtk.bioinformatics.gapsearch;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.core.collections.IterMap;
+
 /**
  * The class GappedSearchFeatures.
  *
@@ -48,6 +61,123 @@ public class GappedSearchFeatures<T> extends SearchResults<T> implements Compara
     mP = p;
   }
 
+  /**
+   * Instantiates a new gapped search features with its own storage.
+   *
+   * @param p        the p
+   * @param features the features map or null.
+   * @see SearchResults#SearchResults(IterMap)
+   */
+  protected GappedSearchFeatures(int p, IterMap<GenomicRegion, List<T>> features) {
+    super(features);
+
+    mP = p;
+  }
+
+  /**
+   * Returns a read only copy of the features with the regions and their
+   * values held in parallel arrays rather than a tree map.
+   *
+   * @return the gapped search features
+   */
+  public GappedSearchFeatures<T> freeze() {
+    return new FrozenFeatures<T>(this);
+  }
+
+  /**
+   * Features of a frozen search. Regions are in the same sorted order as the
+   * map they were copied from so a region is found by binary search.
+   *
+   * @param <T> the generic type
+   */
+  private static class FrozenFeatures<T> extends GappedSearchFeatures<T> {
+    private final GenomicRegion[] mRegions;
+
+    private final List<T>[] mValues;
+
+    @SuppressWarnings("unchecked")
+    public FrozenFeatures(GappedSearchFeatures<T> features) {
+      super(features.getPosition(), null);
+
+      int n = features.size();
+
+      mRegions = new GenomicRegion[n];
+      mValues = new List[n];
+
+      int i = 0;
+
+      for (Entry<GenomicRegion, List<T>> r : features) {
+        List<T> values = r.getValue();
+
+        if (values instanceof ArrayList) {
+          ((ArrayList<T>) values).trimToSize();
+        }
+
+        mRegions[i] = r.getKey();
+        mValues[i] = values;
+
+        ++i;
+      }
+    }
+
+    @Override
+    public void add(GenomicRegion region, T feature) {
+      throw new IllegalStateException("Features cannot be added to a frozen search.");
+    }
+
+    @Override
+    public void addAll(GenomicRegion r, Collection<T> values) {
+      throw new IllegalStateException("Features cannot be added to a frozen search.");
+    }
+
+    @Override
+    public GappedSearchFeatures<T> freeze() {
+      return this;
+    }
+
+    @Override
+    public List<T> getValues(GenomicRegion region) {
+      int i = Arrays.binarySearch(mRegions, region);
+
+      if (i < 0) {
+        return Collections.emptyList();
+      }
+
+      return mValues[i];
+    }
+
+    @Override
+    public int size() {
+      return mRegions.length;
+    }
+
+    @Override
+    public Iterator<Entry<GenomicRegion, List<T>>> iterator() {
+      return new Iterator<Entry<GenomicRegion, List<T>>>() {
+        private int mI = 0;
+
+        @Override
+        public boolean hasNext() {
+          return mI < mRegions.length;
+        }
+
+        @Override
+        public Entry<GenomicRegion, List<T>> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+
+          Entry<GenomicRegion, List<T>> ret = new AbstractMap.SimpleImmutableEntry<GenomicRegion, List<T>>(
+              mRegions[mI], mValues[mI]);
+
+          ++mI;
+
+          return ret;
+        }
+      };
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
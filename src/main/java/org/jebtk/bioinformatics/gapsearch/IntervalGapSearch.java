@@ -0,0 +1,447 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.core.collections.UniqueArrayList;
+
+/**
+ * Gap search backed by an {@link IntervalIndex} per chromosome. Features are
+ * collected into primitive arrays as they are added and the indexes are built
+ * once, on the first query after adding, rather than allocating bins, tree
+ * map nodes and lists per feature. This is intended for very large feature
+ * sets such as reads, CpGs or SNPs that are loaded in bulk and then queried.
+ * 
+ * Queries read an immutable snapshot of the indexes and take no locks, so any
+ * number of threads can query at once. Adding features copies the affected
+ * chromosome into a builder and a new snapshot is published on the next
+ * query, so features can also be added whilst other threads are querying.
+ *
+ * @author Antony Holmes
+ * @param <T> the generic type
+ */
+public class IntervalGapSearch<T> extends GapSearch<T> {
+
+  /** Features added since the indexes were last built. Guarded by this. */
+  private final Map<Chromosome, IntervalIndex.Builder> mBuilders = new TreeMap<Chromosome, IntervalIndex.Builder>();
+
+  /** The current snapshot of the indexes, which is never modified. */
+  private volatile Map<Chromosome, IntervalIndex> mIndexes = Collections.emptyMap();
+
+  /** Whether features have been added since the snapshot was published. */
+  private volatile boolean mChanged = false;
+
+  private volatile int mSize = 0;
+
+  /**
+   * Instantiates a new empty interval gap search.
+   */
+  public IntervalGapSearch() {
+    // Do nothing
+  }
+
+  /**
+   * Instantiates a new interval gap search from indexes that are already
+   * built.
+   *
+   * @param indexes the indexes
+   */
+  IntervalGapSearch(Map<Chromosome, IntervalIndex> indexes) {
+    int size = 0;
+
+    for (IntervalIndex index : indexes.values()) {
+      size += index.size();
+    }
+
+    mIndexes = Collections.unmodifiableMap(new TreeMap<Chromosome, IntervalIndex>(indexes));
+    mSize = size;
+  }
+
+  @Override
+  public synchronized void add(GenomicRegion region, T feature) {
+    Chromosome chr = region.getChr();
+
+    IntervalIndex.Builder builder = mBuilders.get(chr);
+
+    if (builder == null) {
+      IntervalIndex index = mIndexes.get(chr);
+
+      // Adding to a chromosome that is already indexed copies its existing
+      // features. The index itself stays in the snapshot until it is replaced.
+      builder = index != null ? new IntervalIndex.Builder(index) : new IntervalIndex.Builder(chr);
+
+      mBuilders.put(chr, builder);
+    }
+
+    builder.add(region.getStart(), region.getEnd(), region.getStrand(), feature);
+
+    ++mSize;
+
+    mChanged = true;
+  }
+
+  /**
+   * Build the indexes of any chromosomes with features added since the last
+   * build and publish a new snapshot. This is called automatically before a
+   * query, but can be called explicitly once loading is complete.
+   */
+  public void build() {
+    if (!mChanged) {
+      return;
+    }
+
+    synchronized (this) {
+      if (!mChanged) {
+        return;
+      }
+
+      Map<Chromosome, IntervalIndex> indexes = new TreeMap<Chromosome, IntervalIndex>(mIndexes);
+
+      for (Entry<Chromosome, IntervalIndex.Builder> e : mBuilders.entrySet()) {
+        indexes.put(e.getKey(), e.getValue().build());
+      }
+
+      // Release the unsorted copies
+      mBuilders.clear();
+
+      mIndexes = Collections.unmodifiableMap(indexes);
+      mChanged = false;
+    }
+  }
+
+  /**
+   * Copy the features of any gap search into an interval gap search. Features
+   * stored in several bins are only copied once. An interval gap search is
+   * returned as is.
+   *
+   * @param search the search
+   * @return the interval gap search
+   */
+  public static <T> IntervalGapSearch<T> create(GapSearch<T> search) {
+    if (search instanceof IntervalGapSearch) {
+      return (IntervalGapSearch<T>) search;
+    }
+
+    IntervalGapSearch<T> ret = new IntervalGapSearch<T>();
+
+    for (Chromosome chr : search) {
+      Collection<GappedSearchFeatures<T>> bins;
+
+      if (search instanceof FixedGapSearch) {
+        // Read the bins directly rather than querying every possible bin
+        Map<Integer, GappedSearchFeatures<T>> chrFeatures = ((FixedGapSearch<T>) search).getChrFeatures(chr);
+
+        if (chrFeatures == null) {
+          continue;
+        }
+
+        bins = chrFeatures.values();
+      } else {
+        bins = search.getFeatures(chr, 1, Integer.MAX_VALUE);
+      }
+
+      Set<GenomicRegion> used = new TreeSet<GenomicRegion>();
+
+      for (GappedSearchFeatures<T> features : bins) {
+        for (Entry<GenomicRegion, List<T>> r : features) {
+          if (used.add(r.getKey())) {
+            for (T item : r.getValue()) {
+              ret.add(r.getKey(), item);
+            }
+          }
+        }
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the current snapshot of the indexes, building it first if
+   * features have been added.
+   *
+   * @return the indexes
+   */
+  private Map<Chromosome, IntervalIndex> getIndexes() {
+    build();
+
+    return mIndexes;
+  }
+
+  /**
+   * Returns the index of a chromosome.
+   *
+   * @param chr the chr
+   * @return the index or null if there are no features on the chromosome.
+   */
+  public IntervalIndex getIndex(Chromosome chr) {
+    return getIndexes().get(chr);
+  }
+
+  @Override
+  public int size() {
+    return mSize;
+  }
+
+  @Override
+  public boolean contains(Chromosome chr) {
+    return getIndexes().containsKey(chr);
+  }
+
+  @Override
+  public List<T> getFeatures() {
+    Map<Chromosome, IntervalIndex> indexes = getIndexes();
+
+    List<T> ret = new UniqueArrayList<T>(mSize);
+
+    for (IntervalIndex index : indexes.values()) {
+      addValues(index, ret);
+    }
+
+    return ret;
+  }
+
+  @Override
+  public List<T> getFeatures(Chromosome chr) {
+    IntervalIndex index = getIndex(chr);
+
+    if (index == null) {
+      return Collections.emptyList();
+    }
+
+    List<T> ret = new UniqueArrayList<T>(index.size());
+
+    addValues(index, ret);
+
+    return ret;
+  }
+
+  /**
+   * Returns the overlapping features as a single block whose position is the
+   * start of the range.
+   */
+  @Override
+  public List<GappedSearchFeatures<T>> getFeatures(Chromosome chr, int start, int end) {
+    IntervalIndex index = getIndex(chr);
+
+    if (index == null) {
+      return Collections.emptyList();
+    }
+
+    IntervalHits hits = new IntervalHits();
+
+    if (index.overlap(start, end, hits) == 0) {
+      return Collections.emptyList();
+    }
+
+    GappedSearchFeatures<T> features = new GappedSearchFeatures<T>(start);
+
+    addHits(index, hits, features);
+
+    return Collections.singletonList(features);
+  }
+
+  /**
+   * Return the features closest to the mid-point of a region.
+   *
+   * @param region the region
+   * @return the closest features
+   */
+  @Override
+  public List<T> getClosestFeatures(GenomicRegion region) {
+    if (region == null) {
+      return Collections.emptyList();
+    }
+
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index == null) {
+      return Collections.emptyList();
+    }
+
+    IntervalHits hits = new IntervalHits();
+
+    index.closest(GenomicRegion.mid(region), hits);
+
+    List<T> ret = new UniqueArrayList<T>(hits.size());
+
+    for (int i = 0; i < hits.size(); ++i) {
+      ret.add(value(index, hits.get(i)));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Find the k features nearest to a region.
+   *
+   * @param region the region
+   * @param k      the number of features to find
+   * @return the features in order of distance.
+   */
+  public List<T> getNearestFeatures(GenomicRegion region, int k) {
+    NearestFeatures<T> ret = new NearestFeatures<T>();
+
+    getNearestFeatures(region, k, -1, Direction.BOTH, ret);
+
+    return ret.toList();
+  }
+
+  /**
+   * Find the k features nearest to a region, ordered by distance. Features
+   * overlapping the region have distance 0.
+   *
+   * @param region      the region
+   * @param k           the number of features to find
+   * @param maxDistance ignore features further away than this, or -1 for no
+   *                    limit
+   * @param direction   where the region must lie relative to each feature
+   * @param ret         buffer to receive the features, which is cleared first
+   */
+  public void getNearestFeatures(GenomicRegion region, int k, int maxDistance, Direction direction,
+      NearestFeatures<T> ret) {
+    ret.clear();
+
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index != null) {
+      ret.search(index, region.getStart(), region.getEnd(), k, maxDistance, direction);
+    }
+  }
+
+  @Override
+  public void getOverlappingFeatures(GenomicRegion region, int minBp, SearchResults<T> ret) {
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index == null) {
+      return;
+    }
+
+    IntervalHits hits = new IntervalHits();
+
+    index.overlap(region.getStart(), region.getEnd(), hits);
+
+    for (int i = 0; i < hits.size(); ++i) {
+      int h = hits.get(i);
+
+      if (overlap(index, h, region) >= minBp) {
+        ret.add(index.getRegion(h), value(index, h));
+      }
+    }
+  }
+
+  @Override
+  public void getOverlappingFeatures(GenomicRegion region, int minBp, OverlapResults<T> ret) {
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index != null) {
+      ret.add(index, region.getStart(), region.getEnd(), minBp);
+    }
+  }
+
+  @Override
+  public boolean hasOverlappingFeatures(GenomicRegion region, int minBp) {
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index == null) {
+      return false;
+    }
+
+    return index.any(region.getStart(), region.getEnd(), minBp);
+  }
+
+  @Override
+  public int countOverlappingFeatures(GenomicRegion region, int minBp) {
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index == null) {
+      return 0;
+    }
+
+    return index.count(region.getStart(), region.getEnd(), minBp);
+  }
+
+  /**
+   * Returns the feature with the lowest start overlapping a region by at
+   * least minBp.
+   */
+  @Override
+  public T getFirstOverlappingFeature(GenomicRegion region, int minBp) {
+    IntervalIndex index = getIndex(region.getChr());
+
+    if (index == null) {
+      return null;
+    }
+
+    int i = index.first(region.getStart(), region.getEnd(), minBp);
+
+    return i != -1 ? value(index, i) : null;
+  }
+
+  @Override
+  public Iterator<Chromosome> iterator() {
+    return getIndexes().keySet().iterator();
+  }
+
+  /**
+   * Returns the number of bases a feature and region have in common.
+   */
+  private static int overlap(IntervalIndex index, int i, GenomicRegion region) {
+    return Math.min(index.getEnd(i), region.getEnd()) - Math.max(index.getStart(i), region.getStart()) + 1;
+  }
+
+  private static <T> void addHits(IntervalIndex index, IntervalHits hits, SearchResults<T> ret) {
+    for (int i = 0; i < hits.size(); ++i) {
+      int h = hits.get(i);
+
+      ret.add(index.getRegion(h), value(index, h));
+    }
+  }
+
+  private static <T> void addValues(IntervalIndex index, List<T> ret) {
+    for (int i = 0; i < index.size(); ++i) {
+      ret.add(value(index, i));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T value(IntervalIndex index, int i) {
+    return (T) index.getValue(i);
+  }
+}
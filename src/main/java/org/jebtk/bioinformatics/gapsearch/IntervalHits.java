@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, growable list of feature indices returned by an
+ * {@link IntervalIndex} query. Clearing the list keeps its storage so a single
+ * instance can be used for any number of queries without allocating.
+ *
+ * @author Antony Holmes
+ */
+public class IntervalHits {
+  private int[] mHits;
+  private int mSize = 0;
+
+  /** Scratch stack used to walk the implicit tree. */
+  final long[] mStack = new long[64];
+
+  /** Scratch space for sorting hits. */
+  private long[] mSort = new long[0];
+
+  /**
+   * Instantiates a new hit list.
+   */
+  public IntervalHits() {
+    this(64);
+  }
+
+  /**
+   * Instantiates a new hit list.
+   *
+   * @param capacity the initial capacity
+   */
+  public IntervalHits(int capacity) {
+    mHits = new int[Math.max(1, capacity)];
+  }
+
+  /**
+   * Append a feature index.
+   *
+   * @param i the i
+   */
+  public void add(int i) {
+    if (mSize == mHits.length) {
+      mHits = Arrays.copyOf(mHits, mSize * 2);
+    }
+
+    mHits[mSize++] = i;
+  }
+
+  /**
+   * Returns the ith feature index.
+   *
+   * @param i the i
+   * @return the int
+   */
+  public int get(int i) {
+    return mHits[i];
+  }
+
+  /**
+   * Returns the number of hits.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Replace the ith feature index.
+   */
+  void set(int i, int v) {
+    mHits[i] = v;
+  }
+
+  /**
+   * Set the number of hits, discarding those at or after size.
+   *
+   * @param size the size
+   */
+  void truncate(int size) {
+    mSize = size;
+  }
+
+  /**
+   * Returns scratch space with room for at least n values.
+   */
+  long[] sortBuffer(int n) {
+    if (mSort.length < n) {
+      mSort = new long[Math.max(n, mSort.length * 2)];
+    }
+
+    return mSort;
+  }
+
+  /**
+   * Remove all hits whilst keeping the storage.
+   */
+  public void clear() {
+    mSize = 0;
+  }
+}
@@ -0,0 +1,705 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+
+/**
+ * Immutable interval index for the features on one chromosome. The starts,
+ * ends and strands of the features are held in parallel primitive buffers
+ * sorted by start, which either wrap arrays or are views of a mapped
+ * {@link GapSearchSnapshot}. The sorted order doubles as an implicit,
+ * balanced binary tree in which feature i is a node whose level is the
+ * number of trailing 1 bits of i, and one more buffer holds, for each
+ * feature, the maximum end of the subtree rooted at it, so overlap queries
+ * only visit subtrees that can contain a hit. There are no per-feature
+ * objects other than the payloads. Coordinates are one based and closed, as
+ * with {@link GenomicRegion}.
+ *
+ * @author Antony Holmes
+ */
+public class IntervalIndex {
+
+  /** Below this level a subtree is scanned linearly. */
+  private static final int SCAN_LEVEL = 3;
+
+  private final Chromosome mChr;
+  private final int mSize;
+  private final IntBuffer mStarts;
+  private final IntBuffer mEnds;
+  private final IntBuffer mMaxEnds;
+  private final ByteBuffer mStrands;
+  private final Object[] mValues;
+
+  /** Decodes values on demand, or null if the values are held in memory. */
+  private final Payloads mPayloads;
+
+  /** Level of the root node. */
+  private final int mRootK;
+
+  /**
+   * Supplies the values of an index whose values are not held in memory, for
+   * example one loaded from a {@link GapSearchSnapshot}.
+   */
+  static interface Payloads {
+    public Object get(int i);
+  }
+
+  /**
+   * Collects features for one chromosome and builds an index from them.
+   */
+  public static class Builder {
+    private final Chromosome mChr;
+    private int mSize = 0;
+    private int[] mStarts;
+    private int[] mEnds;
+    private byte[] mStrands;
+    private Object[] mValues;
+
+    /**
+     * Instantiates a new builder.
+     *
+     * @param chr the chr
+     */
+    public Builder(Chromosome chr) {
+      this(chr, 16);
+    }
+
+    /**
+     * Instantiates a new builder.
+     *
+     * @param chr      the chr
+     * @param capacity the expected number of features
+     */
+    public Builder(Chromosome chr, int capacity) {
+      mChr = chr;
+
+      capacity = Math.max(1, capacity);
+
+      mStarts = new int[capacity];
+      mEnds = new int[capacity];
+      mStrands = new byte[capacity];
+      mValues = new Object[capacity];
+    }
+
+    /**
+     * Instantiates a new builder seeded with the features of an existing
+     * index so more features can be added to it.
+     *
+     * @param index the index
+     */
+    public Builder(IntervalIndex index) {
+      this(index.mChr, index.mSize + 16);
+
+      for (int i = 0; i < index.mSize; ++i) {
+        mStarts[i] = index.mStarts.get(i);
+        mEnds[i] = index.mEnds.get(i);
+        mStrands[i] = index.mStrands.get(i);
+        mValues[i] = index.getValue(i);
+      }
+
+      mSize = index.mSize;
+    }
+
+    /**
+     * Add a feature.
+     *
+     * @param start  the start
+     * @param end    the end
+     * @param strand the strand
+     * @param value  the value
+     */
+    public void add(int start, int end, Strand strand, Object value) {
+      if (mSize == mStarts.length) {
+        int n = mSize * 2;
+
+        mStarts = Arrays.copyOf(mStarts, n);
+        mEnds = Arrays.copyOf(mEnds, n);
+        mStrands = Arrays.copyOf(mStrands, n);
+        mValues = Arrays.copyOf(mValues, n);
+      }
+
+      mStarts[mSize] = start;
+      mEnds[mSize] = end;
+      mStrands[mSize] = (byte) (strand == Strand.ANTISENSE ? 1 : 0);
+      mValues[mSize] = value;
+
+      ++mSize;
+    }
+
+    /**
+     * Returns the number of features added.
+     *
+     * @return the int
+     */
+    public int size() {
+      return mSize;
+    }
+
+    /**
+     * Sort the features and build the index. Features with the same start keep
+     * the order they were added in.
+     *
+     * @return the interval index
+     */
+    public IntervalIndex build() {
+      // Sort start and position together so the sort is on primitives
+      long[] order = new long[mSize];
+
+      for (int i = 0; i < mSize; ++i) {
+        order[i] = ((long) mStarts[i] << 32) | i;
+      }
+
+      Arrays.sort(order);
+
+      int[] starts = new int[mSize];
+      int[] ends = new int[mSize];
+      byte[] strands = new byte[mSize];
+      Object[] values = new Object[mSize];
+
+      for (int i = 0; i < mSize; ++i) {
+        int j = (int) order[i];
+
+        starts[i] = mStarts[j];
+        ends[i] = mEnds[j];
+        strands[i] = mStrands[j];
+        values[i] = mValues[j];
+      }
+
+      return new IntervalIndex(mChr, starts, ends, strands, values);
+    }
+  }
+
+  /**
+   * Instantiates a new interval index from arrays already sorted by start.
+   *
+   * @param chr     the chr
+   * @param starts  the starts
+   * @param ends    the ends
+   * @param strands the strands (0 = sense, 1 = antisense)
+   * @param values  the values
+   */
+  IntervalIndex(Chromosome chr, int[] starts, int[] ends, byte[] strands, Object[] values) {
+    mChr = chr;
+    mSize = starts.length;
+    mStarts = IntBuffer.wrap(starts);
+    mEnds = IntBuffer.wrap(ends);
+    mStrands = ByteBuffer.wrap(strands);
+    mValues = values;
+    mPayloads = null;
+
+    int[] maxEnds = new int[mSize];
+
+    mRootK = index(ends, maxEnds);
+    mMaxEnds = IntBuffer.wrap(maxEnds);
+  }
+
+  /**
+   * Instantiates a new interval index from buffers already sorted by start and
+   * indexed, with values decoded on demand. The buffers are read in place
+   * from index 0, so they can be views of a mapped file.
+   *
+   * @param chr      the chr
+   * @param starts   the starts
+   * @param ends     the ends
+   * @param maxEnds  the max end of each node of the implicit tree
+   * @param strands  the strands (0 = sense, 1 = antisense)
+   * @param payloads the payloads
+   */
+  IntervalIndex(Chromosome chr, IntBuffer starts, IntBuffer ends, IntBuffer maxEnds, ByteBuffer strands,
+      Payloads payloads) {
+    mChr = chr;
+    mSize = starts.limit();
+    mStarts = starts;
+    mEnds = ends;
+    mMaxEnds = maxEnds;
+    mStrands = strands;
+    mValues = null;
+    mPayloads = payloads;
+
+    // The root is at the highest level with a node
+    mRootK = mSize > 0 ? 31 - Integer.numberOfLeadingZeros(mSize) : -1;
+  }
+
+  /**
+   * Compute the max end of every node of the implicit tree, level by level.
+   *
+   * @param ends    the ends
+   * @param maxEnds filled with the max end of each node
+   * @return the level of the root.
+   */
+  private int index(int[] ends, int[] maxEnds) {
+    if (mSize == 0) {
+      return -1;
+    }
+
+    int lastI = 0;
+    int last = 0;
+
+    // Leaves
+    for (int i = 0; i < mSize; i += 2) {
+      lastI = i;
+      last = maxEnds[i] = ends[i];
+    }
+
+    int k = 1;
+
+    for (; 1L << k <= mSize; ++k) {
+      int x = 1 << (k - 1);
+      long step = (long) x << 2;
+
+      for (long l = (x << 1) - 1; l < mSize; l += step) {
+        int i = (int) l;
+
+        int el = maxEnds[i - x];
+
+        // A right child past the end is a partial subtree whose max is the
+        // max of the last node seen on the right edge of the tree
+        int er = i + x < mSize ? maxEnds[i + x] : last;
+
+        maxEnds[i] = Math.max(ends[i], Math.max(el, er));
+      }
+
+      // Move up to the parent of the last node on the right edge
+      lastI = ((lastI >> k) & 1) != 0 ? lastI - x : lastI + x;
+
+      if (lastI < mSize && maxEnds[lastI] > last) {
+        last = maxEnds[lastI];
+      }
+    }
+
+    return k - 1;
+  }
+
+  /**
+   * Gets the chromosome.
+   *
+   * @return the chr
+   */
+  public Chromosome getChr() {
+    return mChr;
+  }
+
+  /**
+   * Returns the number of features.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  public int getStart(int i) {
+    return mStarts.get(i);
+  }
+
+  public int getEnd(int i) {
+    return mEnds.get(i);
+  }
+
+  public Strand getStrand(int i) {
+    return mStrands.get(i) == 1 ? Strand.ANTISENSE : Strand.SENSE;
+  }
+
+  public Object getValue(int i) {
+    return mPayloads != null ? mPayloads.get(i) : mValues[i];
+  }
+
+  /**
+   * Returns the max end of the subtree of the implicit tree rooted at i.
+   *
+   * @param i the i
+   * @return the max end
+   */
+  int getMaxEnd(int i) {
+    return mMaxEnds.get(i);
+  }
+
+  /**
+   * Create the region of a feature. A new object is created on each call.
+   *
+   * @param i the i
+   * @return the region
+   */
+  public GenomicRegion getRegion(int i) {
+    return new GenomicRegion(mChr, mStarts.get(i), mEnds.get(i), getStrand(i));
+  }
+
+  /**
+   * Find the features overlapping a range. Indices are appended to the hits in
+   * start order.
+   *
+   * @param start the start
+   * @param end   the end
+   * @param hits  the hits
+   * @return the number of hits appended.
+   */
+  public int overlap(int start, int end, IntervalHits hits) {
+    int c = hits.size();
+
+    walk(start, end, 1, Integer.MAX_VALUE, hits.mStack, hits);
+
+    return hits.size() - c;
+  }
+
+  /**
+   * Count the features overlapping a range by at least minBp. Only the
+   * coordinates are read.
+   *
+   * @param start the start
+   * @param end   the end
+   * @param minBp the minimum overlap
+   * @return the number of features.
+   */
+  public int count(int start, int end, int minBp) {
+    return walk(start, end, minBp, Integer.MAX_VALUE, new long[64], null);
+  }
+
+  /**
+   * Returns true if any feature overlaps a range by at least minBp. The
+   * search stops at the first overlapping feature.
+   *
+   * @param start the start
+   * @param end   the end
+   * @param minBp the minimum overlap
+   * @return true, if successful
+   */
+  public boolean any(int start, int end, int minBp) {
+    return walk(start, end, minBp, 1, new long[64], null) > 0;
+  }
+
+  /**
+   * Returns the index of the first feature, in start order, overlapping a
+   * range by at least minBp. The search stops at that feature.
+   *
+   * @param start the start
+   * @param end   the end
+   * @param minBp the minimum overlap
+   * @return the index or -1 if no feature overlaps the range.
+   */
+  public int first(int start, int end, int minBp) {
+    long[] stack = new long[64];
+
+    if (walk(start, end, minBp, 1, stack, null) == 0) {
+      return -1;
+    }
+
+    // The index of the hit is left at the bottom of the stack
+    return (int) stack[0];
+  }
+
+  /**
+   * Walk the tree finding the features overlapping a range by at least minBp,
+   * in start order. The walk stops after limit features.
+   *
+   * @param start the start
+   * @param end   the end
+   * @param minBp the minimum overlap
+   * @param limit the maximum number of features to find
+   * @param stack scratch space. If the walk ends early, the index of the last
+   *              feature found is stored in the first element.
+   * @param hits  optional hits to append the features to.
+   * @return the number of features found.
+   */
+  private int walk(int start, int end, int minBp, int limit, long[] stack, IntervalHits hits) {
+    if (mSize == 0) {
+      return 0;
+    }
+
+    int ret = 0;
+
+    int t = 0;
+
+    stack[t++] = node((1 << mRootK) - 1, mRootK, 0);
+
+    while (t > 0) {
+      long z = stack[--t];
+
+      int x = (int) (z >> 8);
+      int k = (int) (z >> 1) & 0x7f;
+
+      if (k <= SCAN_LEVEL) {
+        // Small subtree so scan it
+        int i0 = x >> k << k;
+        int i1 = Math.min(i0 + (1 << (k + 1)) - 1, mSize);
+
+        for (int i = i0; i < i1 && mStarts.get(i) <= end; ++i) {
+          if (start <= mEnds.get(i) && overlap(i, start, end) >= minBp) {
+            if (hits != null) {
+              hits.add(i);
+            }
+
+            if (++ret == limit) {
+              stack[0] = i;
+              return ret;
+            }
+          }
+        }
+      } else if ((z & 1) == 0) {
+        // Revisit this node once the left subtree is done
+        stack[t++] = z | 1;
+
+        int y = x - (1 << (k - 1));
+
+        // Only descend left if something there ends at or after the start
+        if (y >= mSize || mMaxEnds.get(y) >= start) {
+          stack[t++] = node(y, k - 1, 0);
+        }
+      } else if (x < mSize && mStarts.get(x) <= end) {
+        if (start <= mEnds.get(x) && overlap(x, start, end) >= minBp) {
+          if (hits != null) {
+            hits.add(x);
+          }
+
+          if (++ret == limit) {
+            stack[0] = x;
+            return ret;
+          }
+        }
+
+        stack[t++] = node(x + (1 << (k - 1)), k - 1, 0);
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the number of bases feature i has in common with a range.
+   */
+  private int overlap(int i, int start, int end) {
+    return Math.min(mEnds.get(i), end) - Math.max(mStarts.get(i), start) + 1;
+  }
+
+  /**
+   * Find the features closest to a position. Features overlapping the
+   * position have distance 0, otherwise the distance is to the nearest end of
+   * the feature. All features tied for the smallest distance are appended to
+   * the hits.
+   *
+   * @param p    the p
+   * @param hits the hits
+   * @return the distance to the closest features or -1 if there are no
+   *         features.
+   */
+  public int closest(int p, IntervalHits hits) {
+    if (mSize == 0) {
+      return -1;
+    }
+
+    int c = hits.size();
+
+    // The furthest any feature can be from p
+    long maxD = Math.max(Math.abs((long) p - mStarts.get(0)), Math.abs((long) mMaxEnds.get((1 << mRootK) - 1) - p));
+
+    // Double a window around p until it contains something
+    long d = 0;
+
+    while (true) {
+      int s = (int) Math.max(Integer.MIN_VALUE, p - d);
+      int e = (int) Math.min(Integer.MAX_VALUE, p + d);
+
+      if (overlap(s, e, hits) > 0 || d >= maxD) {
+        break;
+      }
+
+      d = d == 0 ? 1 : d * 2;
+    }
+
+    // Keep only those tied for the smallest distance
+    int minD = Integer.MAX_VALUE;
+
+    for (int i = c; i < hits.size(); ++i) {
+      minD = Math.min(minD, distance(hits.get(i), p));
+    }
+
+    int n = c;
+
+    for (int i = c; i < hits.size(); ++i) {
+      int h = hits.get(i);
+
+      if (distance(h, p) == minD) {
+        hits.set(n++, h);
+      }
+    }
+
+    hits.truncate(n);
+
+    return n > c ? minD : -1;
+  }
+
+  /**
+   * Find the k features nearest to a range, ordered by distance (and then by
+   * start). A window around the range is doubled in size until it holds k
+   * features passing the direction filter, so only features near the range
+   * are ever examined and nothing is allocated once the hit list has grown.
+   *
+   * @param start       the start
+   * @param end         the end
+   * @param k           the number of features to find
+   * @param maxDistance features further away than this are ignored. Use -1
+   *                    for no limit.
+   * @param direction   where the range must lie relative to each feature
+   * @param hits        the hits
+   * @return the number of hits appended, which may be less than k.
+   */
+  public int nearest(int start, int end, int k, int maxDistance, Direction direction, IntervalHits hits) {
+    if (mSize == 0 || k < 1) {
+      return 0;
+    }
+
+    int c = hits.size();
+
+    // No feature lies further away than this
+    long maxD = Math.max(0, Math.max((long) start - mStarts.get(0), (long) mMaxEnds.get((1 << mRootK) - 1) - end));
+
+    if (maxDistance >= 0) {
+      maxD = Math.min(maxD, maxDistance);
+    }
+
+    long d = 0;
+
+    int n;
+
+    while (true) {
+      hits.truncate(c);
+
+      overlap((int) Math.max(Integer.MIN_VALUE, start - d), (int) Math.min(Integer.MAX_VALUE, end + d), hits);
+
+      // Keep those in the right direction
+      n = c;
+
+      for (int i = c; i < hits.size(); ++i) {
+        int h = hits.get(i);
+
+        if (isDirection(h, start, end, direction)) {
+          hits.set(n++, h);
+        }
+      }
+
+      hits.truncate(n);
+
+      if (n - c >= k || d >= maxD) {
+        break;
+      }
+
+      d = Math.min(d == 0 ? 1 : d * 2, maxD);
+    }
+
+    // Order by distance and then index
+    long[] order = hits.sortBuffer(n - c);
+
+    for (int i = c; i < n; ++i) {
+      int h = hits.get(i);
+
+      order[i - c] = ((long) distance(h, start, end) << 32) | h;
+    }
+
+    Arrays.sort(order, 0, n - c);
+
+    n = Math.min(n - c, k);
+
+    for (int i = 0; i < n; ++i) {
+      hits.set(c + i, (int) order[i]);
+    }
+
+    hits.truncate(c + n);
+
+    return n;
+  }
+
+  /**
+   * Returns the distance between a feature and a range.
+   *
+   * @param i     the feature index
+   * @param start the start of the range
+   * @param end   the end of the range
+   * @return the number of bases between them or 0 if they overlap.
+   */
+  public int distance(int i, int start, int end) {
+    if (end < mStarts.get(i)) {
+      return mStarts.get(i) - end;
+    } else if (start > mEnds.get(i)) {
+      return start - mEnds.get(i);
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Test whether a range lies in a direction relative to a feature.
+   */
+  private boolean isDirection(int i, int start, int end, Direction direction) {
+    if (direction == Direction.BOTH) {
+      return true;
+    }
+
+    boolean before;
+
+    if (end < mStarts.get(i)) {
+      before = true;
+    } else if (start > mEnds.get(i)) {
+      before = false;
+    } else {
+      // Overlapping features are in every direction
+      return true;
+    }
+
+    // Before a sense feature or after an antisense one is upstream
+    boolean upstream = before == (mStrands.get(i) == 0);
+
+    return upstream == (direction == Direction.UPSTREAM);
+  }
+
+  /**
+   * Returns the distance between a feature and a position.
+   *
+   * @param i the feature index
+   * @param p the position
+   * @return the distance or 0 if the feature contains the position.
+   */
+  public int distance(int i, int p) {
+    if (p < mStarts.get(i)) {
+      return mStarts.get(i) - p;
+    } else if (p > mEnds.get(i)) {
+      return p - mEnds.get(i);
+    } else {
+      return 0;
+    }
+  }
+
+  private static long node(int x, int k, int w) {
+    return ((long) x << 8) | (k << 1) | w;
+  }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.jebtk.core.collections.ArrayListCreator;
+import org.jebtk.core.collections.DefaultTreeMap;
+import org.jebtk.core.collections.IterMap;
+import org.jebtk.core.collections.UniqueArrayList;
+
+/**
+ * Gap search using a hierarchy of bins, in the manner of the UCSC binning
+ * scheme. Each level has bins 8 times larger than the level below and the top
+ * level has a single bin spanning every coordinate. A feature is stored once,
+ * in the smallest bin that contains it, rather than being copied into every
+ * fixed size bin it spans, so memory is linear in the number of features no
+ * matter how long they are. A query looks in the bins overlapping it on each
+ * level.
+ * 
+ * Bin numbers are not positions: coarser levels are numbered first and each
+ * level's bins are numbered consecutively.
+ *
+ * @author Antony Holmes
+ * @param <T> the generic type
+ */
+public class MultiLevelGapSearch<T> extends FixedGapSearch<T> {
+
+  /** The default smallest bin size is 2^14 = 16384 bp. */
+  public static final int DEFAULT_MIN_BIN_SHIFT = 14;
+
+  /** Each level's bins are 2^3 = 8 times larger than the level below. */
+  private static final int LEVEL_SHIFT = 3;
+
+  /** Bins of the top level cover all non negative int coordinates. */
+  private static final int MAX_SHIFT = 31;
+
+  /** The shift of each level, smallest bins first. */
+  private final int[] mShifts;
+
+  /** The number of the first bin of each level. */
+  private final int[] mOffsets;
+
+  /**
+   * Instantiates a new multi level gap search with the default smallest bin
+   * size.
+   */
+  public MultiLevelGapSearch() {
+    this(1 << DEFAULT_MIN_BIN_SHIFT);
+  }
+
+  /**
+   * Instantiates a new multi level gap search.
+   *
+   * @param minBinSize the size of the smallest bins. This is rounded up to a
+   *                   power of 2.
+   */
+  public MultiLevelGapSearch(int minBinSize) {
+    super(Integer.highestOneBit(Math.max(2, minBinSize) - 1) << 1);
+
+    int shift = Integer.numberOfTrailingZeros(mBinSize);
+
+    int levels = 1;
+
+    while (shift + LEVEL_SHIFT * (levels - 1) < MAX_SHIFT) {
+      ++levels;
+    }
+
+    mShifts = new int[levels];
+    mOffsets = new int[levels];
+
+    for (int l = 0; l < levels; ++l) {
+      mShifts[l] = Math.min(MAX_SHIFT, shift + LEVEL_SHIFT * l);
+    }
+
+    // Number the coarsest level first
+    int offset = 0;
+
+    for (int l = levels - 1; l >= 0; --l) {
+      mOffsets[l] = offset;
+      offset += 1 << (MAX_SHIFT - mShifts[l]);
+    }
+  }
+
+  /**
+   * Returns the number of levels.
+   *
+   * @return the int
+   */
+  public int getLevels() {
+    return mShifts.length;
+  }
+
+  /**
+   * Returns the bin of the smallest level that contains a range.
+   *
+   * @param start the start
+   * @param end   the end
+   * @return the bin
+   */
+  public int getBin(int start, int end) {
+    start = Math.max(0, start);
+    end = Math.max(start, end);
+
+    for (int l = 0; l < mShifts.length; ++l) {
+      int s = start >> mShifts[l];
+
+      if (s == end >> mShifts[l]) {
+        return mOffsets[l] + s;
+      }
+    }
+
+    // Top level
+    return 0;
+  }
+
+  @Override
+  protected void add(IterMap<Integer, GappedSearchFeatures<T>> features, GenomicRegion region, T feature) {
+    getOrCreateBin(features, getBin(region.getStart(), region.getEnd())).add(region, feature);
+
+    invalidate();
+  }
+
+  @Override
+  protected void addAll(IterMap<Integer, GappedSearchFeatures<T>> features, GenomicRegion region,
+      Collection<T> values) {
+    getOrCreateBin(features, getBin(region.getStart(), region.getEnd())).addAll(region, values);
+
+    invalidate();
+  }
+
+  /**
+   * Returns the bins overlapping a range on every level, smallest bins first.
+   */
+  @Override
+  public List<GappedSearchFeatures<T>> getFeatures(Chromosome chr, int start, int end) {
+    start = Math.max(0, start);
+    end = Math.max(start, end);
+
+    List<GappedSearchFeatures<T>> ret = null;
+
+    for (int l = 0; l < mShifts.length; ++l) {
+      List<GappedSearchFeatures<T>> features = getFeaturesByBin(chr, mOffsets[l] + (start >> mShifts[l]),
+          mOffsets[l] + (end >> mShifts[l]));
+
+      if (features.size() > 0) {
+        if (ret == null) {
+          ret = new ArrayList<GappedSearchFeatures<T>>();
+        }
+
+        ret.addAll(features);
+      }
+    }
+
+    if (ret == null) {
+      return Collections.emptyList();
+    }
+
+    return ret;
+  }
+
+  /**
+   * Return the features overlapping a region that are closest to its
+   * mid-point. Since bins are not positions, features are compared using
+   * their own coordinates.
+   *
+   * @param region the region
+   * @return the closest features
+   */
+  @Override
+  public List<T> getClosestFeatures(GenomicRegion region) {
+    if (region == null) {
+      return Collections.emptyList();
+    }
+
+    int mid = GenomicRegion.mid(region);
+
+    int minD = Integer.MAX_VALUE;
+
+    List<T> ret = new UniqueArrayList<T>();
+
+    for (GappedSearchFeatures<T> features : getFeatures(region)) {
+      for (Entry<GenomicRegion, List<T>> r : features) {
+        int d = distance(r.getKey(), mid);
+
+        if (d < minD) {
+          ret.clear();
+          minD = d;
+        }
+
+        if (d == minD) {
+          ret.addAll(r.getValue());
+        }
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Return the features grouped by distance, closest first, until n distinct
+   * distances have been found. Distance is measured from the 5' end of each
+   * feature to the mid-point of the range. A window around the mid-point is
+   * doubled in size until it contains n distances.
+   *
+   * @param chr   the chr
+   * @param start the start
+   * @param end   the end
+   * @param n     the n
+   * @return the closest features
+   */
+  @Override
+  public List<List<T>> getClosestFeatures(Chromosome chr, int start, int end, int n) {
+    if (!contains(chr) || n < 1) {
+      return Collections.emptyList();
+    }
+
+    int mid = GenomicRegion.mid(start, end);
+
+    long w = mBinSize;
+
+    while (true) {
+      IterMap<Integer, List<T>> closestMap = DefaultTreeMap.create(new ArrayListCreator<T>());
+
+      for (GappedSearchFeatures<T> features : getFeatures(chr, (int) Math.max(0, mid - w),
+          (int) Math.min(Integer.MAX_VALUE, mid + w))) {
+        for (Entry<GenomicRegion, List<T>> r : features) {
+          GenomicRegion region = r.getKey();
+
+          int d = Math.abs((Strand.isSense(region.getStrand()) ? region.getStart() : region.getEnd()) - mid);
+
+          // Features further away may not all be in the window yet
+          if (d <= w) {
+            closestMap.get(d).addAll(r.getValue());
+          }
+        }
+      }
+
+      if (closestMap.size() >= n || w >= Integer.MAX_VALUE) {
+        List<List<T>> ret = new ArrayList<List<T>>(n);
+
+        for (Entry<Integer, List<T>> e : closestMap) {
+          if (ret.size() == n) {
+            break;
+          }
+
+          ret.add(e.getValue());
+        }
+
+        return ret;
+      }
+
+      w *= 2;
+    }
+  }
+
+  /**
+   * Returns the distance from a position to a region, 0 if the region
+   * contains it.
+   */
+  private static int distance(GenomicRegion region, int p) {
+    if (p < region.getStart()) {
+      return region.getStart() - p;
+    } else if (p > region.getEnd()) {
+      return p - region.getEnd();
+    } else {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable buffer holding the result of a k nearest feature query: the
+ * features in order of distance together with their distances. Each query
+ * clears the buffer but keeps its storage, so a single buffer per thread can
+ * be used for any number of queries.
+ *
+ * @author Antony Holmes
+ * @param <T> the generic type
+ */
+public class NearestFeatures<T> {
+
+  /** Scratch hits used by the query. */
+  final IntervalHits mHits = new IntervalHits();
+
+  private Object[] mFeatures = new Object[16];
+
+  private int[] mDistances = new int[16];
+
+  private int mSize = 0;
+
+  /**
+   * Add a feature.
+   *
+   * @param feature  the feature
+   * @param distance the distance
+   */
+  void add(Object feature, int distance) {
+    if (mSize == mFeatures.length) {
+      mFeatures = Arrays.copyOf(mFeatures, mSize * 2);
+      mDistances = Arrays.copyOf(mDistances, mSize * 2);
+    }
+
+    mFeatures[mSize] = feature;
+    mDistances[mSize] = distance;
+
+    ++mSize;
+  }
+
+  /**
+   * Run a nearest query on an index and add the features found.
+   *
+   * @param index       the index
+   * @param start       the start of the query
+   * @param end         the end of the query
+   * @param k           the number of features to find
+   * @param maxDistance the max distance or -1
+   * @param direction   the direction
+   */
+  void search(IntervalIndex index, int start, int end, int k, int maxDistance, Direction direction) {
+    mHits.clear();
+
+    index.nearest(start, end, k, maxDistance, direction, mHits);
+
+    for (int i = 0; i < mHits.size(); ++i) {
+      int h = mHits.get(i);
+
+      add(index.getValue(h), index.distance(h, start, end));
+    }
+  }
+
+  /**
+   * Returns the number of features found.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Returns the ith nearest feature.
+   *
+   * @param i the i
+   * @return the t
+   */
+  @SuppressWarnings("unchecked")
+  public T get(int i) {
+    return (T) mFeatures[i];
+  }
+
+  /**
+   * Returns the distance of the ith nearest feature.
+   *
+   * @param i the i
+   * @return the distance in bp, 0 if it overlaps the query.
+   */
+  public int getDistance(int i) {
+    return mDistances[i];
+  }
+
+  /**
+   * Copy the features into a new list.
+   *
+   * @return the list
+   */
+  public List<T> toList() {
+    List<T> ret = new ArrayList<T>(mSize);
+
+    for (int i = 0; i < mSize; ++i) {
+      ret.add(get(i));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Clear the buffer whilst keeping its storage.
+   */
+  public void clear() {
+    // Release references to features
+    Arrays.fill(mFeatures, 0, mSize, null);
+
+    mSize = 0;
+
+    mHits.clear();
+  }
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicElement;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+
+/**
+ * Finds every overlapping pair between two sets of regions with a single sweep
+ * over both sets in start order, in the manner of bedtools intersect. Rather
+ * than searching for each region of the first set individually, the regions of
+ * the second set are read once and kept in a small active window of those
+ * that can still overlap, so the cost is linear in the size of the inputs
+ * plus the number of overlaps.
+ * 
+ * Pairs can be filtered by a minimum number of overlapping bases, a minimum
+ * fraction of the first region that must be covered and by strand. When the
+ * inputs are grouped by chromosome, each chromosome is joined in parallel.
+ *
+ * @author Antony Holmes
+ */
+public class OverlapJoin {
+
+  /**
+   * How the strands of a pair must relate.
+   */
+  public static enum StrandMode {
+    /** Strand is not considered. */
+    IGNORE,
+    /** Both regions must be on the same strand. */
+    SAME,
+    /** The regions must be on opposite strands. */
+    OPPOSITE
+  }
+
+  /**
+   * Receives each overlapping pair.
+   *
+   * @param <A> the type of the first set
+   * @param <B> the type of the second set
+   */
+  public static interface OverlapVisitor<A, B> {
+    public void overlap(A a, B b);
+  }
+
+  private static final Comparator<GenomicRegion> START_COMPARATOR = new Comparator<GenomicRegion>() {
+    @Override
+    public int compare(GenomicRegion r1, GenomicRegion r2) {
+      return Integer.compare(r1.getStart(), r2.getStart());
+    }
+  };
+
+  private int mMinBp = 1;
+
+  private double mFraction = 0;
+
+  private StrandMode mStrandMode = StrandMode.IGNORE;
+
+  /**
+   * Set the minimum number of bases a pair must overlap by. The default is 1.
+   *
+   * @param minBp the min bp
+   * @return the overlap join
+   */
+  public OverlapJoin minBp(int minBp) {
+    mMinBp = Math.max(1, minBp);
+
+    return this;
+  }
+
+  /**
+   * Set the minimum fraction of a region in the first set that must be
+   * overlapped. The default is 0, i.e. any overlap.
+   *
+   * @param fraction the fraction
+   * @return the overlap join
+   */
+  public OverlapJoin fraction(double fraction) {
+    mFraction = fraction;
+
+    return this;
+  }
+
+  /**
+   * Set how the strands of a pair must relate.
+   *
+   * @param strandMode the strand mode
+   * @return the overlap join
+   */
+  public OverlapJoin strand(StrandMode strandMode) {
+    mStrandMode = strandMode;
+
+    return this;
+  }
+
+  /**
+   * Join two streams of regions. Both must be sorted by chromosome (in
+   * chromosome order) and then by start. Only the regions of b that can still
+   * overlap the current region of a are held in memory.
+   *
+   * @param a       the first set
+   * @param b       the second set
+   * @param visitor receives the overlapping pairs
+   * @throws IllegalArgumentException if a region is found out of order. Pairs
+   *                                  found before then will have been visited.
+   */
+  public <A extends GenomicRegion, B extends GenomicRegion> void join(Iterator<A> a, Iterator<B> b,
+      OverlapVisitor<? super A, ? super B> visitor) {
+    List<B> active = new ArrayList<B>();
+
+    B next = next(b, null);
+
+    Chromosome chr = null;
+
+    A ra = null;
+
+    while (a.hasNext()) {
+      ra = next(a, ra);
+
+      if (!ra.getChr().equals(chr)) {
+        chr = ra.getChr();
+
+        active.clear();
+
+        // Skip regions on chromosomes that a does not have
+        while (next != null && next.getChr().compareTo(chr) < 0) {
+          next = next(b, next);
+        }
+      }
+
+      // Bring in everything starting before the end of the region
+      while (next != null && next.getChr().equals(chr) && next.getStart() <= ra.getEnd()) {
+        active.add(next);
+        next = next(b, next);
+      }
+
+      // Regions ending before this start cannot overlap this or any later
+      // region of a, so drop them whilst testing the rest
+      int n = 0;
+
+      for (int i = 0; i < active.size(); ++i) {
+        B rb = active.get(i);
+
+        if (rb.getEnd() < ra.getStart()) {
+          continue;
+        }
+
+        active.set(n++, rb);
+
+        if (test(ra.getStart(), ra.getEnd(), ra.getStrand(), rb.getStart(), rb.getEnd(), rb.getStrand())) {
+          visitor.overlap(ra, rb);
+        }
+      }
+
+      active.subList(n, active.size()).clear();
+    }
+  }
+
+  /**
+   * Join two sets of regions grouped by chromosome, with each chromosome
+   * joined in parallel. Lists that are not sorted by start are sorted first
+   * (into a copy). Since chromosomes are joined concurrently the visitor must
+   * be thread safe.
+   *
+   * @param a       the first set
+   * @param b       the second set
+   * @param visitor receives the overlapping pairs
+   */
+  public <A extends GenomicRegion, B extends GenomicRegion> void join(Map<Chromosome, ? extends List<A>> a,
+      final Map<Chromosome, ? extends List<B>> b, final OverlapVisitor<? super A, ? super B> visitor) {
+    List<Entry<Chromosome, ? extends List<A>>> chrs = new ArrayList<Entry<Chromosome, ? extends List<A>>>();
+
+    for (Entry<Chromosome, ? extends List<A>> e : a.entrySet()) {
+      if (b.containsKey(e.getKey())) {
+        chrs.add(e);
+      }
+    }
+
+    chrs.parallelStream().forEach(e -> {
+      join(sortByStart(e.getValue()).iterator(), sortByStart(b.get(e.getKey())).iterator(), visitor);
+    });
+  }
+
+  /**
+   * Join two tracks, for example two BED files, in parallel by chromosome.
+   *
+   * @param a       the first track
+   * @param b       the second track
+   * @param visitor receives the overlapping pairs; must be thread safe
+   */
+  public void join(Iterable<Entry<Chromosome, List<GenomicElement>>> a,
+      Iterable<Entry<Chromosome, List<GenomicElement>>> b,
+      OverlapVisitor<? super GenomicElement, ? super GenomicElement> visitor) {
+    join(toMap(a), toMap(b), visitor);
+  }
+
+  /**
+   * Join a set of regions against an interval search, in parallel by
+   * chromosome. The sorted arrays of the search are swept directly, so no
+   * region objects are created for the search's features.
+   *
+   * @param a       the first set
+   * @param b       the search
+   * @param visitor receives each region of a with an overlapping feature of b;
+   *                must be thread safe
+   */
+  public <A extends GenomicRegion, B> void join(Map<Chromosome, ? extends List<A>> a, IntervalGapSearch<B> b,
+      final OverlapVisitor<? super A, ? super B> visitor) {
+    List<Entry<List<A>, IntervalIndex>> chrs = new ArrayList<Entry<List<A>, IntervalIndex>>();
+
+    for (Entry<Chromosome, ? extends List<A>> e : a.entrySet()) {
+      IntervalIndex index = b.getIndex(e.getKey());
+
+      if (index != null) {
+        chrs.add(new SimpleImmutableEntry<List<A>, IntervalIndex>(e.getValue(), index));
+      }
+    }
+
+    chrs.parallelStream().forEach(e -> {
+      join(sortByStart(e.getKey()), e.getValue(), visitor);
+    });
+  }
+
+  /**
+   * Sweep the regions of one chromosome against its index.
+   */
+  @SuppressWarnings("unchecked")
+  private <A extends GenomicRegion, B> void join(List<A> a, IntervalIndex b,
+      OverlapVisitor<? super A, ? super B> visitor) {
+    // Indices of the active features
+    int[] active = new int[16];
+    int size = 0;
+
+    int next = 0;
+
+    for (A ra : a) {
+      while (next < b.size() && b.getStart(next) <= ra.getEnd()) {
+        if (size == active.length) {
+          active = Arrays.copyOf(active, size * 2);
+        }
+
+        active[size++] = next++;
+      }
+
+      int n = 0;
+
+      for (int i = 0; i < size; ++i) {
+        int j = active[i];
+
+        if (b.getEnd(j) < ra.getStart()) {
+          continue;
+        }
+
+        active[n++] = j;
+
+        if (test(ra.getStart(), ra.getEnd(), ra.getStrand(), b.getStart(j), b.getEnd(j), b.getStrand(j))) {
+          visitor.overlap(ra, (B) b.getValue(j));
+        }
+      }
+
+      size = n;
+    }
+  }
+
+  /**
+   * Returns the next region of a stream, checking that it does not come
+   * before the previous one.
+   *
+   * @param iter the stream
+   * @param prev the previous region or null
+   * @return the next region or null if there are none left.
+   */
+  private static <T extends GenomicRegion> T next(Iterator<T> iter, T prev) {
+    if (!iter.hasNext()) {
+      return null;
+    }
+
+    T ret = iter.next();
+
+    if (prev != null) {
+      int c = ret.getChr().compareTo(prev.getChr());
+
+      if (c < 0 || (c == 0 && ret.getStart() < prev.getStart())) {
+        throw new IllegalArgumentException(ret + " is not sorted after " + prev + ".");
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Test whether an overlapping pair passes the filters.
+   */
+  private boolean test(int s1, int e1, Strand strand1, int s2, int e2, Strand strand2) {
+    int bp = Math.min(e1, e2) - Math.max(s1, s2) + 1;
+
+    if (bp < mMinBp) {
+      return false;
+    }
+
+    if (mFraction > 0 && bp < mFraction * (e1 - s1 + 1)) {
+      return false;
+    }
+
+    switch (mStrandMode) {
+    case SAME:
+      return strand1 == strand2;
+    case OPPOSITE:
+      return strand1 != strand2;
+    default:
+      return true;
+    }
+  }
+
+  /**
+   * Returns the list if it is sorted by start, otherwise a sorted copy.
+   */
+  private static <T extends GenomicRegion> List<T> sortByStart(List<T> regions) {
+    for (int i = 1; i < regions.size(); ++i) {
+      if (regions.get(i).getStart() < regions.get(i - 1).getStart()) {
+        List<T> ret = new ArrayList<T>(regions);
+
+        Collections.sort(ret, START_COMPARATOR);
+
+        return ret;
+      }
+    }
+
+    return regions;
+  }
+
+  private static Map<Chromosome, List<GenomicElement>> toMap(Iterable<Entry<Chromosome, List<GenomicElement>>> track) {
+    Map<Chromosome, List<GenomicElement>> ret = new TreeMap<Chromosome, List<GenomicElement>>();
+
+    for (Entry<Chromosome, List<GenomicElement>> e : track) {
+      ret.put(e.getKey(), e.getValue());
+    }
+
+    return ret;
+  }
+}
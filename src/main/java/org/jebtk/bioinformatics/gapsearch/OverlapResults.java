@@ -0,0 +1,391 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+
+/**
+ * A reusable alternative to {@link SearchResults} for hot query paths. Hits
+ * are appended to flat, growable arrays of coordinates, payloads and, for an
+ * {@link IntervalGapSearch}, the index of each feature within its chromosome,
+ * rather than to a tree map of regions and lists. Clearing keeps the storage,
+ * so once the arrays have grown to fit, queries on an interval gap search do
+ * not allocate.
+ * 
+ * A single query never returns the same feature twice. With deduplication
+ * enabled, features already returned by earlier queries since the last clear
+ * are also skipped, for example when collecting the features overlapping all
+ * of the exons of a gene. Interval gap searches track features with a bitset
+ * over their indices; other searches use the identity of their regions.
+ * 
+ * Deduplication is scoped to the index a feature came from. Each
+ * {@link IntervalIndex} snapshot gets its own bitset, so a buffer may be
+ * shared between searches, or kept across a rebuild of an
+ * {@link IntervalGapSearch} that shifts the indices of features, without
+ * real hits being dropped. The flip side is that the same feature found
+ * through two different searches, or before and after a rebuild, is
+ * returned twice. Clearing releases the bitsets from their indices and
+ * keeps them for reuse.
+ *
+ * @author Antony Holmes
+ * @param <T> the generic type
+ */
+public class OverlapResults<T> {
+  private final boolean mDedup;
+
+  private int mSize = 0;
+  private Chromosome[] mChrs;
+  private int[] mIndices;
+  private int[] mStarts;
+  private int[] mEnds;
+  private byte[] mStrands;
+  private Object[] mValues;
+
+  /** Scratch space for interval index queries. */
+  final IntervalHits mHits = new IntervalHits();
+
+  /** The bitset of the index each hit came from, or null. */
+  private long[][] mHitBits;
+
+  /** Features seen, by their position, in each index snapshot. */
+  private final Map<IntervalIndex, long[]> mBits = new IdentityHashMap<IntervalIndex, long[]>();
+
+  /** Cleared bitsets waiting to be reused. */
+  private final List<long[]> mFreeBits = new ArrayList<long[]>();
+
+  /** Open addressing identity set of the regions seen. */
+  private Object[] mSeen = new Object[16];
+  private int mSeenSize = 0;
+
+  /**
+   * Instantiates a new result buffer without deduplication across queries.
+   */
+  public OverlapResults() {
+    this(false);
+  }
+
+  /**
+   * Instantiates a new result buffer.
+   *
+   * @param dedup true to skip features returned by earlier queries since the
+   *              last clear.
+   */
+  public OverlapResults(boolean dedup) {
+    this(dedup, 64);
+  }
+
+  /**
+   * Instantiates a new result buffer.
+   *
+   * @param dedup    true to skip features returned by earlier queries since
+   *                 the last clear.
+   * @param capacity the initial capacity
+   */
+  public OverlapResults(boolean dedup, int capacity) {
+    mDedup = dedup;
+
+    capacity = Math.max(1, capacity);
+
+    mChrs = new Chromosome[capacity];
+    mIndices = new int[capacity];
+    mHitBits = new long[capacity][];
+    mStarts = new int[capacity];
+    mEnds = new int[capacity];
+    mStrands = new byte[capacity];
+    mValues = new Object[capacity];
+  }
+
+  /**
+   * Returns true if features are deduplicated across queries.
+   *
+   * @return true, if is dedup
+   */
+  public boolean isDedup() {
+    return mDedup;
+  }
+
+  /**
+   * Returns the number of hits.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  public Chromosome getChr(int i) {
+    return mChrs[i];
+  }
+
+  /**
+   * Returns the index of the ith hit within the {@link IntervalIndex} of its
+   * chromosome, or -1 if the hit was not from an interval gap search.
+   *
+   * @param i the i
+   * @return the index
+   */
+  public int getIndex(int i) {
+    return mIndices[i];
+  }
+
+  public int getStart(int i) {
+    return mStarts[i];
+  }
+
+  public int getEnd(int i) {
+    return mEnds[i];
+  }
+
+  public Strand getStrand(int i) {
+    return mStrands[i] == 1 ? Strand.ANTISENSE : Strand.SENSE;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T getValue(int i) {
+    return (T) mValues[i];
+  }
+
+  /**
+   * Create the region of a hit. A new object is created on each call.
+   *
+   * @param i the i
+   * @return the region
+   */
+  public GenomicRegion getRegion(int i) {
+    return new GenomicRegion(mChrs[i], mStarts[i], mEnds[i], getStrand(i));
+  }
+
+  /**
+   * Append the payload of each hit to a list.
+   *
+   * @param ret the list
+   */
+  public void toList(List<T> ret) {
+    for (int i = 0; i < mSize; ++i) {
+      ret.add(getValue(i));
+    }
+  }
+
+  /**
+   * Remove all hits whilst keeping the storage. This also forgets which
+   * features have been seen when deduplicating.
+   */
+  public void clear() {
+    clearBits();
+
+    clearSeen();
+
+    // Release the payloads
+    Arrays.fill(mValues, 0, mSize, null);
+
+    mSize = 0;
+  }
+
+  /**
+   * Append the features of an interval index overlapping a range by at least
+   * minBp.
+   */
+  void add(IntervalIndex index, int start, int end, int minBp) {
+    IntervalHits hits = mHits;
+
+    hits.clear();
+
+    index.overlap(start, end, hits);
+
+    long[] bits = mDedup ? bits(index) : null;
+
+    for (int i = 0; i < hits.size(); ++i) {
+      int h = hits.get(i);
+
+      int s = index.getStart(h);
+      int e = index.getEnd(h);
+
+      if (Math.min(e, end) - Math.max(s, start) + 1 < minBp) {
+        continue;
+      }
+
+      if (mDedup) {
+        long bit = 1L << h;
+
+        if ((bits[h >> 6] & bit) != 0) {
+          continue;
+        }
+
+        bits[h >> 6] |= bit;
+      }
+
+      add(index.getChr(), h, bits, s, e, index.getStrand(h), index.getValue(h));
+    }
+  }
+
+  /**
+   * Returns the bitset for an index snapshot, taking it from the free list
+   * if this is the first time the index has been seen since the last clear.
+   */
+  private long[] bits(IntervalIndex index) {
+    long[] bits = mBits.get(index);
+
+    if (bits == null) {
+      int words = (index.size() + 63) >> 6;
+
+      if (mFreeBits.size() > 0) {
+        bits = mFreeBits.remove(mFreeBits.size() - 1);
+
+        if (bits.length < words) {
+          bits = Arrays.copyOf(bits, words);
+        }
+      } else {
+        bits = new long[words];
+      }
+
+      mBits.put(index, bits);
+    }
+
+    return bits;
+  }
+
+  /**
+   * Append the values of a region unless the region has already been seen
+   * in this query, or since the last clear if deduplicating.
+   *
+   * @return false if the region has already been seen.
+   */
+  boolean add(GenomicRegion region, List<T> values) {
+    if (!markSeen(region)) {
+      return false;
+    }
+
+    for (T value : values) {
+      add(region.getChr(), -1, null, region.getStart(), region.getEnd(), region.getStrand(), value);
+    }
+
+    return true;
+  }
+
+  /**
+   * Called when a query on a search without an interval index has finished.
+   */
+  void endQuery() {
+    if (!mDedup) {
+      clearSeen();
+    }
+  }
+
+  private void add(Chromosome chr, int index, long[] bits, int start, int end, Strand strand, Object value) {
+    if (mSize == mStarts.length) {
+      int n = mSize * 2;
+
+      mChrs = Arrays.copyOf(mChrs, n);
+      mIndices = Arrays.copyOf(mIndices, n);
+      mHitBits = Arrays.copyOf(mHitBits, n);
+      mStarts = Arrays.copyOf(mStarts, n);
+      mEnds = Arrays.copyOf(mEnds, n);
+      mStrands = Arrays.copyOf(mStrands, n);
+      mValues = Arrays.copyOf(mValues, n);
+    }
+
+    mChrs[mSize] = chr;
+    mIndices[mSize] = index;
+    mHitBits[mSize] = bits;
+    mStarts[mSize] = start;
+    mEnds[mSize] = end;
+    mStrands[mSize] = strand == Strand.ANTISENSE ? (byte) 1 : 0;
+    mValues[mSize] = value;
+
+    ++mSize;
+  }
+
+  private void clearBits() {
+    if (mBits.size() == 0) {
+      return;
+    }
+
+    // Only clear the words that may have bits set
+    for (int i = 0; i < mSize; ++i) {
+      if (mHitBits[i] != null) {
+        mHitBits[i][mIndices[i] >> 6] = 0;
+        mHitBits[i] = null;
+      }
+    }
+
+    // Do not keep old snapshots alive
+    mFreeBits.addAll(mBits.values());
+    mBits.clear();
+  }
+
+  /**
+   * Add a region to the identity set.
+   *
+   * @return true if the region was not already in the set.
+   */
+  private boolean markSeen(Object region) {
+    if (mSeenSize * 2 >= mSeen.length) {
+      Object[] seen = mSeen;
+
+      mSeen = new Object[seen.length * 2];
+      mSeenSize = 0;
+
+      for (Object o : seen) {
+        if (o != null) {
+          markSeen(o);
+        }
+      }
+    }
+
+    int mask = mSeen.length - 1;
+    int i = System.identityHashCode(region) & mask;
+
+    while (mSeen[i] != null) {
+      if (mSeen[i] == region) {
+        return false;
+      }
+
+      i = (i + 1) & mask;
+    }
+
+    mSeen[i] = region;
+    ++mSeenSize;
+
+    return true;
+  }
+
+  private void clearSeen() {
+    if (mSeenSize > 0) {
+      Arrays.fill(mSeen, null);
+      mSeenSize = 0;
+    }
+  }
+}
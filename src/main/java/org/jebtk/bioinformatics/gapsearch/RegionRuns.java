@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.gapsearch;
+
+import java.util.Arrays;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+
+/**
+ * Intervals on one chromosome, each with an int value, held in growable
+ * primitive arrays. Used for the output of {@link GapSearchOperators} such as
+ * merged intervals (the value is the number of features merged) or per base
+ * depth (the value is the depth of each run). Coordinates are one based and
+ * closed, as with {@link GenomicRegion}.
+ *
+ * @author Antony Holmes
+ */
+public class RegionRuns {
+  private final Chromosome mChr;
+  private int mSize = 0;
+  private int[] mStarts;
+  private int[] mEnds;
+  private int[] mValues;
+
+  /**
+   * Instantiates a new empty set of runs.
+   *
+   * @param chr the chr
+   */
+  public RegionRuns(Chromosome chr) {
+    this(chr, 16);
+  }
+
+  /**
+   * Instantiates a new empty set of runs.
+   *
+   * @param chr      the chr
+   * @param capacity the initial capacity
+   */
+  public RegionRuns(Chromosome chr, int capacity) {
+    mChr = chr;
+
+    capacity = Math.max(1, capacity);
+
+    mStarts = new int[capacity];
+    mEnds = new int[capacity];
+    mValues = new int[capacity];
+  }
+
+  /**
+   * Add a run.
+   *
+   * @param start the start
+   * @param end   the end
+   * @param value the value
+   */
+  public void add(int start, int end, int value) {
+    if (mSize == mStarts.length) {
+      int n = mSize * 2;
+
+      mStarts = Arrays.copyOf(mStarts, n);
+      mEnds = Arrays.copyOf(mEnds, n);
+      mValues = Arrays.copyOf(mValues, n);
+    }
+
+    mStarts[mSize] = start;
+    mEnds[mSize] = end;
+    mValues[mSize] = value;
+
+    ++mSize;
+  }
+
+  public Chromosome getChr() {
+    return mChr;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public int getStart(int i) {
+    return mStarts[i];
+  }
+
+  public int getEnd(int i) {
+    return mEnds[i];
+  }
+
+  public int getValue(int i) {
+    return mValues[i];
+  }
+
+  /**
+   * Returns the total number of bases covered by the runs.
+   *
+   * @return the long
+   */
+  public long getBp() {
+    long ret = 0;
+
+    for (int i = 0; i < mSize; ++i) {
+      ret += mEnds[i] - mStarts[i] + 1;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Create the region of a run. A new object is created on each call.
+   *
+   * @param i the i
+   * @return the region
+   */
+  public GenomicRegion getRegion(int i) {
+    return new GenomicRegion(mChr, mStarts[i], mEnds[i]);
+  }
+}
@@ -55,7 +55,25 @@ public class SearchResults<T> implements Iterable<Entry<GenomicRegion, List<T>>>
   /**
    * The member features.
    */
-  private IterMap<GenomicRegion, List<T>> mFeatures = DefaultTreeMap.create(new ArrayListCreator<T>());
+  private final IterMap<GenomicRegion, List<T>> mFeatures;
+
+  /**
+   * Instantiates a new search results.
+   */
+  public SearchResults() {
+    this(DefaultTreeMap.create(new ArrayListCreator<T>()));
+  }
+
+  /**
+   * Instantiates a new search results backed by a map. Subclasses that store
+   * their features differently may pass null and must then override every
+   * method that reads or writes the map.
+   *
+   * @param features the features
+   */
+  protected SearchResults(IterMap<GenomicRegion, List<T>> features) {
+    mFeatures = features;
+  }
 
   /**
    * Adds the.
@@ -100,7 +118,7 @@ public class SearchResults<T> implements Iterable<Entry<GenomicRegion, List<T>>>
   }
 
   public List<T> toList() {
-    List<T> ret = new UniqueArrayList<T>(mFeatures.size());
+    List<T> ret = new UniqueArrayList<T>(size());
 
     for (Entry<GenomicRegion, List<T>> r : this) {
       ret.addAll(r.getValue());
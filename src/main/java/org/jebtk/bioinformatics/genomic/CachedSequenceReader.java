@@ -0,0 +1,406 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.genomic;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.jebtk.bioinformatics.DataSource;
+import org.jebtk.core.io.FileUtils;
+
+/**
+ * Read-through cache in front of another sequence reader, typically a web
+ * reader. Sequence is fetched in fixed size tiles which are kept in an LRU
+ * memory cache and optionally written to a directory so they survive restarts.
+ * Concurrent requests for the same tile share a single fetch from the
+ * underlying reader.
+ *
+ * Tiles are always fetched in uppercase with repeats in lowercase so that every
+ * combination of display case and repeat mask can be derived locally from the
+ * same cached bases.
+ *
+ * @author Antony Holmes
+ */
+public class CachedSequenceReader extends SequenceReader {
+
+  /** The default tile size in bp. */
+  public static final int DEFAULT_TILE_SIZE = 16384;
+
+  /** The default number of tiles to keep in memory. */
+  public static final int DEFAULT_MAX_TILES = 1024;
+
+  /**
+   * Identifies a tile of sequence.
+   */
+  private static class TileKey {
+    private final String mGenome;
+    private final Chromosome mChr;
+    private final int mTile;
+
+    public TileKey(Genome genome, Chromosome chr, int tile) {
+      mGenome = Genome.genomeId(genome.getName(), genome.getAssembly());
+      mChr = chr;
+      mTile = tile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof TileKey) {
+        TileKey k = (TileKey) o;
+
+        return mTile == k.mTile && mChr.equals(k.mChr) && mGenome.equals(k.mGenome);
+      } else {
+        return false;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return (mGenome.hashCode() * 31 + mChr.hashCode()) * 31 + mTile;
+    }
+  }
+
+  private final SequenceReader mReader;
+
+  private final int mTileSize;
+
+  /** The directory to store tiles in or null if there is no disk cache. */
+  private final Path mDir;
+
+  /** Tiles held in memory in least recently used order. */
+  private final Map<TileKey, String> mTiles;
+
+  /** Tiles currently being fetched so that requests can be coalesced. */
+  private final Map<TileKey, CompletableFuture<String>> mPending = new ConcurrentHashMap<TileKey, CompletableFuture<String>>();
+
+  /**
+   * Cache a reader in memory only using the default tile size.
+   *
+   * @param reader the reader
+   */
+  public CachedSequenceReader(SequenceReader reader) {
+    this(reader, null);
+  }
+
+  /**
+   * Cache a reader in memory and in a directory.
+   *
+   * @param reader the reader
+   * @param dir    the directory to store tiles in. May be null.
+   */
+  public CachedSequenceReader(SequenceReader reader, Path dir) {
+    this(reader, DEFAULT_TILE_SIZE, DEFAULT_MAX_TILES, dir);
+  }
+
+  /**
+   * Instantiates a new cached sequence reader.
+   *
+   * @param reader   the reader
+   * @param tileSize the size of each tile in bp
+   * @param maxTiles the maximum number of tiles to keep in memory
+   * @param dir      the directory to store tiles in. May be null.
+   */
+  public CachedSequenceReader(SequenceReader reader, int tileSize, final int maxTiles, Path dir) {
+    mReader = reader;
+    mTileSize = Math.max(1, tileSize);
+    mDir = dir;
+
+    mTiles = new LinkedHashMap<TileKey, String>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<TileKey, String> eldest) {
+        return size() > maxTiles;
+      }
+    };
+  }
+
+  @Override
+  public String getName() {
+    return mReader.getName();
+  }
+
+  /**
+   * Returns the reader being cached.
+   *
+   * @return the reader
+   */
+  public SequenceReader getReader() {
+    return mReader;
+  }
+
+  @Override
+  public SequenceRegion getSequence(Genome genome, GenomicRegion region, boolean displayUpper,
+      RepeatMaskType repeatMaskType) throws IOException {
+    Chromosome chr = region.getChr();
+
+    int start = Math.max(1, region.getStart());
+    int end = region.getEnd();
+
+    int ts = (start - 1) / mTileSize;
+    int te = (end - 1) / mTileSize;
+
+    StringBuilder buffer = new StringBuilder(Math.max(0, end - start + 1));
+
+    for (int t = ts; t <= te; ++t) {
+      String tile = getTile(genome, chr, t);
+
+      if (tile == null) {
+        return null;
+      }
+
+      // 0 based offsets of the region within the tile
+      int tileStart = t * mTileSize;
+      int s = Math.max(start - 1, tileStart) - tileStart;
+      int e = Math.min(end, tileStart + tile.length()) - tileStart;
+
+      if (s < e) {
+        buffer.append(tile, s, e);
+      }
+
+      // A short tile means we ran off the end of the chromosome
+      if (tile.length() < mTileSize) {
+        break;
+      }
+    }
+
+    Sequence sequence = Sequence.create(format(buffer, displayUpper, repeatMaskType));
+
+    if (sequence == null) {
+      return null;
+    }
+
+    return new SequenceRegion(region, sequence);
+  }
+
+  /**
+   * Convert cached bases (uppercase with lowercase repeats) into the requested
+   * display format.
+   *
+   * @param buffer         the buffer
+   * @param displayUpper   the display upper
+   * @param repeatMaskType the repeat mask type
+   * @return the string
+   */
+  private static String format(StringBuilder buffer, boolean displayUpper, RepeatMaskType repeatMaskType) {
+    // Mask first so that masked bases become n rather than ordinary lowercase
+    // bases when the sequence is displayed in lowercase
+    if (repeatMaskType == RepeatMaskType.N) {
+      for (int i = 0; i < buffer.length(); ++i) {
+        if (Character.isLowerCase(buffer.charAt(i))) {
+          buffer.setCharAt(i, 'N');
+        }
+      }
+    }
+
+    if (!displayUpper) {
+      return buffer.toString().toLowerCase();
+    }
+
+    if (repeatMaskType == RepeatMaskType.UPPERCASE) {
+      return buffer.toString().toUpperCase();
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * Return a tile from memory, disk or the underlying reader in that order.
+   *
+   * @param genome the genome
+   * @param chr    the chr
+   * @param t      the tile index
+   * @return the tile or null if it could not be fetched.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String getTile(Genome genome, Chromosome chr, int t) throws IOException {
+    TileKey key = new TileKey(genome, chr, t);
+
+    String tile;
+
+    synchronized (mTiles) {
+      tile = mTiles.get(key);
+    }
+
+    if (tile != null) {
+      return tile;
+    }
+
+    CompletableFuture<String> future = new CompletableFuture<String>();
+
+    CompletableFuture<String> pending = mPending.putIfAbsent(key, future);
+
+    if (pending != null) {
+      // Someone else is already fetching this tile so wait for them
+      return await(pending);
+    }
+
+    try {
+      tile = loadTile(genome, chr, t);
+
+      if (tile != null) {
+        synchronized (mTiles) {
+          mTiles.put(key, tile);
+        }
+      }
+
+      future.complete(tile);
+    } catch (IOException | RuntimeException e) {
+      future.completeExceptionally(e);
+
+      throw e;
+    } finally {
+      mPending.remove(key);
+    }
+
+    return tile;
+  }
+
+  /**
+   * Wait for a tile being fetched by another thread.
+   *
+   * @param pending the pending
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static String await(CompletableFuture<String> pending) throws IOException {
+    try {
+      return pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Load a tile from disk if possible, otherwise fetch it from the underlying
+   * reader and store it on disk.
+   *
+   * @param genome the genome
+   * @param chr    the chr
+   * @param t      the tile index
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String loadTile(Genome genome, Chromosome chr, int t) throws IOException {
+    Path file = null;
+
+    if (mDir != null) {
+      // Tile indices only mean something for one tile size so readers with
+      // different sizes can share a directory
+      file = mDir.resolve(Genome.genomeId(genome.getName(), genome.getAssembly()).replace(':', '_'))
+          .resolve(chr.toString()).resolve(Integer.toString(mTileSize)).resolve(t + ".txt");
+
+      if (FileUtils.exists(file)) {
+        BufferedReader reader = FileUtils.newBufferedReader(file);
+
+        try {
+          String tile = reader.readLine();
+
+          if (tile != null) {
+            return tile;
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    }
+
+    int start = t * mTileSize + 1;
+
+    SequenceRegion region = mReader.getSequence(genome, chr, start, start + mTileSize - 1, true,
+        RepeatMaskType.LOWERCASE);
+
+    if (region == null || region.getSequence() == null) {
+      return null;
+    }
+
+    String tile = region.getSequence().toString();
+
+    if (file != null) {
+      Files.createDirectories(file.getParent());
+
+      // Write to a temporary file first so that other processes sharing the
+      // directory never see a partially written tile.
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+      BufferedWriter writer = FileUtils.newBufferedWriter(tmp);
+
+      try {
+        writer.write(tile);
+      } finally {
+        writer.close();
+      }
+
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    return tile;
+  }
+
+  /**
+   * Remove all tiles from memory. Tiles on disk are left untouched.
+   */
+  public void clear() {
+    synchronized (mTiles) {
+      mTiles.clear();
+    }
+  }
+
+  @Override
+  public List<Genome> getGenomes() throws IOException {
+    return mReader.getGenomes();
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return mReader.getDataSource();
+  }
+
+  @Override
+  public SequenceType getSequenceType() {
+    return mReader.getSequenceType();
+  }
+}
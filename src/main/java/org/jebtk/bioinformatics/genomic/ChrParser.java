@@ -1,9 +1,22 @@
 package org.jebtk.bioinformatics.genomic;
 
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ChrParser {
 
+  /**
+   * The chromosomes created with this parser keyed by the name they were
+   * created from.
+   */
+  final ConcurrentMap<String, Chromosome> mNames = new ConcurrentHashMap<String, Chromosome>();
+
+  /**
+   * The chromosomes created with this parser keyed by short name, so that
+   * different spellings of a name share one instance.
+   */
+  final ConcurrentMap<String, Chromosome> mShortNames = new ConcurrentHashMap<String, Chromosome>();
+
   /**
    * Look for the numerical part of the chromosome to give it a numerical order.
    * 
@@ -14,12 +27,12 @@ public class ChrParser {
    * @return
    */
   public int getId(String name) {
-    Matcher matcher = Chromosome.CHR_NUM_GROUP_REGEX.matcher(name);
+    String num = findNum(name);
 
     int ret;
 
-    if (matcher.find()) {
-      ret = Short.parseShort(matcher.group(1));
+    if (num != null) {
+      ret = Short.parseShort(num);
     } else {
       // Assume a letter so subtract 65 (so A becomes 1, B 2 etc) and then
       // Shift 16 bits,
@@ -28,4 +41,31 @@ public class ChrParser {
 
     return ret;
   }
+
+  /**
+   * Returns the first number in a name, i.e. what
+   * {@link Chromosome#CHR_NUM_GROUP_REGEX} finds, without using a regex.
+   *
+   * @param name the name
+   * @return the digits of the number or null if there are none.
+   */
+  protected static String findNum(String name) {
+    int n = name.length();
+
+    for (int i = 0; i < n; ++i) {
+      char c = name.charAt(i);
+
+      if (c >= '1' && c <= '9') {
+        int j = i + 1;
+
+        while (j < n && name.charAt(j) >= '0' && name.charAt(j) <= '9') {
+          ++j;
+        }
+
+        return name.substring(i, j);
+      }
+    }
+
+    return null;
+  }
 }
@@ -54,6 +54,13 @@ public class Chromosome implements Comparable<Chromosome>, IdProperty, NameGette
    */
   public static final int MAX_NUM_CHR = 16777216;
 
+  /**
+   * The most names each parser will intern. Beyond this, new chromosomes are
+   * still created but not shared, so malformed input cannot grow the tables
+   * without limit.
+   */
+  private static final int MAX_INTERNED = 65536;
+
   /**
    * Represents an invalid chromosome.
    */
@@ -228,6 +235,10 @@ public class Chromosome implements Comparable<Chromosome>, IdProperty, NameGette
    */
   @Override
   public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+
     if (o instanceof Chromosome) {
       return compareTo((Chromosome) o) == 0;
     } else {
@@ -281,14 +292,28 @@ public class Chromosome implements Comparable<Chromosome>, IdProperty, NameGette
    * @return the short name
    */
   public static String getShortName(String chr) {
-    String ret = chr.toUpperCase()
-        // .replace("CHROMOSOME", TextUtils.EMPTY_STRING)
-        .replace("CHR_", TextUtils.EMPTY_STRING).replace("CHR-", TextUtils.EMPTY_STRING)
-        .replace("CHR", TextUtils.EMPTY_STRING);
+    String ret = chr.toUpperCase();
+
+    // .replace("CHROMOSOME", TextUtils.EMPTY_STRING)
+    ret = remove(ret, "CHR_");
+    ret = remove(ret, "CHR-");
+    ret = remove(ret, "CHR");
     // .replaceFirst("P.*", TextUtils.EMPTY_STRING)
     // .replaceFirst("Q.*", TextUtils.EMPTY_STRING);
 
-    if (TextUtils.isNumber(ret)) {
+    if (ret.length() == 0) {
+      return ret;
+    }
+
+    char c = ret.charAt(0);
+
+    // Only names that can be numbers need the number check
+    if (c >= '1' && c <= '9' && isDigits(ret) && ret.length() < 10) {
+      // Already a plain int
+      return ret;
+    }
+
+    if (((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') && TextUtils.isNumber(ret)) {
       // In case someone writes 'chr1.0', attempt to convert floats to ints
       ret = Integer.toString((int) Double.parseDouble(ret));
     }
@@ -304,6 +329,43 @@ public class Chromosome implements Comparable<Chromosome>, IdProperty, NameGette
     return ret;
   }
 
+  /**
+   * Remove every occurrence of a string from another.
+   */
+  private static String remove(String s, String t) {
+    int i = s.indexOf(t);
+
+    if (i == -1) {
+      return s;
+    }
+
+    StringBuilder buf = new StringBuilder(s.length());
+
+    int p = 0;
+
+    while (i != -1) {
+      buf.append(s, p, i);
+      p = i + t.length();
+      i = s.indexOf(t, p);
+    }
+
+    buf.append(s, p, s.length());
+
+    return buf.toString();
+  }
+
+  private static boolean isDigits(String s) {
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   public static Chromosome newChr(String chr) {
     return newHumanChr(chr);
   }
@@ -316,10 +378,42 @@ public class Chromosome implements Comparable<Chromosome>, IdProperty, NameGette
     return newChr(chr, MOUSE_PARSER);
   }
 
+  /**
+   * Returns the chromosome for a name. Chromosomes are interned per parser, so
+   * a name seen before is a single map lookup and names with the same short
+   * name, e.g. chr1 and 1, return the same instance.
+   *
+   * @param chr    the chr
+   * @param parser the parser
+   * @return the chromosome
+   */
   public static Chromosome newChr(String chr, ChrParser parser) {
+    Chromosome ret = parser.mNames.get(chr);
+
+    if (ret != null) {
+      return ret;
+    }
+
     String shortName = getShortName(chr);
-    int id = parser.getId(shortName);
 
-    return new Chromosome(id, shortName);
+    ret = parser.mShortNames.get(shortName);
+
+    if (ret == null) {
+      ret = new Chromosome(parser.getId(shortName), shortName);
+
+      if (parser.mShortNames.size() < MAX_INTERNED) {
+        Chromosome c = parser.mShortNames.putIfAbsent(shortName, ret);
+
+        if (c != null) {
+          ret = c;
+        }
+      }
+    }
+
+    if (parser.mNames.size() < MAX_INTERNED) {
+      parser.mNames.putIfAbsent(chr, ret);
+    }
+
+    return ret;
   }
 }
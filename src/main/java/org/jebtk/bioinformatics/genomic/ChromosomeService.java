@@ -205,6 +205,23 @@ public class ChromosomeService extends GenomeDirs implements Iterable<Genome> {
     return autoLoad(genome).size(chr);
   }
 
+  /**
+   * Returns the number of chromosomes known for a genome.
+   *
+   * @param genome the genome
+   * @return the number of chromosomes
+   */
+  public int getChrCount(Genome genome) {
+    int ret = 0;
+
+    for (@SuppressWarnings("unused")
+    Chromosome chr : autoLoad(genome)) {
+      ++ret;
+    }
+
+    return ret;
+  }
+
   public Chromosome hg19(String chr) {
     return chr(Genome.HG19, chr);
   }
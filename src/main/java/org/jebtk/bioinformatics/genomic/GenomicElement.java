@@ -30,7 +30,9 @@ package org.jebtk.bioinformatics.genomic;
 import java.awt.Color;
 import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -38,12 +40,10 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
-import org.jebtk.core.collections.DefaultHashMap;
 import org.jebtk.core.collections.DefaultTreeMap;
-import org.jebtk.core.collections.IterHashMap;
 import org.jebtk.core.collections.IterMap;
 import org.jebtk.core.collections.TreeSetCreator;
-import org.jebtk.core.collections.UniqueArrayListCreator;
+import org.jebtk.core.collections.UniqueArrayList;
 import org.jebtk.core.text.TextUtils;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
@@ -65,15 +65,23 @@ public class GenomicElement extends GenomicRegion {
    */
   private static final long serialVersionUID = 1L;
 
-  /** The m id map. */
-  protected IterMap<String, Object> mPropertyMap = new IterHashMap<String, Object>();
+  /**
+   * Property maps use a small array backed map until they grow beyond this
+   * size and then switch to a hash map.
+   */
+  private static final int MAX_SMALL_PROPERTIES = 8;
+
+  /**
+   * The m id map. Most elements, such as exons, carry few or no properties,
+   * tags or children so these containers are only created on first write.
+   */
+  protected Map<String, Object> mPropertyMap = null;
 
   /** The m tags. */
-  private Set<String> mTags = new TreeSet<String>();
+  private Set<String> mTags = null;
 
   /** The m elem map. */
-  private IterMap<GenomicType, List<GenomicElement>> mElemMap = DefaultHashMap
-      .create(new UniqueArrayListCreator<GenomicElement>());
+  private Map<GenomicType, List<GenomicElement>> mElemMap = null;
 
   /** The m utr 5 p. */
   // private List<Exon> mUtr5p = new ArrayList<Exon>();
@@ -176,7 +184,18 @@ public class GenomicElement extends GenomicRegion {
    * @param e A genomic entity.
    */
   public void addChild(GenomicElement e) {
-    mElemMap.get(e.mType).add(e);
+    if (mElemMap == null) {
+      mElemMap = new SmallMap<GenomicType, List<GenomicElement>>();
+    }
+
+    List<GenomicElement> children = mElemMap.get(e.mType);
+
+    if (children == null) {
+      children = new UniqueArrayList<GenomicElement>(2);
+      mElemMap.put(e.mType, children);
+    }
+
+    children.add(e);
   }
 
   /**
@@ -186,6 +205,10 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public Iterable<GenomicType> getChildTypes() {
+    if (mElemMap == null) {
+      return Collections.emptyList();
+    }
+
     return mElemMap.keySet().stream().sorted().collect(Collectors.toList());
   }
 
@@ -197,11 +220,21 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public Iterable<GenomicElement> getChildren(GenomicType type) {
-    return mElemMap.get(type);
+    List<GenomicElement> ret = mElemMap != null ? mElemMap.get(type) : null;
+
+    if (ret == null) {
+      return Collections.emptyList();
+    }
+
+    return ret;
   }
 
   @JsonIgnore
   public Set<Entry<GenomicType, List<GenomicElement>>> getChildren() {
+    if (mElemMap == null) {
+      return Collections.emptySet();
+    }
+
     return mElemMap.entrySet();
   }
 
@@ -213,7 +246,9 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public int getChildCount(GenomicType type) {
-    return mElemMap.get(type).size();
+    List<GenomicElement> children = mElemMap != null ? mElemMap.get(type) : null;
+
+    return children != null ? children.size() : 0;
   }
 
   // public Iterable<Entry<String, String>> getPropertyNames() {
@@ -228,23 +263,46 @@ public class GenomicElement extends GenomicRegion {
    * @return the genomic entity
    */
   public GenomicElement setProperty(String name, String value) {
-    mPropertyMap.put(name, value);
+    putProperty(name, value);
 
     return this;
   }
 
   public GenomicElement setProperty(String name, int value) {
-    mPropertyMap.put(name, value);
+    putProperty(name, value);
 
     return this;
   }
 
   public GenomicElement setProperty(String name, double value) {
-    mPropertyMap.put(name, value);
+    putProperty(name, value);
 
     return this;
   }
 
+  private void putProperty(String name, Object value) {
+    if (mPropertyMap == null) {
+      mPropertyMap = new SmallMap<String, Object>();
+    } else if (mPropertyMap.size() >= MAX_SMALL_PROPERTIES && mPropertyMap instanceof SmallMap) {
+      mPropertyMap = new HashMap<String, Object>(mPropertyMap);
+    }
+
+    mPropertyMap.put(name, value);
+  }
+
+  /**
+   * Returns the properties or an empty map if none have been set.
+   *
+   * @return the property map
+   */
+  private Map<String, Object> getPropertyMap() {
+    if (mPropertyMap == null) {
+      return Collections.emptyMap();
+    }
+
+    return mPropertyMap;
+  }
+
   /*
    * public GenomicElement setProperty(String name, Tag property) { if
    * (TextUtils.isNullOrEmpty(name)) { return this; }
@@ -264,7 +322,7 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public boolean hasProperty(String name) {
-    return mPropertyMap.containsKey(name);
+    return getPropertyMap().containsKey(name);
   }
 
   /**
@@ -275,7 +333,7 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public Iterable<String> getPropertyNames() {
-    return mPropertyMap.entrySet().stream().sorted(Map.Entry.comparingByKey()).map(e -> e.getKey())
+    return getPropertyMap().entrySet().stream().sorted(Map.Entry.comparingByKey()).map(e -> e.getKey())
         .collect(Collectors.toList());
   }
 
@@ -286,7 +344,7 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public int getPropertyCount() {
-    return mPropertyMap.size();
+    return getPropertyMap().size();
   }
 
   /**
@@ -313,7 +371,7 @@ public class GenomicElement extends GenomicRegion {
 
     // System.err.println("tag:" + name);
 
-    if (!mPropertyMap.containsKey(name)) {
+    if (!hasProperty(name)) {
       setProperty(name, TextUtils.NA);
     }
 
@@ -340,6 +398,10 @@ public class GenomicElement extends GenomicRegion {
    * @return
    */
   public GenomicElement addTag(String tag) {
+    if (mTags == null) {
+      mTags = new TreeSet<String>();
+    }
+
     mTags.add(tag);
 
     return this;
@@ -354,6 +416,10 @@ public class GenomicElement extends GenomicRegion {
   }
 
   public GenomicElement addTags(Collection<String> tags) {
+    if (mTags == null) {
+      mTags = new TreeSet<String>();
+    }
+
     mTags.addAll(tags);
 
     return this;
@@ -366,6 +432,10 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonGetter("tags")
   public Iterable<String> getTags() {
+    if (mTags == null) {
+      return Collections.emptySet();
+    }
+
     return mTags;
   }
 
@@ -376,7 +446,7 @@ public class GenomicElement extends GenomicRegion {
    */
   @JsonIgnore
   public int getTagCount() {
-    return mTags.size();
+    return mTags != null ? mTags.size() : 0;
   }
 
   /**
@@ -436,7 +506,7 @@ public class GenomicElement extends GenomicRegion {
       buffer.append(" ").append(getStrand());
       buffer.append(" [");
 
-      buffer.append(mPropertyMap.entrySet().stream().sorted(Map.Entry.comparingByKey())
+      buffer.append(getPropertyMap().entrySet().stream().sorted(Map.Entry.comparingByKey())
           .map(entry -> entry.getKey() + "=" + entry.getValue()).collect(Collectors.joining(", ")));
 
       buffer.append("]");
@@ -538,7 +608,7 @@ public class GenomicElement extends GenomicRegion {
       e.mColor = color;
 
       if (propogate) {
-        for (Entry<GenomicType, List<GenomicElement>> item : element.getChildren()) {
+        for (Entry<GenomicType, List<GenomicElement>> item : e.getChildren()) {
           for (GenomicElement c : item.getValue()) {
             stack.push(c);
           }
@@ -578,7 +648,7 @@ public class GenomicElement extends GenomicRegion {
   }
 
   public Iterable<Entry<String, Object>> getProperties() {
-    return mPropertyMap.entrySet().stream().sorted(Map.Entry.comparingByKey()).collect(Collectors.toList());
+    return getPropertyMap().entrySet().stream().sorted(Map.Entry.comparingByKey()).collect(Collectors.toList());
   }
 
 }
@@ -320,6 +320,169 @@ public class GenomicRegion extends Region {
    * @return the genomic region
    */
   public static GenomicRegion parse(Genome genome, String location) {
+    return parse(genome, location, false);
+  }
+
+  /**
+   * Parse a position annotation. Locations of the form chr:start(-end) with
+   * optional commas in the numbers and an optional strand suffix, e.g.
+   * chr1:1,000-2,000 or chr1:1000-2000:-, are read in a single pass without
+   * regular expressions. Anything else falls back to the pattern based
+   * parser.
+   *
+   * @param genome    the genome
+   * @param location  the location
+   * @param zeroBased true if the start is zero based and the end exclusive,
+   *                  as in BED files, rather than one based and inclusive. A
+   *                  single position is then the zero based position of one
+   *                  base, so chr1:999 is chr1:1000-1000. Locations that are
+   *                  just a chromosome name are not affected.
+   * @return the genomic region
+   */
+  public static GenomicRegion parse(Genome genome, String location, boolean zeroBased) {
+    if (location != null && location.startsWith("chr")) {
+      int n = location.length();
+      int i = 3;
+
+      while (i < n && isChrChar(location.charAt(i))) {
+        ++i;
+      }
+
+      if (i > 3 && i < n && location.charAt(i) == ':') {
+        int chrEnd = i;
+
+        long num = parseNum(location, i + 1);
+
+        if (num != -1) {
+          int start = (int) (num >>> 32);
+          int end = -1;
+          i = (int) num;
+
+          if (i + 1 < n && location.charAt(i) == '-' && isDigit(location.charAt(i + 1))) {
+            num = parseNum(location, i + 1);
+
+            if (num != -1) {
+              end = (int) (num >>> 32);
+              i = (int) num;
+            } else {
+              // Too large for an int so let the fall back decide
+              i = -1;
+            }
+          }
+
+          Strand strand = Strand.SENSE;
+
+          if (i != -1 && i < n) {
+            char c = location.charAt(i);
+
+            if ((c == ':' || c == ' ' || c == '\t') && i + 1 < n) {
+              c = location.charAt(++i);
+            }
+
+            if (c == '-') {
+              strand = Strand.ANTISENSE;
+            }
+
+            if ((c == '+' || c == '-') && i + 1 == n) {
+              i = n;
+            } else {
+              i = -1;
+            }
+          }
+
+          if (i == n) {
+            Chromosome chr = ChromosomeService.getInstance().chr(location.substring(0, chrEnd));
+
+            if (chr == null) {
+              return null;
+            }
+
+            return createParsed(chr, start, end, strand, zeroBased);
+          }
+        }
+      }
+    }
+
+    return parseLocation(genome, location, zeroBased);
+  }
+
+  /**
+   * Create a parsed region, converting zero based coordinates to one based.
+   *
+   * @param chr       the chr
+   * @param start     the start
+   * @param end       the end or -1 if only a single position was given
+   * @param strand    the strand
+   * @param zeroBased true if the coordinates are zero based
+   * @return the genomic region
+   */
+  private static GenomicRegion createParsed(Chromosome chr, int start, int end, Strand strand, boolean zeroBased) {
+    if (zeroBased) {
+      // A zero based end is exclusive so is already the one based end
+      ++start;
+    }
+
+    if (end == -1) {
+      end = start;
+    }
+
+    return new GenomicRegion(chr, start, end, strand);
+  }
+
+  /**
+   * Parse a non-negative number with optional comma separators, e.g. 1,000,
+   * starting at index i.
+   *
+   * @param s the s
+   * @param i the i
+   * @return the number in the high 32 bits and the index after it in the low,
+   *         or -1 if there is no number or it is too large for an int.
+   */
+  private static long parseNum(String s, int i) {
+    int n = s.length();
+    int start = i;
+    long ret = 0;
+
+    while (i < n) {
+      char c = s.charAt(i);
+
+      if (isDigit(c)) {
+        ret = ret * 10 + (c - '0');
+
+        if (ret > Integer.MAX_VALUE) {
+          return -1;
+        }
+      } else if (c != ',' || i == start || i + 1 == n || !isDigit(s.charAt(i + 1))) {
+        break;
+      }
+
+      ++i;
+    }
+
+    if (i == start) {
+      return -1;
+    }
+
+    return (ret << 32) | i;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isChrChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '-' || c == '_';
+  }
+
+  /**
+   * Pattern based parsing of a location.
+   *
+   * @param genome    the genome
+   * @param location  the location
+   * @param zeroBased true if the coordinates are zero based
+   * @return the genomic region
+   */
+  private static GenomicRegion parseLocation(Genome genome, String location, boolean zeroBased) {
     // System.err.println("location: " + location);
 
     if (Io.isEmptyLine(location)) {
@@ -344,7 +507,7 @@ public class GenomicRegion extends Region {
       }
 
       int start = 1;
-      int end = 1;
+      int end = -1;
 
       matcher = GENOMIC_NUM_PATTERN.matcher(location);
 
@@ -357,12 +520,10 @@ public class GenomicRegion extends Region {
 
       if (matcher.find()) {
         end = TextUtils.parseInt(matcher.group(1));
-      } else {
-        // If no end is specified, make the end at least the start
-        end = start;
       }
 
-      return new GenomicRegion(chr, start, end);
+      // If no end is specified, make the end at least the start
+      return createParsed(chr, start, end, Strand.SENSE, zeroBased);
     } else if (isRegion(location)) {
       location = region(location);
 
@@ -381,6 +542,14 @@ public class GenomicRegion extends Region {
 
         start = TextUtils.parseInt(location);
         end = start;
+
+        if (zeroBased) {
+          end = start + 1;
+        }
+      }
+
+      if (zeroBased) {
+        ++start;
       }
 
       return GenomicRegion.create(start, end);
@@ -53,11 +53,9 @@ public class GenomicRegions<T extends GenomicElement> extends ListModel<T> {
    * @return the fixed gap search
    */
   public static <X extends GenomicElement> GapSearch<X> getFixedGapSearch(Iterable<X> regions) {
-    GapSearch<X> search = new FixedGapSearch<X>();
+    FixedGapSearch<X> search = new FixedGapSearch<X>();
 
-    for (X region : regions) {
-      search.add(region, region);
-    }
+    search.addAll(regions, r -> r);
 
     return search;
   }
@@ -72,9 +70,7 @@ public class GenomicRegions<T extends GenomicElement> extends ListModel<T> {
   public static <X extends GenomicElement> BinaryGapSearch<X> getBinarySearch(Iterable<X> regions) {
     BinaryGapSearch<X> search = new BinaryGapSearch<X>();
 
-    for (X region : regions) {
-      search.add(region, region);
-    }
+    search.addAll(regions, r -> r);
 
     return search;
   }
@@ -1,7 +1,5 @@
 package org.jebtk.bioinformatics.genomic;
 
-import java.util.regex.Matcher;
-
 public class MouseChrParser extends ChrParser {
 
   /**
@@ -12,10 +10,10 @@ public class MouseChrParser extends ChrParser {
    */
   @Override
   public int getId(String name) {
-    Matcher matcher = Chromosome.CHR_NUM_GROUP_REGEX.matcher(name);
+    String num = findNum(name);
 
-    if (matcher.find()) {
-      return Integer.parseInt(matcher.group(1));
+    if (num != null) {
+      return Integer.parseInt(num);
     } else {
       char c = name.charAt(0);
 
@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.genomic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact store for large numbers of regions such as reads or variant
+ * positions. Each region takes 12 bytes in three parallel int arrays (start,
+ * end and a chromosome index packed with the strand) rather than a
+ * {@link GenomicRegion} object and its listener list. Chromosomes are held
+ * once in a table.
+ * 
+ * Regions are read either by index or through a {@link View}, a flyweight
+ * with the same getters as {@link GenomicRegion} that can be moved between
+ * regions without allocating. Since GenomicRegion is a class with final
+ * fields, a view cannot stand in for one; use {@link View#toRegion()} or
+ * {@link #getRegion(int)} where a GenomicRegion is required.
+ *
+ * @author Antony Holmes
+ */
+public class PackedRegions implements Iterable<PackedRegions.View> {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /**
+   * A read only view of one region of the store.
+   */
+  public class View {
+    private int mIndex;
+
+    private View(int index) {
+      mIndex = index;
+    }
+
+    /**
+     * Move the view to another region.
+     *
+     * @param index the index
+     * @return the view
+     */
+    public View moveTo(int index) {
+      mIndex = index;
+
+      return this;
+    }
+
+    /**
+     * Gets the index of the region being viewed.
+     *
+     * @return the index
+     */
+    public int getIndex() {
+      return mIndex;
+    }
+
+    public Chromosome getChr() {
+      return PackedRegions.this.getChr(mIndex);
+    }
+
+    public int getStart() {
+      return mStarts[mIndex];
+    }
+
+    public int getEnd() {
+      return mEnds[mIndex];
+    }
+
+    public int getLength() {
+      return mEnds[mIndex] - mStarts[mIndex] + 1;
+    }
+
+    public Strand getStrand() {
+      return PackedRegions.this.getStrand(mIndex);
+    }
+
+    /**
+     * Returns the start considering the strand orientation.
+     *
+     * @return the str start
+     * @see GenomicRegion#getStrStart()
+     */
+    public int getStrStart() {
+      return getStrand() == Strand.SENSE ? getStart() : getEnd();
+    }
+
+    /**
+     * Returns the end considering the strand orientation.
+     *
+     * @return the str end
+     * @see GenomicRegion#getStrEnd()
+     */
+    public int getStrEnd() {
+      return getStrand() == Strand.SENSE ? getEnd() : getStart();
+    }
+
+    public String getLocation() {
+      return GenomicRegion.toLocation(getChr(), getStart(), getEnd());
+    }
+
+    /**
+     * Returns true if the region overlaps a range.
+     *
+     * @param chr   the chr
+     * @param start the start
+     * @param end   the end
+     * @return true, if successful
+     */
+    public boolean overlaps(Chromosome chr, int start, int end) {
+      return getChr().equals(chr) && getStart() <= end && getEnd() >= start;
+    }
+
+    /**
+     * Copy the region being viewed into a new GenomicRegion.
+     *
+     * @return the genomic region
+     */
+    public GenomicRegion toRegion() {
+      return getRegion(mIndex);
+    }
+
+    @Override
+    public String toString() {
+      return getLocation();
+    }
+  }
+
+  private int[] mStarts;
+  private int[] mEnds;
+
+  /** The chromosome index shifted left by 1 with the strand in the low bit. */
+  private int[] mChrStrands;
+
+  private int mSize = 0;
+
+  private final List<Chromosome> mChrs = new ArrayList<Chromosome>();
+
+  private final Map<Chromosome, Integer> mChrIndex = new HashMap<Chromosome, Integer>();
+
+  /** Regions usually arrive grouped by chromosome so cache the last one. */
+  private Chromosome mLastChr = null;
+  private int mLastChrIndex = -1;
+
+  /**
+   * Instantiates a new packed region store.
+   */
+  public PackedRegions() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Instantiates a new packed region store.
+   *
+   * @param capacity the expected number of regions
+   */
+  public PackedRegions(int capacity) {
+    capacity = Math.max(1, capacity);
+
+    mStarts = new int[capacity];
+    mEnds = new int[capacity];
+    mChrStrands = new int[capacity];
+  }
+
+  /**
+   * Create a store from existing regions.
+   *
+   * @param regions the regions
+   * @return the packed regions
+   */
+  public static PackedRegions create(Iterable<? extends GenomicRegion> regions) {
+    PackedRegions ret = new PackedRegions();
+
+    ret.addAll(regions);
+
+    return ret;
+  }
+
+  /**
+   * Add a region.
+   *
+   * @param region the region
+   * @return the index of the region
+   */
+  public int add(GenomicRegion region) {
+    return add(region.mChr, region.mStart, region.mEnd, region.mStrand);
+  }
+
+  /**
+   * Add regions.
+   *
+   * @param regions the regions
+   */
+  public void addAll(Iterable<? extends GenomicRegion> regions) {
+    for (GenomicRegion region : regions) {
+      add(region);
+    }
+  }
+
+  /**
+   * Add a sense strand region.
+   *
+   * @param chr   the chr
+   * @param start the start
+   * @param end   the end
+   * @return the index of the region
+   */
+  public int add(Chromosome chr, int start, int end) {
+    return add(chr, start, end, Strand.SENSE);
+  }
+
+  /**
+   * Add a region. Coordinates are corrected in the same way as
+   * {@link Region}: they are made at least 1 and swapped if the start is
+   * after the end.
+   *
+   * @param chr    the chr
+   * @param start  the start
+   * @param end    the end
+   * @param strand the strand
+   * @return the index of the region
+   */
+  public int add(Chromosome chr, int start, int end, Strand strand) {
+    start = Region.oneBased(start);
+    end = Region.oneBased(end);
+
+    if (start > end) {
+      int t = start;
+      start = end;
+      end = t;
+    }
+
+    if (mSize == mStarts.length) {
+      int capacity = mSize + (mSize >> 1) + 1;
+
+      mStarts = Arrays.copyOf(mStarts, capacity);
+      mEnds = Arrays.copyOf(mEnds, capacity);
+      mChrStrands = Arrays.copyOf(mChrStrands, capacity);
+    }
+
+    mStarts[mSize] = start;
+    mEnds[mSize] = end;
+    mChrStrands[mSize] = (chrIndex(chr) << 1) | (strand == Strand.ANTISENSE ? 1 : 0);
+
+    return mSize++;
+  }
+
+  private int chrIndex(Chromosome chr) {
+    if (chr != mLastChr) {
+      Integer index = mChrIndex.get(chr);
+
+      if (index == null) {
+        index = mChrs.size();
+        mChrs.add(chr);
+        mChrIndex.put(chr, index);
+      }
+
+      mLastChr = chr;
+      mLastChrIndex = index;
+    }
+
+    return mLastChrIndex;
+  }
+
+  /**
+   * Returns the number of regions.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  public Chromosome getChr(int i) {
+    return mChrs.get(mChrStrands[i] >>> 1);
+  }
+
+  public int getStart(int i) {
+    return mStarts[i];
+  }
+
+  public int getEnd(int i) {
+    return mEnds[i];
+  }
+
+  public Strand getStrand(int i) {
+    return (mChrStrands[i] & 1) == 1 ? Strand.ANTISENSE : Strand.SENSE;
+  }
+
+  /**
+   * Copy a region into a new GenomicRegion.
+   *
+   * @param i the index
+   * @return the genomic region
+   */
+  public GenomicRegion getRegion(int i) {
+    return new GenomicRegion(getChr(i), mStarts[i], mEnds[i], getStrand(i));
+  }
+
+  /**
+   * Copy every region into a GenomicRegion.
+   *
+   * @return the regions
+   */
+  public List<GenomicRegion> toRegions() {
+    List<GenomicRegion> ret = new ArrayList<GenomicRegion>(mSize);
+
+    for (int i = 0; i < mSize; ++i) {
+      ret.add(getRegion(i));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns a new view of a region.
+   *
+   * @param i the index
+   * @return the view
+   */
+  public View view(int i) {
+    return new View(i);
+  }
+
+  /**
+   * Release unused capacity.
+   */
+  public void trimToSize() {
+    mStarts = Arrays.copyOf(mStarts, mSize);
+    mEnds = Arrays.copyOf(mEnds, mSize);
+    mChrStrands = Arrays.copyOf(mChrStrands, mSize);
+  }
+
+  /**
+   * Iterate over the regions. The iterator returns the same view each time,
+   * moved to the next region, so a view must be copied with
+   * {@link View#toRegion()} if it is to be kept.
+   */
+  @Override
+  public Iterator<View> iterator() {
+    return new Iterator<View>() {
+      private final View mView = new View(-1);
+
+      @Override
+      public boolean hasNext() {
+        return mView.mIndex + 1 < mSize;
+      }
+
+      @Override
+      public View next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        return mView.moveTo(mView.mIndex + 1);
+      }
+    };
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.genomic;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs sequence fetches on an underlying executor while allowing no more than a
+ * fixed number of them to run at once. Tasks over the limit are queued rather
+ * than blocking a thread, so a reader that is not thread safe can be given a
+ * limit of 1 and still be shared by many callers.
+ *
+ * @author Antony Holmes
+ */
+public class SequenceExecutor implements Executor {
+
+  /**
+   * Lazily create the default thread pool. Threads are daemons so that pending
+   * fetches do not keep an application alive.
+   */
+  private static class DefaultExecutorLoader {
+    private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "sequence-reader");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Returns the shared executor used when a reader has not been given one.
+   *
+   * @return the executor
+   */
+  public static Executor getDefaultExecutor() {
+    return DefaultExecutorLoader.INSTANCE;
+  }
+
+  private final Executor mExecutor;
+
+  private final int mMaxConcurrent;
+
+  private final Queue<Runnable> mQueue = new ConcurrentLinkedQueue<Runnable>();
+
+  private final AtomicInteger mActive = new AtomicInteger(0);
+
+  /**
+   * Instantiates a new sequence executor.
+   *
+   * @param executor      the executor to run tasks on
+   * @param maxConcurrent the maximum number of tasks to run at once
+   */
+  public SequenceExecutor(Executor executor, int maxConcurrent) {
+    mExecutor = executor;
+    mMaxConcurrent = Math.max(1, maxConcurrent);
+  }
+
+  /**
+   * Returns the maximum number of tasks that can run at once.
+   *
+   * @return the int
+   */
+  public int getMaxConcurrent() {
+    return mMaxConcurrent;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    mQueue.add(task);
+
+    drain();
+  }
+
+  /**
+   * Start queued tasks while there are free slots.
+   */
+  private void drain() {
+    while (!mQueue.isEmpty()) {
+      int active = mActive.get();
+
+      if (active >= mMaxConcurrent) {
+        return;
+      }
+
+      if (!mActive.compareAndSet(active, active + 1)) {
+        continue;
+      }
+
+      final Runnable task = mQueue.poll();
+
+      if (task == null) {
+        // Another thread took the last task
+        mActive.decrementAndGet();
+        continue;
+      }
+
+      try {
+        mExecutor.execute(() -> {
+          try {
+            task.run();
+          } finally {
+            mActive.decrementAndGet();
+
+            drain();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // Give the slot back otherwise it is lost for good
+        mActive.decrementAndGet();
+
+        throw e;
+      }
+    }
+  }
+}
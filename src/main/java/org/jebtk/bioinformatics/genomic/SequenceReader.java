@@ -32,6 +32,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.jebtk.bioinformatics.DataSource;
 import org.jebtk.core.NameGetter;
@@ -43,6 +45,16 @@ import org.jebtk.core.NameGetter;
  * @author Antony Holmes
  */
 public abstract class SequenceReader implements NameGetter {
+
+  /**
+   * Most readers cache file handles and buffers so by default only one
+   * asynchronous fetch per reader runs at a time.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT = 1;
+
+  /** Runs asynchronous fetches for this reader. */
+  private SequenceExecutor mExecutor = null;
+
   /**
    * Process a sequence of the form chrN:X-Y.
    *
@@ -177,6 +189,108 @@ public abstract class SequenceReader implements NameGetter {
     return sequences;
   }
 
+  /**
+   * Set the executor used for asynchronous fetches and how many fetches from
+   * this reader may run at once. Only raise the limit above 1 for readers that
+   * are safe to call from multiple threads.
+   *
+   * @param executor      the executor
+   * @param maxConcurrent the maximum number of concurrent fetches
+   */
+  public synchronized void setExecutor(Executor executor, int maxConcurrent) {
+    mExecutor = new SequenceExecutor(executor, maxConcurrent);
+  }
+
+  /**
+   * Returns the executor used for asynchronous fetches, creating one on the
+   * shared default thread pool if none has been set.
+   *
+   * @return the executor
+   */
+  public synchronized SequenceExecutor getExecutor() {
+    if (mExecutor == null) {
+      mExecutor = new SequenceExecutor(SequenceExecutor.getDefaultExecutor(), DEFAULT_MAX_CONCURRENT);
+    }
+
+    return mExecutor;
+  }
+
+  /**
+   * Asynchronously fetch a sequence, uppercase without repeats.
+   *
+   * @param genome the genome
+   * @param region the region
+   * @return the future sequence
+   */
+  public CompletableFuture<SequenceRegion> getSequenceAsync(Genome genome, GenomicRegion region) {
+    return getSequenceAsync(genome, region, true, RepeatMaskType.UPPERCASE);
+  }
+
+  /**
+   * Asynchronously fetch a sequence. The fetch is queued on the reader's
+   * executor and the calling thread returns immediately. A future cancelled
+   * before the fetch starts stays queued but is skipped without reading when
+   * it reaches the front; a fetch already running is allowed to finish but its
+   * result is discarded. I/O errors complete the
+   * future exceptionally.
+   *
+   * @param genome         the genome
+   * @param region         the region
+   * @param displayUpper   the display upper
+   * @param repeatMaskType the repeat mask type
+   * @return the future sequence
+   */
+  public CompletableFuture<SequenceRegion> getSequenceAsync(final Genome genome, final GenomicRegion region,
+      final boolean displayUpper, final RepeatMaskType repeatMaskType) {
+    final CompletableFuture<SequenceRegion> ret = new CompletableFuture<SequenceRegion>();
+
+    getExecutor().execute(() -> {
+      if (ret.isDone()) {
+        // Cancelled whilst queued
+        return;
+      }
+
+      try {
+        ret.complete(getSequence(genome, region, displayUpper, repeatMaskType));
+      } catch (IOException | RuntimeException e) {
+        ret.completeExceptionally(e);
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Asynchronously fetch a batch of sequences. The batch is fetched as a single
+   * task using {@link #getSequences(Genome, Collection, boolean, RepeatMaskType)}
+   * so readers that optimize batches (e.g. by sorting by chromosome) keep that
+   * benefit.
+   *
+   * @param genome         the genome
+   * @param regions        the regions
+   * @param displayUpper   the display upper
+   * @param repeatMaskType the repeat mask type
+   * @return the future sequences in the same order as the regions
+   */
+  public CompletableFuture<List<SequenceRegion>> getSequencesAsync(final Genome genome,
+      final Collection<GenomicRegion> regions, final boolean displayUpper, final RepeatMaskType repeatMaskType) {
+    final CompletableFuture<List<SequenceRegion>> ret = new CompletableFuture<List<SequenceRegion>>();
+
+    getExecutor().execute(() -> {
+      if (ret.isDone()) {
+        return;
+      }
+
+      try {
+        ret.complete(getSequences(genome, regions, displayUpper, repeatMaskType));
+      } catch (IOException | RuntimeException e) {
+        ret.completeExceptionally(e);
+      }
+    });
+
+    return ret;
+  }
+
   /**
    * Should return a list of the available genomes.
    *
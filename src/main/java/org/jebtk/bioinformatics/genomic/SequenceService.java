@@ -29,10 +29,15 @@ package org.jebtk.bioinformatics.genomic;
 
 import java.awt.Color;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
+import org.jebtk.bioinformatics.DataSource;
 import org.jebtk.core.collections.DefaultHashMap;
 import org.jebtk.core.collections.EntryCreator;
 import org.jebtk.core.collections.IterMap;
@@ -76,7 +81,7 @@ public class SequenceService extends SequenceReader
 
   private final ChangeListeners mListeners = new ChangeListeners();
 
-  private boolean mAutoLoad = true;
+  private volatile boolean mAutoLoad = true;
 
   private final IterMap<Character, Color> mColorMap = DefaultHashMap
       .create(SettingsService.getInstance().getColor("bioinformatics.dna.bases.n.color"));
@@ -273,7 +278,18 @@ public class SequenceService extends SequenceReader
     mListenerMap.get(base).addChangeListener(l);
   }
 
+  /**
+   * Add a reader to the service. Web readers are placed behind a
+   * {@link CachedSequenceReader} so that repeated requests for the same bases,
+   * for example when panning a view, do not re-download them.
+   * 
+   * @param reader
+   */
   public void add(SequenceReader reader) {
+    if (reader.getDataSource() == DataSource.WEB && !(reader instanceof CachedSequenceReader)) {
+      reader = new CachedSequenceReader(reader);
+    }
+
     mReaders.add(reader);
 
     mCurrent = reader;
@@ -281,9 +297,10 @@ public class SequenceService extends SequenceReader
 
   /**
    * Indicate that the genome references have changed so it they may need to be
-   * cached again.
+   * cached again. Synchronized since async fetches may ask for readers from
+   * several threads at once.
    */
-  private void autoLoad() {
+  private synchronized void autoLoad() {
     if (mAutoLoad) {
       // One assembly object can load multiple genomes potentially.
       for (SequenceReader reader : mReaders) {
@@ -309,19 +326,35 @@ public class SequenceService extends SequenceReader
     return mCurrent;
   }
 
-  public SequenceReader get(Genome genome) {
+  public synchronized SequenceReader get(Genome genome) {
     autoLoad();
 
     return mGenomeMap.get(genome);
   }
 
+  /**
+   * Find the reader for a genome without blocking the caller. Finding readers
+   * for the first time may require asking web readers for their genomes, so
+   * that is done on the default sequence executor.
+   *
+   * @param genome the genome
+   * @return the future reader, which may be null
+   */
+  private CompletableFuture<SequenceReader> getAsync(final Genome genome) {
+    if (!mAutoLoad) {
+      return CompletableFuture.completedFuture(get(genome));
+    }
+
+    return CompletableFuture.supplyAsync(() -> get(genome), SequenceExecutor.getDefaultExecutor());
+  }
+
   @Override
   public String getName() {
     return "sequence-reader-service";
   }
 
   @Override
-  public Iterator<Entry<Genome, SequenceReader>> iterator() {
+  public synchronized Iterator<Entry<Genome, SequenceReader>> iterator() {
     autoLoad();
 
     return mGenomeMap.iterator();
@@ -361,6 +394,94 @@ public class SequenceService extends SequenceReader
     return ret;
   }
 
+  /**
+   * Dispatch an asynchronous fetch to the reader for the genome. Each reader
+   * limits its own concurrency, so fetches for different genomes run in
+   * parallel. If no reader is available the future completes with null.
+   * Cancelling the future cancels the reader's fetch, so a fetch that is
+   * still queued is skipped.
+   */
+  @Override
+  public CompletableFuture<SequenceRegion> getSequenceAsync(final Genome genome, final GenomicRegion region,
+      final boolean displayUpper, final RepeatMaskType repeatMaskType) {
+    return fetchAsync(genome, a -> a.getSequenceAsync(genome, region, displayUpper, repeatMaskType));
+  }
+
+  @Override
+  public CompletableFuture<List<SequenceRegion>> getSequencesAsync(final Genome genome,
+      final Collection<GenomicRegion> regions, final boolean displayUpper, final RepeatMaskType repeatMaskType) {
+    return fetchAsync(genome, a -> a.getSequencesAsync(genome, regions, displayUpper, repeatMaskType));
+  }
+
+  /**
+   * Find the reader for a genome and then start a fetch on it. Unlike
+   * thenCompose, cancelling the returned future is passed on to the reader's
+   * future, which is what stops a queued fetch from running.
+   *
+   * @param genome the genome
+   * @param fetch  starts the fetch on the reader
+   * @return the future result, or null if there is no reader for the genome
+   */
+  private <T> CompletableFuture<T> fetchAsync(Genome genome,
+      final Function<SequenceReader, CompletableFuture<T>> fetch) {
+    final CompletableFuture<T> ret = new CompletableFuture<T>();
+
+    final AtomicReference<CompletableFuture<T>> inner = new AtomicReference<CompletableFuture<T>>();
+
+    final CompletableFuture<SequenceReader> reader = getAsync(genome);
+
+    reader.whenComplete((a, e) -> {
+      if (e != null) {
+        ret.completeExceptionally(e);
+        return;
+      }
+
+      if (a == null) {
+        ret.complete(null);
+        return;
+      }
+
+      CompletableFuture<T> f;
+
+      try {
+        f = fetch.apply(a);
+      } catch (RuntimeException ex) {
+        ret.completeExceptionally(ex);
+        return;
+      }
+
+      inner.set(f);
+
+      // Cancelled before the fetch existed so the listener below missed it
+      if (ret.isCancelled()) {
+        f.cancel(false);
+        return;
+      }
+
+      f.whenComplete((v, ex) -> {
+        if (ex != null) {
+          ret.completeExceptionally(ex);
+        } else {
+          ret.complete(v);
+        }
+      });
+    });
+
+    ret.whenComplete((v, e) -> {
+      if (ret.isCancelled()) {
+        reader.cancel(false);
+
+        CompletableFuture<T> f = inner.get();
+
+        if (f != null) {
+          f.cancel(false);
+        }
+      }
+    });
+
+    return ret;
+  }
+
   @Override
   public void addChangeListener(ChangeListener l) {
     mListeners.addChangeListener(l);
@@ -380,4 +501,4 @@ public class SequenceService extends SequenceReader
     mListeners.fireChanged(e);
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.genomic;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map backed by a single array of alternating keys and values that are found
+ * by linear scan. For the handful of properties or child types most genomic
+ * elements carry this is smaller than a hash map and no slower. Entries are
+ * kept in insertion order.
+ *
+ * @author Antony Holmes
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+class SmallMap<K, V> extends AbstractMap<K, V> implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /** Keys at even indices, values at odd. */
+  private Object[] mData;
+
+  private int mSize = 0;
+
+  /**
+   * Instantiates a new small map.
+   */
+  public SmallMap() {
+    this(2);
+  }
+
+  /**
+   * Instantiates a new small map.
+   *
+   * @param capacity the expected number of entries
+   */
+  public SmallMap(int capacity) {
+    mData = new Object[Math.max(1, capacity) * 2];
+  }
+
+  private int indexOf(Object key) {
+    int n = mSize * 2;
+
+    for (int i = 0; i < n; i += 2) {
+      Object k = mData[i];
+
+      if (k == key || (key != null && key.equals(k))) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return mSize;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) != -1;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    int i = indexOf(key);
+
+    return i != -1 ? (V) mData[i + 1] : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    int i = indexOf(key);
+
+    if (i != -1) {
+      V old = (V) mData[i + 1];
+      mData[i + 1] = value;
+      return old;
+    }
+
+    i = mSize * 2;
+
+    if (i == mData.length) {
+      mData = Arrays.copyOf(mData, i * 2);
+    }
+
+    mData[i] = key;
+    mData[i + 1] = value;
+
+    ++mSize;
+
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    int i = indexOf(key);
+
+    if (i == -1) {
+      return null;
+    }
+
+    V old = (V) mData[i + 1];
+
+    removeAt(i);
+
+    return old;
+  }
+
+  private void removeAt(int i) {
+    int n = mSize * 2;
+
+    System.arraycopy(mData, i + 2, mData, i, n - i - 2);
+
+    mData[n - 2] = null;
+    mData[n - 1] = null;
+
+    --mSize;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(mData, 0, mSize * 2, null);
+    mSize = 0;
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<Entry<K, V>>() {
+      @Override
+      public int size() {
+        return mSize;
+      }
+
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        return new Iterator<Entry<K, V>>() {
+          private int mNext = 0;
+          private int mLast = -1;
+
+          @Override
+          public boolean hasNext() {
+            return mNext < mSize * 2;
+          }
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public Entry<K, V> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            mLast = mNext;
+            mNext += 2;
+
+            final int i = mLast;
+
+            return new SimpleEntry<K, V>((K) mData[i], (V) mData[i + 1]) {
+              private static final long serialVersionUID = 1L;
+
+              @Override
+              public V setValue(V value) {
+                mData[i + 1] = value;
+                return super.setValue(value);
+              }
+            };
+          }
+
+          @Override
+          public void remove() {
+            if (mLast == -1) {
+              throw new IllegalStateException();
+            }
+
+            removeAt(mLast);
+
+            mNext = mLast;
+            mLast = -1;
+          }
+        };
+      }
+    };
+  }
+}
@@ -29,11 +29,12 @@ package org.jebtk.bioinformatics.search;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.jebtk.bioinformatics.Bounds;
@@ -42,13 +43,25 @@ import org.jebtk.bioinformatics.genomic.GenomicRegion;
 
 /**
  * The class AbstractFeaturesSearch.
+ * 
+ * Loading and unloading are synchronized on the search, so a track is only
+ * ever loaded by one thread at a time. Loaded state is built in new objects
+ * and then published, and queries read each published object once, so a
+ * query that overlaps an unload finishes on the state it started with.
  */
 public abstract class AbstractFeaturesSearch {
 
   /**
-   * The feature by name.
+   * The features by name, or null if the features are not loaded. The map is
+   * not modified once it has been published.
    */
-  protected Map<String, Feature> mFeatureByName = new HashMap<String, Feature>();
+  protected volatile Map<String, Feature> mFeatureByName = null;
+
+  /**
+   * When the features were last queried or loaded, from
+   * {@link System#nanoTime()}.
+   */
+  private volatile long mLastUsed = System.nanoTime();
 
   /**
    * The member name.
@@ -205,22 +218,86 @@ public abstract class AbstractFeaturesSearch {
 
     List<Feature> features = getFeatures(chromosome, start, end);
 
-    List<String> names = new ArrayList<String>();
+    return getNameListInOrder(features, new HashSet<String>());
+  }
+
+  /**
+   * Returns the unique feature names overlapping each of a list of regions,
+   * in the order they are found. The regions should be sorted by chromosome
+   * and start so that searches that support it can answer the whole list in
+   * one pass.
+   *
+   * @param regions the regions
+   * @return a name list for each region.
+   */
+  public final List<List<String>> getNameListsInOrder(List<? extends GenomicRegion> regions) {
+    List<List<Feature>> features = getFeatures(regions);
+
+    List<List<String>> ret = new ArrayList<List<String>>(features.size());
 
     Set<String> used = new HashSet<String>();
 
+    for (List<Feature> f : features) {
+      ret.add(getNameListInOrder(f, used));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the sorted, unique feature names overlapping each of a list of
+   * regions.
+   *
+   * @param regions the regions
+   * @return a name list for each region.
+   * @see #getNameListsInOrder(List)
+   */
+  public final List<List<String>> getSortedNameLists(List<? extends GenomicRegion> regions) {
+    List<List<String>> ret = getNameListsInOrder(regions);
+
+    for (List<String> names : ret) {
+      Collections.sort(names);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the unique names of a list of features in the order they are
+   * found.
+   *
+   * @param features the features
+   * @param used     a set to track names already seen. It is cleared before
+   *                 use so one set can be reused across calls.
+   * @return the names
+   */
+  private static List<String> getNameListInOrder(List<Feature> features, Set<String> used) {
+    List<String> names = new ArrayList<String>(features.size());
+
+    used.clear();
+
     for (Feature feature : features) {
-      if (used.contains(feature.getName())) {
-        continue;
+      if (used.add(feature.getName())) {
+        names.add(feature.getName());
       }
-
-      names.add(feature.getName());
-      used.add(feature.getName());
     }
 
     return names;
   }
 
+  /**
+   * Returns the names of the features, loading them first if necessary. The
+   * names are copied from the loaded features, which are never modified,
+   * so the copy is complete even if the track is unloaded or reloaded at the
+   * same time. A track without features returns an empty collection and is
+   * not reloaded.
+   *
+   * @return the feature names
+   */
+  public final Collection<String> getFeatureNames() {
+    return new ArrayList<String>(getFeatureByName().keySet());
+  }
+
   /**
    * Gets the feature.
    *
@@ -228,15 +305,30 @@ public abstract class AbstractFeaturesSearch {
    * @return the feature
    */
   public final Feature getFeature(String name) {
-    if (mFeatureByName.size() == 0) {
-      cacheFeatures();
-    }
+    return getFeatureByName().get(name);
+  }
 
-    if (mFeatureByName.containsKey(name)) {
-      return mFeatureByName.get(name);
+  /**
+   * Returns the features by name, loading the features first if necessary.
+   *
+   * @return the features by name
+   */
+  private Map<String, Feature> getFeatureByName() {
+    touch();
+
+    Map<String, Feature> ret = mFeatureByName;
+
+    if (ret == null) {
+      synchronized (this) {
+        if (mFeatureByName == null) {
+          cacheFeatures();
+        }
+
+        ret = mFeatureByName;
+      }
     }
 
-    return null;
+    return ret;
   }
 
   /**
@@ -248,9 +340,17 @@ public abstract class AbstractFeaturesSearch {
   public List<Feature> getFeatures(String s) {
     List<Feature> features = new ArrayList<Feature>();
 
-    for (String name : this.mFeatureByName.keySet()) {
-      if (name.toLowerCase().indexOf(s) != -1) {
-        features.add(this.mFeatureByName.get(name));
+    touch();
+
+    Map<String, Feature> featureByName = mFeatureByName;
+
+    if (featureByName == null) {
+      return features;
+    }
+
+    for (Entry<String, Feature> e : featureByName.entrySet()) {
+      if (e.getKey().toLowerCase().indexOf(s) != -1) {
+        features.add(e.getValue());
       }
     }
 
@@ -260,17 +360,65 @@ public abstract class AbstractFeaturesSearch {
   /**
    * Frees cached items from memory.
    */
-  public void freeMemory() {
+  public synchronized void freeMemory() {
     System.out.println("Unloading " + this.mName);
 
-    mFeatureByName.clear();
+    mFeatureByName = null;
   }
 
   /**
-   * Cache features.
+   * Cache features. Implementations should be synchronized and should build
+   * new state, including {@link #mFeatureByName}, rather than modify loaded
+   * state.
    */
   public abstract void cacheFeatures();
 
+  /**
+   * Load the features unless they are already loaded.
+   *
+   * @return true if the features were loaded by this call.
+   */
+  public synchronized boolean load() {
+    touch();
+
+    if (isCached()) {
+      return false;
+    }
+
+    cacheFeatures();
+
+    return true;
+  }
+
+  /**
+   * Record that the features have been used. Implementations should call this
+   * whenever they read their loaded state to answer a query.
+   */
+  protected final void touch() {
+    mLastUsed = System.nanoTime();
+  }
+
+  /**
+   * Returns when the features were last queried or loaded, as a
+   * {@link System#nanoTime()} value, so it can only be compared with other
+   * such values.
+   *
+   * @return the last used time
+   */
+  public final long getLastUsed() {
+    return mLastUsed;
+  }
+
+  /**
+   * Returns true if the features are currently held in memory. Features are
+   * cached once they have been loaded, even if there are none.
+   *
+   * @return true, if is cached
+   */
+  public boolean isCached() {
+    return mFeatureByName != null;
+  }
+
   /**
    * Gets the features.
    *
@@ -284,6 +432,25 @@ public abstract class AbstractFeaturesSearch {
     return getFeatures(region.getChr(), region.getStart(), region.getEnd());
   }
 
+  /**
+   * Returns the features overlapping each of a list of regions. By default
+   * each region is searched separately. Subclasses whose features are sorted
+   * may reuse the position found for one region as the starting point for the
+   * next, so the regions should be sorted by chromosome and start.
+   *
+   * @param regions the regions
+   * @return the features of each region, in the same order as the regions.
+   */
+  public List<List<Feature>> getFeatures(List<? extends GenomicRegion> regions) {
+    List<List<Feature>> ret = new ArrayList<List<Feature>>(regions.size());
+
+    for (GenomicRegion region : regions) {
+      ret.add(getFeatures(region));
+    }
+
+    return ret;
+  }
+
   /**
    * Gets the features.
    *
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.search;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.GenomeService;
+import org.jebtk.core.collections.EntryCreator;
+
+/**
+ * Per chromosome storage for feature searches. Each chromosome seen is given
+ * the next free slot in a growable array, so any number of chromosomes,
+ * contigs or scaffolds can be stored regardless of their ids, which are not
+ * unique across random and unplaced contigs. Lookups are a single hash of
+ * the chromosome followed by an array access.
+ * 
+ * Slots are created whilst loading on a single thread. Once a fully loaded
+ * instance has been safely published, any number of threads may read it.
+ *
+ * @author Antony Holmes
+ * @param <T> the generic type
+ */
+public class ChromosomeSlots<T> {
+  private final EntryCreator<T> mCreator;
+
+  private final Map<Chromosome, Integer> mSlots;
+
+  private Chromosome[] mChrs;
+  private Object[] mValues;
+  private int mSize = 0;
+
+  /**
+   * The slot of the last chromosome created or looked up whilst loading,
+   * since features are usually grouped by chromosome.
+   */
+  private Chromosome mLastChr = null;
+  private int mLastSlot = -1;
+
+  /**
+   * Instantiates new chromosome slots.
+   *
+   * @param creator creates the value of each new chromosome.
+   */
+  public ChromosomeSlots(EntryCreator<T> creator) {
+    this(creator, 32);
+  }
+
+  /**
+   * Instantiates new chromosome slots.
+   *
+   * @param creator  creates the value of each new chromosome.
+   * @param capacity the expected number of chromosomes
+   */
+  public ChromosomeSlots(EntryCreator<T> creator, int capacity) {
+    mCreator = creator;
+
+    capacity = Math.max(1, capacity);
+
+    mSlots = new HashMap<Chromosome, Integer>(capacity * 2);
+    mChrs = new Chromosome[capacity];
+    mValues = new Object[capacity];
+  }
+
+  /**
+   * Create slots sized for the chromosomes of the genome a file appears to
+   * belong to.
+   *
+   * @param file    the file
+   * @param creator creates the value of each new chromosome.
+   * @return the chromosome slots
+   */
+  public static <T> ChromosomeSlots<T> create(Path file, EntryCreator<T> creator) {
+    int capacity = ChromosomeService.getInstance().getChrCount(GenomeService.getInstance().guessGenome(file));
+
+    return new ChromosomeSlots<T>(creator, capacity > 0 ? capacity : 32);
+  }
+
+  /**
+   * Returns the slot of a chromosome.
+   *
+   * @param chr the chr
+   * @return the slot or -1 if the chromosome has no slot.
+   */
+  public int slot(Chromosome chr) {
+    Integer ret = mSlots.get(chr);
+
+    return ret != null ? ret : -1;
+  }
+
+  /**
+   * Returns the value of a chromosome.
+   *
+   * @param chr the chr
+   * @return the value or null if the chromosome has no slot.
+   */
+  @SuppressWarnings("unchecked")
+  public T get(Chromosome chr) {
+    int slot = slot(chr);
+
+    return slot != -1 ? (T) mValues[slot] : null;
+  }
+
+  /**
+   * Returns the value of a chromosome, creating a slot for it if necessary.
+   * This is intended for use whilst loading.
+   *
+   * @param chr the chr
+   * @return the value
+   */
+  @SuppressWarnings("unchecked")
+  public T getOrCreate(Chromosome chr) {
+    if (chr == mLastChr) {
+      return (T) mValues[mLastSlot];
+    }
+
+    int slot = slot(chr);
+
+    if (slot == -1) {
+      if (mSize == mValues.length) {
+        mChrs = Arrays.copyOf(mChrs, mSize * 2);
+        mValues = Arrays.copyOf(mValues, mSize * 2);
+      }
+
+      slot = mSize++;
+
+      mChrs[slot] = chr;
+      mValues[slot] = mCreator.newEntry();
+      mSlots.put(chr, slot);
+    }
+
+    mLastChr = chr;
+    mLastSlot = slot;
+
+    return (T) mValues[slot];
+  }
+
+  /**
+   * Returns the number of chromosomes with a slot.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Returns the chromosome in a slot.
+   *
+   * @param slot the slot
+   * @return the chr
+   */
+  public Chromosome getChr(int slot) {
+    return mChrs[slot];
+  }
+
+  /**
+   * Returns the value in a slot.
+   *
+   * @param slot the slot
+   * @return the value
+   */
+  @SuppressWarnings("unchecked")
+  public T get(int slot) {
+    return (T) mValues[slot];
+  }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.search;
+
+import java.util.List;
+
+/**
+ * The coordinates of a list of features sorted by start, held as parallel int
+ * arrays so that searches compare primitives in contiguous memory rather than
+ * dereferencing a feature per probe. Features may overlap: a running maximum
+ * of the ends bounds where the features overlapping a position can begin.
+ * 
+ * Starts can be searched by plain bisection, by galloping forward from a hint
+ * (for sorted batches of queries) or through a copy of the starts in
+ * Eytzinger (breadth first) order, where the first probes of every search
+ * share a few cache lines at the front of the array.
+ *
+ * @author Antony Holmes
+ */
+public class FeatureCoordinates {
+  private final int[] mStarts;
+  private final int[] mEnds;
+
+  /** The largest end of the features up to and including each index. */
+  private final int[] mMaxEnds;
+
+  /** The starts in Eytzinger order. Position 0 is unused. */
+  private final int[] mEytzinger;
+
+  /** The sorted index of each Eytzinger position. */
+  private final int[] mEytzingerIndex;
+
+  /**
+   * Instantiates new feature coordinates.
+   *
+   * @param features the features, sorted by start.
+   */
+  public FeatureCoordinates(List<Feature> features) {
+    int n = features.size();
+
+    mStarts = new int[n];
+    mEnds = new int[n];
+    mMaxEnds = new int[n];
+
+    int max = Integer.MIN_VALUE;
+
+    for (int i = 0; i < n; ++i) {
+      Feature feature = features.get(i);
+
+      mStarts[i] = feature.getStart();
+      mEnds[i] = feature.getEnd();
+
+      max = Math.max(max, mEnds[i]);
+
+      mMaxEnds[i] = max;
+    }
+
+    mEytzinger = new int[n + 1];
+    mEytzingerIndex = new int[n + 1];
+
+    eytzinger(0, 1);
+  }
+
+  /**
+   * Fill the Eytzinger arrays by an in order walk of the implicit tree.
+   *
+   * @param i the next sorted index
+   * @param k the tree position
+   * @return the next sorted index after the subtree.
+   */
+  private int eytzinger(int i, int k) {
+    if (k < mEytzinger.length) {
+      i = eytzinger(i, 2 * k);
+
+      mEytzinger[k] = mStarts[i];
+      mEytzingerIndex[k] = i;
+
+      i = eytzinger(i + 1, 2 * k + 1);
+    }
+
+    return i;
+  }
+
+  /**
+   * Returns the number of features.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mStarts.length;
+  }
+
+  public int getStart(int i) {
+    return mStarts[i];
+  }
+
+  public int getEnd(int i) {
+    return mEnds[i];
+  }
+
+  /**
+   * Returns the index of the first feature starting after a value using a
+   * bisection of the starts.
+   *
+   * @param value the value
+   * @return the index or the number of features if none start after the
+   *         value.
+   */
+  public int upperBound(int value) {
+    int lo = 0;
+    int hi = mStarts.length;
+
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (mStarts[mid] <= value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return lo;
+  }
+
+  /**
+   * Returns the index of the first feature starting after a value using the
+   * Eytzinger ordered starts. Gives the same result as
+   * {@link #upperBound(int)}.
+   *
+   * @param value the value
+   * @return the index or the number of features if none start after the
+   *         value.
+   */
+  public int upperBoundEytzinger(int value) {
+    int n = mStarts.length;
+
+    int k = 1;
+
+    while (k <= n) {
+      k = 2 * k + (mEytzinger[k] <= value ? 1 : 0);
+    }
+
+    // Undo the right turns taken after the last left turn, which leaves the
+    // position of the smallest start greater than the value
+    k >>= Integer.numberOfTrailingZeros(~k) + 1;
+
+    return k == 0 ? n : mEytzingerIndex[k];
+  }
+
+  /**
+   * Returns the index of the first feature at or after a hint starting after
+   * a value by galloping forward from the hint. When a sorted list of values
+   * is searched, passing each result as the hint for the next costs time
+   * logarithmic in the distance moved rather than in the number of features.
+   *
+   * @param value the value
+   * @param hint  the index to search from
+   * @return the index or the number of features if none start after the
+   *         value.
+   */
+  public int gallop(int value, int hint) {
+    return gallop(mStarts, value, hint);
+  }
+
+  /**
+   * Returns the index of the first element at or after a hint that is
+   * greater than a value in a sorted array.
+   *
+   * @param a     the array
+   * @param value the value
+   * @param hint  the index to search from
+   * @return the index or the length of the array if no element after the
+   *         hint is greater than the value.
+   */
+  private static int gallop(int[] a, int value, int hint) {
+    int n = a.length;
+
+    if (hint >= n || a[hint] > value) {
+      return hint;
+    }
+
+    // a[lo] <= value is always true
+    int lo = hint;
+    int step = 1;
+    int hi = hint + 1;
+
+    while (hi < n && a[hi] <= value) {
+      lo = hi;
+      step <<= 1;
+      hi = hint + step;
+    }
+
+    hi = Math.min(hi, n);
+
+    while (lo + 1 < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (a[mid] <= value) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return hi;
+  }
+
+  /**
+   * Returns the index of the first feature that could overlap a position,
+   * i.e. the first index at which some feature so far ends at or after the
+   * position. No earlier feature can overlap it.
+   *
+   * @param value the value
+   * @return the index or the number of features if every feature ends
+   *         before the value.
+   */
+  public int firstEndingAfter(int value) {
+    int lo = 0;
+    int hi = mMaxEnds.length;
+
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (mMaxEnds[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return lo;
+  }
+
+  /**
+   * Returns the index of the first feature at or after a hint that could
+   * overlap a position, by galloping forward from the hint. Gives the same
+   * result as {@link #firstEndingAfter(int)} if the hint is no greater than
+   * it, e.g. if the hint is the result for a smaller value.
+   *
+   * @param value the value
+   * @param hint  the index to search from
+   * @return the index or the number of features if every feature from the
+   *         hint ends before the value.
+   */
+  public int firstEndingAfter(int value, int hint) {
+    if (value == Integer.MIN_VALUE) {
+      return hint;
+    }
+
+    return gallop(mMaxEnds, value - 1, hint);
+  }
+
+  /**
+   * Add the features overlapping a range to a list.
+   *
+   * @param features the features the coordinates were created from.
+   * @param start    the start
+   * @param end      the end
+   * @param ret      the list to add to.
+   */
+  public void getFeatures(List<Feature> features, int start, int end, List<Feature> ret) {
+    int last = upperBoundEytzinger(end);
+
+    for (int i = firstEndingAfter(start); i < last; ++i) {
+      if (mEnds[i] >= start) {
+        ret.add(features.get(i));
+      }
+    }
+  }
+
+  /**
+   * Add the features overlapping a range to a list, galloping forward from a
+   * hint rather than searching all of the features. When ranges sorted by
+   * start are searched, passing the value returned for each range as the
+   * hint for the next means the features are walked once in total.
+   *
+   * @param features the features the coordinates were created from.
+   * @param start    the start
+   * @param end      the end
+   * @param hint     0 or the value returned for a range with a start no
+   *                 greater than this one.
+   * @param ret      the list to add to.
+   * @return the index of the first feature that could overlap the range.
+   */
+  public int getFeatures(List<Feature> features, int start, int end, int hint, List<Feature> ret) {
+    int first = firstEndingAfter(start, hint);
+
+    // Anything before first cannot overlap, so the end only needs to be
+    // searched for from there
+    int last = gallop(end, first);
+
+    for (int i = first; i < last; ++i) {
+      if (mEnds[i] >= start) {
+        ret.add(features.get(i));
+      }
+    }
+
+    return first;
+  }
+}
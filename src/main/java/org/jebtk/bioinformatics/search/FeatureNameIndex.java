@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.jebtk.bioinformatics.GeneSynonymsService;
+
+/**
+ * Index of the feature names of many tracks. Names are lower cased, using the
+ * root locale so that case folding does not depend on the platform, and held
+ * in one sorted array, so exact and prefix lookups are a binary search
+ * regardless of how many tracks there are. Only names are stored; the
+ * feature of a hit is looked up from its track when requested, so the index
+ * does not keep unloaded tracks in memory.
+ *
+ * @author Antony Holmes
+ */
+public class FeatureNameIndex {
+
+  /**
+   * A feature name found in a track.
+   */
+  public static class Hit {
+    private final AbstractFeaturesSearch mSearch;
+    private final String mName;
+
+    /** The lower case name. */
+    private final String mKey;
+
+    private Hit(AbstractFeaturesSearch search, String name) {
+      mSearch = search;
+      mName = name;
+      mKey = name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the track the name was found in.
+     *
+     * @return the search
+     */
+    public AbstractFeaturesSearch getSearch() {
+      return mSearch;
+    }
+
+    /**
+     * Gets the name as it appears in the track.
+     *
+     * @return the name
+     */
+    public String getName() {
+      return mName;
+    }
+
+    /**
+     * Gets the feature, loading the track if necessary.
+     *
+     * @return the feature
+     */
+    public Feature getFeature() {
+      return mSearch.getFeature(mName);
+    }
+
+    @Override
+    public String toString() {
+      return mSearch.getName() + ":" + mName;
+    }
+  }
+
+  /** The lower case names in sorted order. */
+  private final String[] mKeys;
+
+  /** The hit of each key. */
+  private final Hit[] mHits;
+
+  /**
+   * Instantiates a new feature name index.
+   *
+   * @param names the feature names of each track.
+   */
+  public FeatureNameIndex(Map<AbstractFeaturesSearch, ? extends Collection<String>> names) {
+    int n = 0;
+
+    for (Collection<String> c : names.values()) {
+      n += c.size();
+    }
+
+    mHits = new Hit[n];
+
+    int i = 0;
+
+    for (Entry<AbstractFeaturesSearch, ? extends Collection<String>> e : names.entrySet()) {
+      for (String name : e.getValue()) {
+        mHits[i++] = new Hit(e.getKey(), name);
+      }
+    }
+
+    Arrays.sort(mHits, new Comparator<Hit>() {
+      @Override
+      public int compare(Hit h1, Hit h2) {
+        return h1.mKey.compareTo(h2.mKey);
+      }
+    });
+
+    // Keep the keys in their own array so searches do not dereference hits
+    mKeys = new String[n];
+
+    for (i = 0; i < n; ++i) {
+      mKeys[i] = mHits[i].mKey;
+    }
+  }
+
+  /**
+   * Create an index of the feature names of some tracks, loading any that
+   * are not cached.
+   *
+   * @param searches the searches
+   * @return the feature name index
+   */
+  public static FeatureNameIndex create(Collection<AbstractFeaturesSearch> searches) {
+    Map<AbstractFeaturesSearch, Collection<String>> names = new HashMap<AbstractFeaturesSearch, Collection<String>>();
+
+    for (AbstractFeaturesSearch search : searches) {
+      names.put(search, search.getFeatureNames());
+    }
+
+    return new FeatureNameIndex(names);
+  }
+
+  /**
+   * Returns the number of names in the index.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mKeys.length;
+  }
+
+  /**
+   * Find the features with a name, ignoring case.
+   *
+   * @param name the name
+   * @return the hits
+   */
+  public List<Hit> find(String name) {
+    String key = name.toLowerCase(Locale.ROOT);
+
+    List<Hit> ret = new ArrayList<Hit>();
+
+    for (int i = lowerBound(key); i < mKeys.length && mKeys[i].equals(key); ++i) {
+      ret.add(mHits[i]);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Find the features whose names start with a prefix, ignoring case.
+   *
+   * @param prefix the prefix
+   * @return the hits
+   */
+  public List<Hit> findPrefix(String prefix) {
+    String key = prefix.toLowerCase(Locale.ROOT);
+
+    List<Hit> ret = new ArrayList<Hit>();
+
+    for (int i = lowerBound(key); i < mKeys.length && mKeys[i].startsWith(key); ++i) {
+      ret.add(mHits[i]);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Find the features with a name or any of its gene synonyms, ignoring case.
+   *
+   * @param name the name
+   * @return the hits
+   */
+  public List<Hit> findSynonyms(String name) {
+    List<Hit> ret = find(name);
+
+    Set<String> synonyms = GeneSynonymsService.getInstance().getSynonymsIgnoreCase(name);
+
+    if (synonyms == null) {
+      return ret;
+    }
+
+    String key = name.toLowerCase(Locale.ROOT);
+
+    Set<String> used = new HashSet<String>();
+
+    for (String synonym : synonyms) {
+      String synonymKey = synonym.toLowerCase(Locale.ROOT);
+
+      // Synonyms that differ only in case would find the same hits
+      if (!synonymKey.equals(key) && used.add(synonymKey)) {
+        ret.addAll(find(synonymKey));
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the index of the first key not less than a key.
+   *
+   * @param key the key
+   * @return the index or the number of keys.
+   */
+  private int lowerBound(String key) {
+    int lo = 0;
+    int hi = mKeys.length;
+
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (mKeys[mid].compareTo(key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return lo;
+  }
+}
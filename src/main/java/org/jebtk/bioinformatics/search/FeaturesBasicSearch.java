@@ -30,12 +30,17 @@ package org.jebtk.bioinformatics.search;
 import java.io.BufferedReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 
 import org.jebtk.bioinformatics.Search;
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomeService;
+import org.jebtk.core.collections.ArrayListCreator;
 import org.jebtk.core.io.FileUtils;
 import org.jebtk.core.io.Io;
 import org.jebtk.core.text.TextUtils;
@@ -48,9 +53,11 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
   // new HashMap<Short, List<Feature>>();
 
   /**
-   * The all locations.
+   * The features of each chromosome, or null if they have not been loaded.
+   * The features are loaded into a new instance which is then published, so
+   * readers never see a partially loaded set.
    */
-  protected List<List<Feature>> allLocations = new CopyOnWriteArrayList<List<Feature>>();
+  protected volatile ChromosomeSlots<List<Feature>> allLocations = null;
 
   /**
    * The member file.
@@ -81,12 +88,14 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
    * @see edu.columbia.rdf.lib.bioinformatics.search.AbstractFeaturesSearch#
    * cacheFeatures()
    */
-  public final void cacheFeatures() {
-    allLocations.clear();
+  public final synchronized void cacheFeatures() {
+    ChromosomeSlots<List<Feature>> locations = ChromosomeSlots.create(mFile, new ArrayListCreator<Feature>());
 
-    for (int i = 0; i < 26; ++i) {
-      allLocations.add(new ArrayList<Feature>());
-    }
+    Map<String, Feature> featureByName = new HashMap<String, Feature>();
+
+    int size = 0;
+
+    Genome genome = GenomeService.getInstance().guessGenome(mFile);
 
     try {
       BufferedReader reader = FileUtils.newBufferedReader(mFile);
@@ -104,14 +113,14 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
 
           List<String> row = TextUtils.fastSplit(line, TextUtils.TAB_DELIMITER);
 
-          Feature feature = new Feature(row.get(0), ChromosomeService.getInstance().guessChr(mFile, row.get(1)),
+          Feature feature = new Feature(row.get(0), ChromosomeService.getInstance().chr(genome, row.get(1)),
               Integer.parseInt(row.get(2)), Integer.parseInt(row.get(3)));
           // feature.type = type;
 
           // System.err.println(line + " chr:" + feature.getChromosome());
 
-          allLocations.get(feature.getChr().getId()).add(feature);
-          mFeatureByName.put(feature.getName(), feature);
+          locations.getOrCreate(feature.getChr()).add(feature);
+          featureByName.put(feature.getName(), feature);
 
           ++size;
         }
@@ -121,6 +130,47 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
     } catch (Exception e) {
       e.printStackTrace();
     }
+
+    this.size = size;
+
+    mFeatureByName = featureByName;
+    allLocations = locations;
+  }
+
+  /**
+   * Returns the features of each chromosome, loading the features first if
+   * necessary. If several threads find the features unloaded, only one loads
+   * them. Each call marks the features as used.
+   *
+   * @return the features of each chromosome
+   */
+  protected ChromosomeSlots<List<Feature>> getLocations() {
+    touch();
+
+    ChromosomeSlots<List<Feature>> locations = allLocations;
+
+    if (locations == null) {
+      synchronized (this) {
+        if (allLocations == null) {
+          cacheFeatures();
+        }
+
+        locations = allLocations;
+      }
+    }
+
+    return locations;
+  }
+
+  /**
+   * Returns the features of a chromosome, loading the features first if
+   * necessary.
+   *
+   * @param chromosome the chromosome
+   * @return the features or null if the chromosome has no features.
+   */
+  protected List<Feature> getLocations(Chromosome chromosome) {
+    return getLocations().get(chromosome);
   }
 
   /*
@@ -130,11 +180,13 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
    * getFeatures (edu.columbia.rdf.lib.bioinformatics.genome.Chromosome)
    */
   public final List<Feature> getFeatures(Chromosome chromosome) {
-    if (allLocations.size() == 0) {
-      cacheFeatures();
+    List<Feature> locations = getLocations(chromosome);
+
+    if (locations == null) {
+      return Collections.emptyList();
     }
 
-    return allLocations.get(chromosome.getId());
+    return locations;
   }
 
   /*
@@ -143,10 +195,15 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
    * @see edu.columbia.rdf.lib.bioinformatics.search.AbstractFeaturesSearch#
    * freeMemory( )
    */
-  public void freeMemory() {
+  public synchronized void freeMemory() {
     super.freeMemory();
 
-    allLocations.clear();
+    allLocations = null;
+  }
+
+  @Override
+  public boolean isCached() {
+    return allLocations != null;
   }
 
   /*
@@ -157,10 +214,6 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
    */
   @Override
   public List<Feature> getFeatures(Chromosome chromosome, int start, int endLocation) {
-    if (allLocations.size() == 0) {
-      cacheFeatures();
-    }
-
     // System.err.println(getName() + " " + chromosome + ":loc:" + startLocation
     // + "
     // " + endLocation);
@@ -172,9 +225,9 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
 
     List<Feature> features = new ArrayList<Feature>();
 
-    List<Feature> locations = allLocations.get(chromosome.getId());
+    List<Feature> locations = getLocations(chromosome);
 
-    if (locations.size() == 0) {
+    if (locations == null || locations.size() == 0) {
       return features;
     }
     // endLocations = allEndLocations.get(chromosome);
@@ -231,21 +284,17 @@ public class FeaturesBasicSearch extends AbstractFeaturesSearch {
    */
   @Override
   public List<Feature> getFeatures(Chromosome chromosome, int location) {
-    if (allLocations.size() == 0) {
-      cacheFeatures();
-    }
-
     List<Feature> features = new ArrayList<Feature>();
 
-    List<Feature> locations = allLocations.get(chromosome.getId());
+    List<Feature> locations = getLocations(chromosome);
 
-    if (locations.size() == 0) {
+    if (locations == null || locations.size() == 0) {
       return features;
     }
 
     for (int i = 0; i < locations.size(); ++i) {
-      if (features.get(i).getStart() <= location && features.get(i).getEnd() >= location) {
-        features.add(features.get(i));
+      if (locations.get(i).getStart() <= location && locations.get(i).getEnd() >= location) {
+        features.add(locations.get(i));
       }
     }
 
@@ -34,6 +34,7 @@ import java.util.List;
 
 import org.jebtk.bioinformatics.Search;
 import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
 
 /**
  * Provides binary search within an ordered list of features with the proviso
@@ -74,9 +75,9 @@ public class FeaturesBinarySearch extends FeaturesBasicSearch {
 
     List<Feature> features = new ArrayList<Feature>(100);
 
-    List<Feature> locations = allLocations.get(chromosome.getId());
+    List<Feature> locations = getLocations(chromosome);
 
-    if (locations == null) {
+    if (locations == null || locations.size() == 0) {
       // System.out.println("ropey chromosome " + chromosome);
       return features;
     }
@@ -130,6 +131,53 @@ public class FeaturesBinarySearch extends FeaturesBasicSearch {
     return features;
   }
 
+  /**
+   * Returns the features overlapping each of a list of regions in one pass
+   * over the features of each chromosome. Since the features do not overlap,
+   * the features of a region are consecutive and the first of them can be
+   * found by galloping forward from the first feature of the previous region.
+   * Regions that are not sorted are still answered correctly, but restart the
+   * search from the beginning of the chromosome.
+   *
+   * @param regions the regions, sorted by chromosome and start.
+   * @return the features of each region.
+   */
+  @Override
+  public List<List<Feature>> getFeatures(List<? extends GenomicRegion> regions) {
+    List<List<Feature>> ret = new ArrayList<List<Feature>>(regions.size());
+
+    Chromosome chr = null;
+    List<Feature> locations = null;
+
+    int hint = 0;
+    int previousStart = Integer.MIN_VALUE;
+
+    for (GenomicRegion region : regions) {
+      if (!region.getChr().equals(chr)) {
+        chr = region.getChr();
+        locations = getLocations(chr);
+        hint = 0;
+      } else if (region.getStart() < previousStart) {
+        hint = 0;
+      }
+
+      previousStart = region.getStart();
+
+      if (locations == null) {
+        ret.add(new ArrayList<Feature>());
+        continue;
+      }
+
+      hint = Search.gallopEnd(region.getStart(), locations, hint);
+
+      int end = Search.gallopStart(region.getEnd(), locations, hint);
+
+      ret.add(new ArrayList<Feature>(locations.subList(hint, Math.max(hint, end))));
+    }
+
+    return ret;
+  }
+
   /**
    * The main method.
    *
@@ -30,15 +30,26 @@ package org.jebtk.bioinformatics.search;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomeService;
+import org.jebtk.core.collections.ArrayListCreator;
 import org.jebtk.core.io.FileUtils;
 import org.jebtk.core.io.Io;
 import org.jebtk.core.io.PathUtils;
@@ -61,9 +72,24 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
   public static final String BIN_LOCATION_FILE_ENDING = "_bins_locations.txt";
 
   /**
-   * The features at location by index.
+   * The constant BIN_INDEX_FILE_ENDING. A binary copy of the two bin files
+   * written by {@link FeaturesCommonRegionBinarySearchWriter} which is
+   * loaded in preference to them if present and not older than either of
+   * them.
    */
-  private List<List<FeatureBin>> mFeaturesAtLocationByIndex = new CopyOnWriteArrayList<List<FeatureBin>>();
+  public static final String BIN_INDEX_FILE_ENDING = "_bins.idx";
+
+  /** Identifies a bin index file. */
+  public static final int INDEX_CHECK = 0x46434249;
+
+  public static final byte INDEX_VERSION = 1;
+
+  /**
+   * The bins of each chromosome, or null if they have not been loaded. The
+   * bins are loaded into a new instance which is then published, so readers
+   * never see a partially loaded set.
+   */
+  private volatile ChromosomeSlots<List<FeatureBin>> mFeaturesAtLocationByIndex = null;
 
   /**
    * The bins file.
@@ -75,6 +101,11 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
    */
   private Path mFeatureFile;
 
+  /**
+   * The binary index file.
+   */
+  private Path mIndexFile;
+
   /**
    * The size.
    */
@@ -94,6 +125,7 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
 
     mBinsFile = PathUtils.getPath(filePrefix + BIN_LOCATION_FILE_ENDING);
     mFeatureFile = PathUtils.getPath(filePrefix + BIN_FEATURE_FILE_ENDING);
+    mIndexFile = PathUtils.getPath(filePrefix + BIN_INDEX_FILE_ENDING);
 
     System.err.println(
         "Feature prefix " + filePrefix + " " + FileUtils.exists(mBinsFile) + " " + FileUtils.exists(mFeatureFile));
@@ -116,22 +148,227 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
    * @see edu.columbia.rdf.lib.bioinformatics.search.AbstractFeaturesSearch#
    * cacheFeatures()
    */
-  public final void cacheFeatures() {
-    mFeaturesAtLocationByIndex.clear();
+  public final synchronized void cacheFeatures() {
+    ChromosomeSlots<List<FeatureBin>> featuresAtLocation = null;
 
-    Chromosome chromosome;
-    int startLocation;
+    Map<String, Feature> featureByName = null;
 
-    // first the bins file
+    if (isIndexCurrent()) {
+      try {
+        featureByName = new HashMap<String, Feature>();
+        featuresAtLocation = cacheIndex(featureByName);
+      } catch (IOException | RuntimeException e) {
+        // A truncated or corrupt index can fail part way through, e.g. with
+        // a BufferUnderflowException, so fall back to the text files.
+        e.printStackTrace();
+      }
+    }
+
+    if (featuresAtLocation == null) {
+      // Start again so nothing from a failed index load is kept
+      featureByName = new HashMap<String, Feature>();
+      featuresAtLocation = cacheText(featureByName);
+    }
+
+    mFeatureByName = featureByName;
+    mFeaturesAtLocationByIndex = featuresAtLocation;
+  }
+
+  /**
+   * Returns true if the binary index exists and was written after the text
+   * files it was built from, so it cannot be stale.
+   *
+   * @return true if the index should be used.
+   */
+  private boolean isIndexCurrent() {
+    if (!FileUtils.exists(mIndexFile)) {
+      return false;
+    }
+
+    try {
+      long modified = Files.getLastModifiedTime(mIndexFile).toMillis();
+
+      for (Path file : new Path[] { mBinsFile, mFeatureFile }) {
+        if (FileUtils.exists(file) && Files.getLastModifiedTime(file).toMillis() > modified) {
+          System.err.println(mIndexFile + " is older than " + file + " and will be ignored.");
+
+          return false;
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Load the bins from the binary index. The file is memory mapped and each
+   * chromosome's coordinates are bulk copied out of the mapping, so no text
+   * is split or parsed and each chromosome name is resolved once. If the
+   * index is corrupt, the name lookup may be partly filled when an exception
+   * is thrown, so it should be discarded.
+   *
+   * @param featureByName the name lookup to fill.
+   * @return the bins of each chromosome.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private ChromosomeSlots<List<FeatureBin>> cacheIndex(Map<String, Feature> featureByName) throws IOException {
+    MappedByteBuffer buf;
+
+    // The mapping stays valid after the channel is closed
+    FileChannel channel = FileChannel.open(mIndexFile, StandardOpenOption.READ);
+
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(mIndexFile + " is too large to map.");
+      }
+
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      channel.close();
+    }
+
+    if (buf.getInt() != INDEX_CHECK) {
+      throw new IOException(mIndexFile + " is not a bin index.");
+    }
+
+    byte version = buf.get();
+
+    if (version != INDEX_VERSION) {
+      throw new IOException(mIndexFile + " has unsupported version " + version + ".");
+    }
+
+    Genome genome = GenomeService.getInstance().guessGenome(mFeatureFile);
+
+    // Every chromosome starts with at least its name length
+    int chrs = checkCount(buf, buf.getInt(), 4);
+
+    ChromosomeSlots<List<FeatureBin>> featuresAtLocation = new ChromosomeSlots<List<FeatureBin>>(
+        new ArrayListCreator<FeatureBin>(), chrs);
+
+    int size = 0;
+
+    for (int c = 0; c < chrs; ++c) {
+      byte[] name = readBytes(buf, buf.getInt());
+
+      Chromosome chromosome = ChromosomeService.getInstance().chr(genome, new String(name, StandardCharsets.UTF_8));
+
+      int[] binStarts = readInts(buf, buf.getInt());
+
+      int n = checkCount(buf, buf.getInt(), 12);
+
+      int[] starts = readInts(buf, n);
+      int[] ends = readInts(buf, n);
+      int[] nameOffsets = readInts(buf, n + 1);
+
+      byte[] pool = readBytes(buf, nameOffsets[n]);
+
+      Feature[] features = new Feature[n];
+
+      for (int i = 0; i < n; ++i) {
+        if (nameOffsets[i] < 0 || nameOffsets[i] > nameOffsets[i + 1]) {
+          throw new IOException(mIndexFile + " has corrupt feature names.");
+        }
+
+        Feature feature = new Feature(
+            new String(pool, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i], StandardCharsets.UTF_8),
+            chromosome, starts[i], ends[i]);
+
+        features[i] = feature;
+
+        featureByName.put(feature.getName(), feature);
+      }
+
+      int[] offsets = readInts(buf, binStarts.length + 1);
+      int[] refs = readInts(buf, offsets[binStarts.length]);
 
-    // since we have 25 chromosomes, create place holders for them
-    // we need one more position than necessary because index 0 is
-    // never used since chromosomes are one based indexes.
+      List<FeatureBin> bins = featuresAtLocation.getOrCreate(chromosome);
 
-    for (int i = 0; i < 26; ++i) {
-      mFeaturesAtLocationByIndex.add(new ArrayList<FeatureBin>());
+      for (int b = 0; b < binStarts.length; ++b) {
+        FeatureBin bin = new FeatureBin(binStarts[b]);
+
+        if (offsets[b] < 0 || offsets[b] > offsets[b + 1] || offsets[b + 1] > refs.length) {
+          throw new IOException(mIndexFile + " has corrupt bins.");
+        }
+
+        for (int i = offsets[b]; i < offsets[b + 1]; ++i) {
+          if (refs[i] < 0 || refs[i] >= n) {
+            throw new IOException(mIndexFile + " has corrupt bins.");
+          }
+
+          bin.add(features[refs[i]]);
+        }
+
+        bins.add(bin);
+      }
+
+      size += refs.length;
+    }
+
+    this.size = size;
+
+    return featuresAtLocation;
+  }
+
+  /**
+   * Check that a count read from the index could fit in the rest of the
+   * file, so a corrupt count cannot cause a huge allocation.
+   *
+   * @param buf   the index buffer.
+   * @param n     the count.
+   * @param width the minimum number of bytes each item occupies.
+   * @return the count.
+   * @throws IOException if the count is negative or too large.
+   */
+  private int checkCount(ByteBuffer buf, int n, int width) throws IOException {
+    if (n < 0 || (long) width * n > buf.remaining()) {
+      throw new IOException(mIndexFile + " is corrupt, count " + n + " exceeds the remaining " + buf.remaining()
+          + " bytes.");
     }
 
+    return n;
+  }
+
+  private byte[] readBytes(ByteBuffer buf, int n) throws IOException {
+    byte[] ret = new byte[checkCount(buf, n, 1)];
+
+    buf.get(ret);
+
+    return ret;
+  }
+
+  private int[] readInts(ByteBuffer buf, int n) throws IOException {
+    int[] ret = new int[checkCount(buf, n, 4)];
+
+    buf.asIntBuffer().get(ret);
+
+    buf.position(buf.position() + 4 * n);
+
+    return ret;
+  }
+
+  /**
+   * Load the bins by parsing the bin locations and features text files.
+   *
+   * @param featureByName the name lookup to fill.
+   * @return the bins of each chromosome.
+   */
+  private ChromosomeSlots<List<FeatureBin>> cacheText(Map<String, Feature> featureByName) {
+    ChromosomeSlots<List<FeatureBin>> featuresAtLocation = ChromosomeSlots.create(mFeatureFile,
+        new ArrayListCreator<FeatureBin>());
+
+    int size = 0;
+
+    Genome genome = GenomeService.getInstance().guessGenome(mFeatureFile);
+
+    Chromosome chromosome;
+    int startLocation;
+
+    // first the bins file
+
     try {
       BufferedReader reader = FileUtils.newBufferedReader(mBinsFile);
 
@@ -148,7 +385,7 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
 
           List<String> row = TextUtils.fastSplit(line, TextUtils.TAB_DELIMITER);
 
-          chromosome = ChromosomeService.getInstance().guessChr(mFeatureFile, row.get(0));
+          chromosome = ChromosomeService.getInstance().chr(genome, row.get(0));
 
           startLocation = Integer.parseInt(row.get(1));
 
@@ -158,7 +395,7 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
 
           // start
 
-          mFeaturesAtLocationByIndex.get(chromosome.getId()).add(new FeatureBin(startLocation));
+          featuresAtLocation.getOrCreate(chromosome).add(new FeatureBin(startLocation));
 
         }
       } finally {
@@ -186,9 +423,11 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
 
           List<String> row = TextUtils.tabSplit(line);
 
-          Feature feature = new Feature(row.get(0), ChromosomeService.getInstance().guessChr(mFeatureFile, row.get(1)),
+          Feature feature = new Feature(row.get(0), ChromosomeService.getInstance().chr(genome, row.get(1)),
               Integer.parseInt(row.get(2)), Integer.parseInt(row.get(3)));
 
+          List<FeatureBin> chrBins = featuresAtLocation.getOrCreate(feature.getChr());
+
           List<String> bins = TextUtils.fastSplit(row.get(4), TextUtils.COMMA_DELIMITER);
 
           for (String bin : bins) {
@@ -201,14 +440,14 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
             // - 1).getStart());
 
             // add the feature to each of the bins it belongs to
-            mFeaturesAtLocationByIndex.get(feature.getChr().getId()).get(b).add(feature);
+            chrBins.get(b).add(feature);
 
             ++size;
           }
 
           // System.out.println(feature.getName());
 
-          mFeatureByName.put(feature.getName(), feature);
+          featureByName.put(feature.getName(), feature);
         }
       } finally {
         reader.close();
@@ -216,6 +455,36 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
     } catch (Exception e) {
       e.printStackTrace();
     }
+
+    this.size = size;
+
+    return featuresAtLocation;
+  }
+
+  /**
+   * Returns the bins of a chromosome, loading the features first if
+   * necessary. If several threads find the features unloaded, only one loads
+   * them. Each call marks the features as used.
+   *
+   * @param chromosome the chromosome
+   * @return the bins or null if the chromosome has no features.
+   */
+  private List<FeatureBin> getBins(Chromosome chromosome) {
+    touch();
+
+    ChromosomeSlots<List<FeatureBin>> featuresAtLocation = mFeaturesAtLocationByIndex;
+
+    if (featuresAtLocation == null) {
+      synchronized (this) {
+        if (mFeaturesAtLocationByIndex == null) {
+          cacheFeatures();
+        }
+
+        featuresAtLocation = mFeaturesAtLocationByIndex;
+      }
+    }
+
+    return featuresAtLocation.get(chromosome);
   }
 
   /*
@@ -226,18 +495,14 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
    */
   @Override
   public List<Feature> getFeatures(Chromosome chromosome, int startLocation, int endLocation) {
-    if (mFeaturesAtLocationByIndex.size() == 0) {
-      cacheFeatures();
-    }
-
     int startIndex;
     int endIndex;
 
     List<Feature> returnFeatures = new ArrayList<Feature>();
 
-    List<FeatureBin> features = mFeaturesAtLocationByIndex.get(chromosome.getId());
+    List<FeatureBin> features = getBins(chromosome);
 
-    if (features.size() == 0) {
+    if (features == null || features.size() == 0) {
       return returnFeatures;
     }
 
@@ -292,15 +557,11 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
    */
   @Override
   public List<Feature> getFeatures(Chromosome chromosome, int location) {
-    if (mFeaturesAtLocationByIndex.size() == 0) {
-      cacheFeatures();
-    }
-
     List<Feature> returnFeatures = new ArrayList<Feature>();
 
-    List<FeatureBin> features = mFeaturesAtLocationByIndex.get(chromosome.getId());
+    List<FeatureBin> features = getBins(chromosome);
 
-    if (features.size() == 0) {
+    if (features == null || features.size() == 0) {
       return returnFeatures;
     }
 
@@ -422,10 +683,15 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
    * @see edu.columbia.rdf.lib.bioinformatics.search.AbstractFeaturesSearch#
    * freeMemory( )
    */
-  public void freeMemory() {
+  public synchronized void freeMemory() {
     super.freeMemory();
 
-    mFeaturesAtLocationByIndex.clear();
+    mFeaturesAtLocationByIndex = null;
+  }
+
+  @Override
+  public boolean isCached() {
+    return mFeaturesAtLocationByIndex != null;
   }
 
   /*
@@ -435,15 +701,17 @@ public class FeaturesCommonRegionBinarySearch extends AbstractFeaturesSearch {
    * getFeatures (edu.columbia.rdf.lib.bioinformatics.genome.Chromosome)
    */
   public List<Feature> getFeatures(Chromosome chromosome) {
-    if (mFeaturesAtLocationByIndex.size() == 0) {
-      cacheFeatures();
-    }
-
     List<Feature> features = new ArrayList<Feature>();
 
     Set<String> used = new HashSet<String>();
 
-    for (FeatureBin featureBin : mFeaturesAtLocationByIndex.get(chromosome.getId())) {
+    List<FeatureBin> bins = getBins(chromosome);
+
+    if (bins == null) {
+      return features;
+    }
+
+    for (FeatureBin featureBin : bins) {
       for (Feature feature : featureBin) {
         if (used.contains(feature.toString())) {
           continue;
@@ -29,13 +29,19 @@ package org.jebtk.bioinformatics.search;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.core.io.FileUtils;
 import org.jebtk.core.text.TextUtils;
 
@@ -57,21 +63,25 @@ public class FeaturesCommonRegionBinarySearchWriter extends FeaturesBasicSearch
   }
 
   /**
-   * Write.
+   * Write the bin locations and binned features as text files and the same
+   * bins as a binary index that can be memory mapped when the search loads.
    */
   public void write() {
     Path dir = mFile.getParent();
 
     Path locationsPath = null;
 
-    locationsPath = dir.resolve(mName + "_bins_locations.txt");
+    locationsPath = dir.resolve(mName + FeaturesCommonRegionBinarySearch.BIN_LOCATION_FILE_ENDING);
 
     Path binsPath = null;
 
-    binsPath = dir.resolve(mName + "_bins.txt");
+    binsPath = dir.resolve(mName + FeaturesCommonRegionBinarySearch.BIN_FEATURE_FILE_ENDING);
+
+    Path indexPath = dir.resolve(mName + FeaturesCommonRegionBinarySearch.BIN_INDEX_FILE_ENDING);
 
     System.out.println("writing " + locationsPath);
     System.out.println("writing " + binsPath);
+    System.out.println("writing " + indexPath);
 
     String header = "";
 
@@ -94,7 +104,13 @@ public class FeaturesCommonRegionBinarySearchWriter extends FeaturesBasicSearch
 
       BufferedWriter featuresWriter = FileUtils.newBufferedWriter(dir.resolve(binsPath));
 
+      DataOutputStream indexWriter = FileUtils.newDataOutputStream(indexPath);
+
       try {
+        indexWriter.writeInt(FeaturesCommonRegionBinarySearch.INDEX_CHECK);
+        indexWriter.writeByte(FeaturesCommonRegionBinarySearch.INDEX_VERSION);
+        indexWriter.writeInt(allLocations.size());
+
         featuresWriter.write(header);
         featuresWriter.newLine();
 
@@ -103,16 +119,14 @@ public class FeaturesCommonRegionBinarySearchWriter extends FeaturesBasicSearch
         locationsWriter.write("location");
         locationsWriter.newLine();
 
-        for (short chromosome = 1; chromosome < allLocations.size(); ++chromosome) {
-          if (allLocations.get(chromosome) == null) {
-            continue;
-          }
+        for (int slot = 0; slot < allLocations.size(); ++slot) {
+          Chromosome chromosome = allLocations.getChr(slot);
 
           List<Integer> locations = new ArrayList<Integer>();
 
           Set<Integer> inUse = new HashSet<Integer>();
 
-          for (Feature feature : allLocations.get(chromosome)) {
+          for (Feature feature : allLocations.get(slot)) {
             if (!inUse.contains(feature.getStart())) {
               locations.add(feature.getStart());
               inUse.add(feature.getStart());
@@ -126,36 +140,53 @@ public class FeaturesCommonRegionBinarySearchWriter extends FeaturesBasicSearch
 
           // sort them
 
-          System.out.println("chr" + chromosome);
+          System.out.println(chromosome);
 
           Collections.sort(locations);
 
-          for (int location : locations) {
-            locationsWriter.write(Integer.toString(chromosome));
+          int[] starts = new int[locations.size()];
+
+          for (int i = 0; i < starts.length; ++i) {
+            starts[i] = locations.get(i);
+
+            locationsWriter.write(chromosome.toString());
             locationsWriter.write(TextUtils.TAB_DELIMITER);
-            locationsWriter.write(Integer.toString(location));
+            locationsWriter.write(Integer.toString(starts[i]));
             locationsWriter.newLine();
           }
 
+          List<Feature> features = allLocations.get(slot);
+
+          int[] firstBins = new int[features.size()];
+          int[] lastBins = new int[features.size()];
+
           // see which features overlap the start of a location
-          for (Feature feature : allLocations.get(chromosome)) {
-            List<Integer> overlap = new ArrayList<Integer>();
-
-            for (int i = 0; i < locations.size(); ++i) {
-              int location = locations.get(i);
-
-              if (feature.getStart() == location || (feature.getStart() < location && feature.getEnd() > location)) {
-                // every feature will be added to the bin where it starts
-                // also add features that overlap into the bin
-
-                // Each bin is searched from the start to the beginning of the
-                // next bin (not including the end position, which is the start
-                // of
-                // the next bin) so only features that start where this bin does
-                // or overlap it may be added otherwise the feature
-                // is allocated to another bin
-                overlap.add(i);
-              }
+          for (int f = 0; f < features.size(); ++f) {
+            Feature feature = features.get(f);
+
+            // every feature will be added to the bin where it starts
+            // also add features that overlap into the bin
+
+            // Each bin is searched from the start to the beginning of the
+            // next bin (not including the end position, which is the start
+            // of the next bin) so only features that start where this bin
+            // does or overlap it may be added otherwise the feature is
+            // allocated to another bin. Since the locations are sorted and
+            // unique these bins are consecutive.
+            int first = Arrays.binarySearch(starts, feature.getStart());
+            int last = first;
+
+            while (last + 1 < starts.length && starts[last + 1] < feature.getEnd()) {
+              ++last;
+            }
+
+            firstBins[f] = first;
+            lastBins[f] = last;
+
+            List<Integer> overlap = new ArrayList<Integer>(last - first + 1);
+
+            for (int i = first; i <= last; ++i) {
+              overlap.add(i);
             }
 
             featuresWriter.write(feature.getName());
@@ -169,13 +200,102 @@ public class FeaturesCommonRegionBinarySearchWriter extends FeaturesBasicSearch
             featuresWriter.write(TextUtils.join(overlap, TextUtils.COMMA_DELIMITER));
             featuresWriter.newLine();
           }
+
+          writeIndex(chromosome, starts, features, firstBins, lastBins, indexWriter);
         }
       } finally {
         locationsWriter.close();
         featuresWriter.close();
+        indexWriter.close();
       }
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
+
+  /**
+   * Write the bins of one chromosome to the binary index. The block holds the
+   * chromosome name, the bin starts, the coordinates of the features, their
+   * names as offsets into a UTF-8 pool and, for each bin, the offset of its
+   * features in a table of feature indices. All integers are big endian.
+   *
+   * @param chr       the chr
+   * @param starts    the sorted bin starts
+   * @param features  the features
+   * @param firstBins the first bin of each feature
+   * @param lastBins  the last bin of each feature
+   * @param writer    the writer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeIndex(Chromosome chr, int[] starts, List<Feature> features, int[] firstBins,
+      int[] lastBins, DataOutputStream writer) throws IOException {
+    byte[] name = chr.toString().getBytes(StandardCharsets.UTF_8);
+
+    writer.writeInt(name.length);
+    writer.write(name);
+
+    writer.writeInt(starts.length);
+
+    for (int start : starts) {
+      writer.writeInt(start);
+    }
+
+    int n = features.size();
+
+    writer.writeInt(n);
+
+    for (Feature feature : features) {
+      writer.writeInt(feature.getStart());
+    }
+
+    for (Feature feature : features) {
+      writer.writeInt(feature.getEnd());
+    }
+
+    // Name offsets followed by the pool
+    ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    writer.writeInt(0);
+
+    for (Feature feature : features) {
+      byte[] b = feature.getName().getBytes(StandardCharsets.UTF_8);
+
+      pool.write(b, 0, b.length);
+
+      writer.writeInt(pool.size());
+    }
+
+    pool.writeTo(writer);
+
+    // Invert the feature to bin ranges so each bin lists its features in
+    // the order they appear in the file
+    int[] offsets = new int[starts.length + 1];
+
+    for (int f = 0; f < n; ++f) {
+      for (int b = firstBins[f]; b <= lastBins[f]; ++b) {
+        ++offsets[b + 1];
+      }
+    }
+
+    for (int b = 0; b < starts.length; ++b) {
+      offsets[b + 1] += offsets[b];
+    }
+
+    int[] refs = new int[offsets[starts.length]];
+    int[] next = Arrays.copyOf(offsets, starts.length);
+
+    for (int f = 0; f < n; ++f) {
+      for (int b = firstBins[f]; b <= lastBins[f]; ++b) {
+        refs[next[b]++] = f;
+      }
+    }
+
+    for (int offset : offsets) {
+      writer.writeInt(offset);
+    }
+
+    for (int ref : refs) {
+      writer.writeInt(ref);
+    }
+  }
 }
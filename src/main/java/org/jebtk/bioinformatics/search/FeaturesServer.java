@@ -30,9 +30,14 @@ package org.jebtk.bioinformatics.search;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -40,13 +45,137 @@ import javax.xml.parsers.SAXParserFactory;
 import org.jebtk.bioinformatics.genomic.Genome;
 
 /**
- * Server for genome feature annotations.
+ * Server for genome feature annotations. Tracks are loaded when they are first
+ * requested and a group of tracks is loaded in parallel in the background
+ * when the group is requested. An optional cache limit unloads the least
+ * recently used tracks, which reload themselves if they are queried again.
+ * Use is recorded by the tracks themselves each time they are queried, so a
+ * track that is held and queried directly is not unloaded ahead of tracks
+ * that are idle.
+ * 
+ * A track is loaded and unloaded under its own lock, so it is only ever
+ * loaded once at a time, whether by the server or by a query on an unloaded
+ * track. Queries work on the loaded state they started with, so unloading a
+ * track that another thread is querying is safe. A track that reloads itself
+ * is counted towards the cache limit from then on, but its load statistics
+ * are only updated when it is next requested through the server.
+ * 
+ * The feature names of each track are kept once it has been loaded, even if
+ * it is unloaded later, so that name lookups across all tracks never have to
+ * load tracks themselves.
  *
  * @author Antony Holmes
  *
  */
 public class FeaturesServer {
 
+  /**
+   * Lazily create the pool that loads tracks in the background. Threads are
+   * daemons so that pending loads do not keep an application alive.
+   */
+  private static class LoaderExecutorLoader {
+    private static final ExecutorService INSTANCE = Executors
+        .newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+          Thread t = new Thread(r, "features-loader");
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  /**
+   * Load statistics of a track.
+   */
+  public static class TrackStats {
+    private final AbstractFeaturesSearch mSearch;
+    private volatile long mLoadTime = 0;
+    private volatile int mSize = 0;
+    private volatile int mLoads = 0;
+    private volatile int mEvictions = 0;
+
+    /**
+     * The feature names, or null if the track has not been loaded yet.
+     */
+    private volatile Collection<String> mNames = null;
+
+    /** Guarded by mTracks. */
+    private boolean mIndexQueued = false;
+
+    private TrackStats(AbstractFeaturesSearch search) {
+      mSearch = search;
+    }
+
+    /**
+     * Gets the search.
+     *
+     * @return the search
+     */
+    public AbstractFeaturesSearch getSearch() {
+      return mSearch;
+    }
+
+    /**
+     * Returns how long the last load took.
+     *
+     * @return the load time in ms.
+     */
+    public long getLoadTime() {
+      return mLoadTime;
+    }
+
+    /**
+     * Returns the size of the track when it was last loaded.
+     *
+     * @return the size
+     */
+    public int getSize() {
+      return mSize;
+    }
+
+    /**
+     * Returns the number of times the track has been loaded by the server.
+     *
+     * @return the loads
+     */
+    public int getLoads() {
+      return mLoads;
+    }
+
+    /**
+     * Returns the number of times the track has been unloaded to keep within
+     * the cache limit.
+     *
+     * @return the evictions
+     */
+    public int getEvictions() {
+      return mEvictions;
+    }
+
+    /**
+     * Returns when the track was last queried or loaded.
+     *
+     * @return the last used time
+     * @see AbstractFeaturesSearch#getLastUsed()
+     */
+    public long getLastUsed() {
+      return mSearch.getLastUsed();
+    }
+
+    /**
+     * Returns true if the track is currently loaded.
+     *
+     * @return true, if is cached
+     */
+    public boolean isCached() {
+      return mSearch.isCached();
+    }
+
+    @Override
+    public String toString() {
+      return mSearch.getName() + " size:" + mSize + " load:" + mLoadTime + "ms loads:" + mLoads + " evictions:"
+          + mEvictions;
+    }
+  }
+
   /**
    * The constant INSTANCE.
    */
@@ -72,6 +201,29 @@ public class FeaturesServer {
   // genome, group, feature name
   private Map<Genome, Map<String, Map<String, AbstractFeaturesSearch>>> mFeatureMap = new HashMap<Genome, Map<String, Map<String, AbstractFeaturesSearch>>>();
 
+  /**
+   * The statistics of each track in the order they were added.
+   */
+  private final Map<AbstractFeaturesSearch, TrackStats> mTracks = new LinkedHashMap<AbstractFeaturesSearch, TrackStats>();
+
+  /**
+   * The total size of the loaded tracks above which tracks are unloaded.
+   */
+  private volatile long mCacheLimit = Long.MAX_VALUE;
+
+  /**
+   * An index of the feature names recorded so far, or null if it needs to be
+   * created again.
+   */
+  private volatile FeatureNameIndex mNameIndex = null;
+
+  /**
+   * Counts the tracks added and the tracks whose names have been recorded, so
+   * that a name index built from older names is not published. Guarded by
+   * mTracks.
+   */
+  private int mTracksVersion = 0;
+
   /**
    * Instantiates a new features server.
    */
@@ -167,6 +319,14 @@ public class FeaturesServer {
     System.err.println("adding feature " + genome + " " + group + " " + features.getName());
 
     mFeatureMap.get(genome).get(group).put(features.getName(), features);
+
+    synchronized (mTracks) {
+      mTracks.put(features, new TrackStats(features));
+
+      ++mTracksVersion;
+
+      mNameIndex = null;
+    }
   }
 
   /**
@@ -188,11 +348,18 @@ public class FeaturesServer {
       return null;
     }
 
-    return mFeatureMap.get(genome).get(group).get(name);
+    AbstractFeaturesSearch ret = mFeatureMap.get(genome).get(group).get(name);
+
+    if (ret != null) {
+      load(ret);
+    }
+
+    return ret;
   }
 
   /**
-   * Returns the collection of features associated with a genome.
+   * Returns the collection of features associated with a genome. Tracks in
+   * the group that are not loaded start loading in the background.
    *
    * @param genome the genome
    * @param group  the group
@@ -207,7 +374,323 @@ public class FeaturesServer {
       return null;
     }
 
-    return mFeatureMap.get(genome).get(group).values();
+    Collection<AbstractFeaturesSearch> ret = mFeatureMap.get(genome).get(group).values();
+
+    loadInBackground(ret);
+
+    return ret;
+  }
+
+  /**
+   * Load tracks in parallel in the background.
+   *
+   * @param searches the searches
+   */
+  public void loadInBackground(Collection<AbstractFeaturesSearch> searches) {
+    for (final AbstractFeaturesSearch search : searches) {
+      if (!search.isCached()) {
+        LoaderExecutorLoader.INSTANCE.execute(() -> {
+          try {
+            load(search);
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Mark a track as the most recently used, load it if necessary and unload
+   * other tracks if the cache limit is exceeded. If the track is already
+   * being loaded in the background this waits for it.
+   *
+   * @param search the search
+   */
+  private void load(AbstractFeaturesSearch search) {
+    TrackStats stats;
+
+    synchronized (mTracks) {
+      stats = mTracks.get(search);
+    }
+
+    if (stats == null) {
+      return;
+    }
+
+    synchronized (stats) {
+      long start = System.currentTimeMillis();
+
+      if (search.load()) {
+        stats.mLoadTime = System.currentTimeMillis() - start;
+        ++stats.mLoads;
+      }
+
+      stats.mSize = search.size();
+
+      recordNames(stats);
+    }
+
+    evict(stats);
+  }
+
+  /**
+   * Keep the feature names of a track for the name index if they have not
+   * been kept already. The names are read from the loaded track, which is
+   * loaded again if it has been unloaded in the meantime.
+   *
+   * @param stats the track
+   */
+  private void recordNames(TrackStats stats) {
+    synchronized (stats) {
+      if (stats.mNames != null) {
+        return;
+      }
+
+      stats.mNames = stats.mSearch.getFeatureNames();
+    }
+
+    synchronized (mTracks) {
+      ++mTracksVersion;
+
+      mNameIndex = null;
+    }
+  }
+
+  /**
+   * Unload the least recently used tracks until the loaded tracks fit in the
+   * cache limit. The track just used is never unloaded.
+   *
+   * @param used the track just used
+   */
+  private void evict(TrackStats used) {
+    List<TrackStats> cached = new ArrayList<TrackStats>();
+
+    long total = 0;
+
+    synchronized (mTracks) {
+      for (TrackStats stats : mTracks.values()) {
+        if (stats.isCached()) {
+          total += stats.mSize;
+
+          if (stats != used) {
+            cached.add(stats);
+          }
+        }
+      }
+    }
+
+    List<TrackStats> evict = new ArrayList<TrackStats>();
+
+    // Queries keep updating when tracks were last used, so rather than sort
+    // on a moving key pick the least recently used track each time
+    while (total > mCacheLimit && !cached.isEmpty()) {
+      int lru = 0;
+
+      for (int i = 1; i < cached.size(); ++i) {
+        // nanoTime values must be compared by their difference
+        if (cached.get(i).getLastUsed() - cached.get(lru).getLastUsed() < 0) {
+          lru = i;
+        }
+      }
+
+      TrackStats stats = cached.remove(lru);
+
+      evict.add(stats);
+
+      total -= stats.mSize;
+    }
+
+    for (TrackStats stats : evict) {
+      synchronized (stats) {
+        stats.mSearch.freeMemory();
+        ++stats.mEvictions;
+      }
+    }
+  }
+
+  /**
+   * Returns an index of the feature names of the tracks loaded so far. The
+   * index never loads tracks itself: tracks that have not been loaded yet
+   * are loaded in the background and the index is recreated to include them
+   * once they are, so a lookup straight after tracks are added may not find
+   * all their names. If names are recorded whilst the index is being
+   * created, the index is returned to the caller but not kept, so the next
+   * request includes them.
+   *
+   * @return the feature name index
+   */
+  public FeatureNameIndex getNameIndex() {
+    FeatureNameIndex ret = mNameIndex;
+
+    if (ret != null) {
+      return ret;
+    }
+
+    List<TrackStats> tracks;
+
+    synchronized (mTracks) {
+      tracks = new ArrayList<TrackStats>(mTracks.values());
+    }
+
+    // Tracks that reloaded themselves can give their names without loading
+    for (TrackStats stats : tracks) {
+      if (stats.mNames == null && stats.isCached()) {
+        recordNames(stats);
+      }
+    }
+
+    int version;
+
+    List<TrackStats> unindexed = new ArrayList<TrackStats>();
+
+    // Take the tracks again with the version, in case any were added above
+    synchronized (mTracks) {
+      tracks = new ArrayList<TrackStats>(mTracks.values());
+      version = mTracksVersion;
+
+      for (TrackStats stats : tracks) {
+        if (stats.mNames == null && !stats.mIndexQueued) {
+          stats.mIndexQueued = true;
+
+          unindexed.add(stats);
+        }
+      }
+    }
+
+    Map<AbstractFeaturesSearch, Collection<String>> names = new HashMap<AbstractFeaturesSearch, Collection<String>>();
+
+    for (TrackStats stats : tracks) {
+      Collection<String> n = stats.mNames;
+
+      if (n != null) {
+        names.put(stats.mSearch, n);
+      }
+    }
+
+    ret = new FeatureNameIndex(names);
+
+    synchronized (mTracks) {
+      if (version == mTracksVersion) {
+        mNameIndex = ret;
+      }
+    }
+
+    for (final TrackStats stats : unindexed) {
+      LoaderExecutorLoader.INSTANCE.execute(() -> {
+        try {
+          // Records the names even if the track was loaded meanwhile
+          load(stats.mSearch);
+        } catch (Exception e) {
+          e.printStackTrace();
+
+          synchronized (mTracks) {
+            stats.mIndexQueued = false;
+          }
+        }
+      });
+    }
+
+    return ret;
+  }
+
+  /**
+   * Find the features in any track with a name, ignoring case.
+   *
+   * @param name the name
+   * @return the hits
+   * @see #getNameIndex()
+   */
+  public List<FeatureNameIndex.Hit> find(String name) {
+    return getNameIndex().find(name);
+  }
+
+  /**
+   * Find the features in any track whose names start with a prefix, ignoring
+   * case.
+   *
+   * @param prefix the prefix
+   * @return the hits
+   * @see #getNameIndex()
+   */
+  public List<FeatureNameIndex.Hit> findPrefix(String prefix) {
+    return getNameIndex().findPrefix(prefix);
+  }
+
+  /**
+   * Find the features in any track with a name or any of its gene synonyms,
+   * ignoring case.
+   *
+   * @param name the name
+   * @return the hits
+   * @see #getNameIndex()
+   */
+  public List<FeatureNameIndex.Hit> findSynonyms(String name) {
+    return getNameIndex().findSynonyms(name);
+  }
+
+  /**
+   * Set the maximum total size of the loaded tracks. Sizes are those reported
+   * by {@link AbstractFeaturesSearch#size()}, i.e. the number of cached
+   * feature entries, which is what dominates the memory a track uses.
+   *
+   * @param limit the limit
+   */
+  public void setCacheLimit(long limit) {
+    mCacheLimit = Math.max(0, limit);
+  }
+
+  /**
+   * Gets the cache limit.
+   *
+   * @return the cache limit
+   */
+  public long getCacheLimit() {
+    return mCacheLimit;
+  }
+
+  /**
+   * Returns the total size of the tracks that are currently loaded.
+   *
+   * @return the cached size
+   */
+  public long getCachedSize() {
+    long ret = 0;
+
+    synchronized (mTracks) {
+      for (TrackStats stats : mTracks.values()) {
+        if (stats.isCached()) {
+          ret += stats.mSize;
+        }
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the statistics of a track.
+   *
+   * @param search the search
+   * @return the track stats or null if the track was not added to the
+   *         server.
+   */
+  public TrackStats getStats(AbstractFeaturesSearch search) {
+    synchronized (mTracks) {
+      return mTracks.get(search);
+    }
+  }
+
+  /**
+   * Returns the statistics of every track in the order the tracks were
+   * added.
+   *
+   * @return the stats
+   */
+  public List<TrackStats> getStats() {
+    synchronized (mTracks) {
+      return new ArrayList<TrackStats>(mTracks.values());
+    }
   }
 
   /**
@@ -30,19 +30,39 @@ package org.jebtk.bioinformatics.search;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.jebtk.bioinformatics.Search;
 import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
 
 /**
- * The class FeaturesSkipSearch.
+ * Search of features that are sorted by start but may overlap, such as genes.
+ * The coordinates of each chromosome are copied into a
+ * {@link FeatureCoordinates} the first time the chromosome is searched.
  */
 public class FeaturesSkipSearch extends FeaturesBinarySearch {
 
   /**
-   * The skip.
+   * The coordinates of each chromosome searched so far, for the features they
+   * were made from.
    */
-  private static int SKIP = 1000;
+  private static class Coordinates {
+    private final ChromosomeSlots<List<Feature>> mLocations;
+
+    private final Map<Chromosome, FeatureCoordinates> mByChr = new ConcurrentHashMap<Chromosome, FeatureCoordinates>();
+
+    private Coordinates(ChromosomeSlots<List<Feature>> locations) {
+      mLocations = locations;
+    }
+  }
+
+  /**
+   * The coordinates of the currently loaded features. These are replaced if
+   * the features are reloaded, so coordinates are never paired with features
+   * from a different load.
+   */
+  private volatile Coordinates mCoordinates = null;
 
   /**
    * Instantiates a new features skip search.
@@ -63,83 +83,108 @@ public class FeaturesSkipSearch extends FeaturesBinarySearch {
    */
   @Override
   public final List<Feature> getFeatures(int startLocation, int endLocation, Chromosome chromosome) {
-    // System.out.println(chromosome + ":loc:" + startLocation + " " +
-    // endLocation);
-
-    // go through the table
-
-    int startIndex;
-    int endIndex;
-
     List<Feature> features = new ArrayList<Feature>();
 
-    List<Feature> locations = allLocations.get(chromosome.getId());
+    ChromosomeSlots<List<Feature>> allLocations = getLocations();
 
-    if (locations == null) {
-      // System.out.println("ropey chromosome " + chromosome);
+    List<Feature> locations = allLocations.get(chromosome);
+
+    if (locations == null || locations.size() == 0) {
       return features;
     }
-    // endLocations = allEndLocations.get(chromosome);
 
-    // System.out.println(startLocation + ":" + locations.get(0).getStart() +
-    // ":" +
-    // endLocation + ":" + locations.get(locations.size() - 1).getEnd());
+    getCoordinates(allLocations, chromosome, locations).getFeatures(locations, startLocation, endLocation, features);
 
-    int last = locations.size() - 1;
+    return features;
+  }
 
-    if (startLocation > locations.get(last).getEnd() || endLocation < locations.get(0).getStart()) {
-      // the range is clearly not within the feature set so don't even bother to
-      // look
-      return features;
-    } else if (startLocation <= locations.get(0).getStart() && endLocation >= locations.get(last).getStart()) {
-      // the range spans the entire set of features
-
-      startIndex = 0;
-      endIndex = last;
-
-      // System.out.println("f:" + last + " " + locations.size() + " " +
-      // startIndex +
-      // " " + endIndex + " " + locations.get(startIndex).getName() + " " +
-      // locations.get(endIndex).getName());
-    } else {
-      // the range is within some part of the features
-
-      // System.out.println(startLocation + " " + locations.get(0).getStart() +
-      // " " +
-      // locations.get(0).getEnd() + " " + endLocation + " " +
-      // locations.get(last).getStart() + " " + locations.get(last).getEnd());
-
-      if (startLocation <= locations.get(0).getStart()) {
-        startIndex = 0;
-      } else {
-        startIndex = Search.jumpSearchInner(startLocation, locations, SKIP);
-      }
+  @Override
+  public List<Feature> getFeatures(Chromosome chromosome, int start, int end) {
+    return getFeatures(start, end, chromosome);
+  }
 
-      if (startIndex == -1) {
-        // there was no valid start within the boundaries so no point
-        // continuing
-        return features;
+  /**
+   * Returns the features overlapping each of a list of regions. The first
+   * feature that could overlap each region is found by galloping forward from
+   * the one found for the previous region, so a sorted list of regions is
+   * answered in one pass over the features of each chromosome. Regions that
+   * are not sorted are still answered correctly, but restart the search from
+   * the beginning of the chromosome.
+   *
+   * @param regions the regions, sorted by chromosome and start.
+   * @return the features of each region.
+   */
+  @Override
+  public List<List<Feature>> getFeatures(List<? extends GenomicRegion> regions) {
+    List<List<Feature>> ret = new ArrayList<List<Feature>>(regions.size());
+
+    ChromosomeSlots<List<Feature>> allLocations = getLocations();
+
+    Chromosome chr = null;
+    List<Feature> locations = null;
+    FeatureCoordinates coordinates = null;
+
+    int hint = 0;
+    int previousStart = Integer.MIN_VALUE;
+
+    for (GenomicRegion region : regions) {
+      if (!region.getChr().equals(chr)) {
+        chr = region.getChr();
+        locations = allLocations.get(chr);
+        coordinates = locations != null && locations.size() > 0 ? getCoordinates(allLocations, chr, locations) : null;
+        hint = 0;
+      } else if (region.getStart() < previousStart) {
+        hint = 0;
       }
 
-      if (endLocation >= locations.get(last).getStart()) {
-        endIndex = last;
-      } else {
-        endIndex = Search.jumpSearchOuter(endLocation, locations, SKIP);
-      }
+      previousStart = region.getStart();
+
+      List<Feature> features = new ArrayList<Feature>();
 
-      if (endIndex == -1) {
-        // there was no valid start within the boundaries so no point
-        // continuing
-        return features;
+      if (coordinates != null) {
+        hint = coordinates.getFeatures(locations, region.getStart(), region.getEnd(), hint, features);
       }
+
+      ret.add(features);
     }
 
-    // System.out.println(startIndex + " " + endIndex);
+    return ret;
+  }
+
+  /**
+   * Returns the coordinates of a chromosome, creating them if necessary.
+   *
+   * @param allLocations the loaded features the chromosome's features are
+   *                     from
+   * @param chromosome   the chromosome
+   * @param locations    the features of the chromosome
+   * @return the feature coordinates
+   */
+  private FeatureCoordinates getCoordinates(ChromosomeSlots<List<Feature>> allLocations, Chromosome chromosome,
+      List<Feature> locations) {
+    Coordinates coordinates = mCoordinates;
+
+    if (coordinates == null || coordinates.mLocations != allLocations) {
+      coordinates = new Coordinates(allLocations);
 
-    for (int i = startIndex; i <= endIndex; ++i) {
-      features.add(locations.get(i));
+      mCoordinates = coordinates;
     }
 
-    return features;
+    FeatureCoordinates ret = coordinates.mByChr.get(chromosome);
+
+    if (ret == null) {
+      ret = new FeatureCoordinates(locations);
+
+      coordinates.mByChr.put(chromosome, ret);
+    }
+
+    return ret;
+  }
+
+  @Override
+  public synchronized void freeMemory() {
+    super.freeMemory();
+
+    mCoordinates = null;
   }
 }
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.jebtk.bioinformatics.dna.BaseComposition;
+import org.jebtk.bioinformatics.dna.Chr2Bit;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.junit.Test;
+
+/**
+ * Checks the counts of BaseComposition, which work on whole bytes of packed
+ * bases at a time, against counting one base at a time.
+ */
+public class BaseCompositionTest {
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  @Test
+  public void windowsTest() {
+    Random random = new Random(1);
+
+    int length = 67;
+
+    int[] bases = randomBases(random, length);
+    boolean[] n = randomBits(random, length);
+    boolean[] mask = randomBits(random, length);
+
+    Chr2Bit chr = pack(bases, n, mask);
+
+    // Every window, so each combination of start and end within a byte of
+    // the 2 and 1 bit buffers is covered
+    for (int start = 0; start < length; ++start) {
+      for (int end = start; end < length; ++end) {
+        assertCounts(bases, n, mask, start, end, BaseComposition.count(chr, start, end));
+      }
+    }
+  }
+
+  @Test
+  public void randomTest() {
+    Random random = new Random(2);
+
+    for (int run = 0; run < 500; ++run) {
+      int length = 1 + random.nextInt(500);
+
+      int[] bases = randomBases(random, length);
+      boolean[] n = random.nextInt(4) > 0 ? randomBits(random, length) : null;
+      boolean[] mask = random.nextInt(4) > 0 ? randomBits(random, length) : null;
+
+      Chr2Bit chr = pack(bases, n, mask);
+
+      // Windows may run off either end of the chromosome
+      int start = random.nextInt(length + 10) - 5;
+      int end = start + random.nextInt(length + 10) - 5;
+
+      assertCounts(bases, n, mask, start, end, BaseComposition.count(chr, start, end));
+    }
+  }
+
+  @Test
+  public void cpgTest() {
+    // Twice a C at the end of a byte followed by a G at the start of the
+    // next, then a CpG within a byte. The first G has no C before it.
+    int[] bases = codes("GAACGAACGCGAAAAC");
+
+    BaseComposition composition = BaseComposition.count(pack(bases, null, null), 0, bases.length - 1);
+
+    assertEquals(4, composition.getC());
+    assertEquals(4, composition.getG());
+    assertEquals(3, composition.getCpG());
+    assertEquals(0.5, composition.gc(), 1e-9);
+    assertEquals(3.0, composition.cpgOE(), 1e-9);
+
+    // Starting on the G of a CpG leaves out the C
+    composition = BaseComposition.count(pack(bases, null, null), 4, bases.length - 1);
+
+    assertEquals(2, composition.getCpG());
+  }
+
+  /**
+   * Compare with counts made one base at a time.
+   */
+  private static void assertCounts(int[] bases, boolean[] n, boolean[] mask, int start, int end,
+      BaseComposition composition) {
+    start = Math.max(0, start);
+    end = Math.min(end, bases.length - 1);
+
+    int c = 0;
+    int g = 0;
+    int cpg = 0;
+    int ns = 0;
+    int masked = 0;
+
+    for (int i = start; i <= end; ++i) {
+      if (bases[i] == 1) {
+        ++c;
+      }
+
+      if (bases[i] == 2) {
+        ++g;
+
+        if (i > start && bases[i - 1] == 1) {
+          ++cpg;
+        }
+      }
+
+      if (n != null && n[i]) {
+        ++ns;
+      }
+
+      if (mask != null && mask[i]) {
+        ++masked;
+      }
+    }
+
+    assertEquals(Math.max(0, end - start + 1), composition.getLength());
+    assertEquals(c, composition.getC());
+    assertEquals(g, composition.getG());
+    assertEquals(cpg, composition.getCpG());
+    assertEquals(ns, composition.getN());
+    assertEquals(masked, composition.getMasked());
+  }
+
+  /**
+   * Random 2 bit base codes, mostly C and G so that there are plenty of CpGs.
+   */
+  private static int[] randomBases(Random random, int length) {
+    int[] ret = new int[length];
+
+    for (int i = 0; i < length; ++i) {
+      ret[i] = random.nextInt(3) > 0 ? 1 + random.nextInt(2) : random.nextInt(4);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Random bits, set in runs so that whole bytes are sometimes set.
+   */
+  private static boolean[] randomBits(Random random, int length) {
+    boolean[] ret = new boolean[length];
+
+    boolean bit = false;
+
+    for (int i = 0; i < length; ++i) {
+      if (random.nextInt(10) == 0) {
+        bit = !bit;
+      }
+
+      ret[i] = bit;
+    }
+
+    return ret;
+  }
+
+  private static int[] codes(String seq) {
+    int[] ret = new int[seq.length()];
+
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = "ACGT".indexOf(seq.charAt(i));
+    }
+
+    return ret;
+  }
+
+  private static Chr2Bit pack(int[] bases, boolean[] n, boolean[] mask) {
+    byte[] dna = new byte[(bases.length + 3) / 4];
+
+    for (int i = 0; i < bases.length; ++i) {
+      dna[i >> 2] |= bases[i] << (6 - ((i & 3) << 1));
+    }
+
+    return new Chr2Bit(CHR, bases.length, dna, pack(n), pack(mask));
+  }
+
+  private static byte[] pack(boolean[] bits) {
+    if (bits == null) {
+      return null;
+    }
+
+    byte[] ret = new byte[(bits.length + 7) / 8];
+
+    for (int i = 0; i < bits.length; ++i) {
+      if (bits[i]) {
+        ret[i >> 3] |= 1 << (7 - (i & 7));
+      }
+    }
+
+    return ret;
+  }
+}
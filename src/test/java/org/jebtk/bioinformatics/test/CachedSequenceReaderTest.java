@@ -0,0 +1,255 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.jebtk.bioinformatics.genomic.CachedSequenceReader;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.RepeatMaskType;
+import org.jebtk.bioinformatics.genomic.WebSequenceReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs a CachedSequenceReader over a WebSequenceReader talking to an in
+ * process HTTP stub that serves a synthetic chromosome.
+ */
+public class CachedSequenceReaderTest {
+  private static final int TILE_SIZE = 100;
+
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  private HttpServer mServer;
+
+  private final AtomicInteger mRequests = new AtomicInteger();
+
+  /** Lets the concurrent test hold the first fetch open. */
+  private volatile CountDownLatch mRelease = new CountDownLatch(0);
+
+  @Before
+  public void start() throws IOException {
+    mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+    mServer.createContext("/dna", (HttpExchange exchange) -> {
+      mRequests.incrementAndGet();
+
+      try {
+        mRelease.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      // /dna/<genome>/<chr>/<start>/<end>
+      String[] tokens = exchange.getRequestURI().getPath().split("/");
+
+      int start = Integer.parseInt(tokens[tokens.length - 2]);
+      int end = Integer.parseInt(tokens[tokens.length - 1]);
+
+      byte[] body = ("{\"seq\":\"" + bases(start, end) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+      exchange.sendResponseHeaders(200, body.length);
+
+      OutputStream out = exchange.getResponseBody();
+
+      try {
+        out.write(body);
+      } finally {
+        out.close();
+      }
+    });
+
+    mServer.start();
+  }
+
+  @After
+  public void stop() {
+    mServer.stop(0);
+  }
+
+  /**
+   * The synthetic chromosome: ACGT repeating with every third block of 10
+   * bases repeat masked (lowercase).
+   */
+  private static String bases(int start, int end) {
+    StringBuilder buffer = new StringBuilder();
+
+    for (int p = start; p <= end; ++p) {
+      char c = "ACGT".charAt((p - 1) % 4);
+
+      buffer.append((p - 1) / 10 % 3 == 0 ? Character.toLowerCase(c) : c);
+    }
+
+    return buffer.toString();
+  }
+
+  private CachedSequenceReader newReader() throws IOException {
+    return newReader(TILE_SIZE, null);
+  }
+
+  private CachedSequenceReader newReader(int tileSize, Path dir) throws IOException {
+    URL url = new URL("http://localhost:" + mServer.getAddress().getPort() + "/");
+
+    return new CachedSequenceReader(new WebSequenceReader(url), tileSize, 16, dir);
+  }
+
+  @Test
+  public void tileBoundaryTest() throws IOException {
+    CachedSequenceReader reader = newReader();
+
+    String dna = reader.getSequence(Genome.HG19, new GenomicRegion(CHR, 95, 215), true, RepeatMaskType.LOWERCASE)
+        .getSequence().toString();
+
+    assertEquals(bases(95, 215), dna);
+
+    // Three tiles fetched
+    assertEquals(3, mRequests.get());
+
+    // Served from memory
+    reader.getSequence(Genome.HG19, new GenomicRegion(CHR, 150, 160), true, RepeatMaskType.LOWERCASE);
+
+    assertEquals(3, mRequests.get());
+  }
+
+  @Test
+  public void maskTest() throws IOException {
+    CachedSequenceReader reader = newReader();
+
+    GenomicRegion region = new GenomicRegion(CHR, 1, 20);
+
+    assertEquals("NNNNNNNNNNGTACGTACGT",
+        reader.getSequence(Genome.HG19, region, true, RepeatMaskType.N).getSequence().toString());
+
+    assertEquals("nnnnnnnnnngtacgtacgt",
+        reader.getSequence(Genome.HG19, region, false, RepeatMaskType.N).getSequence().toString());
+
+    assertEquals("ACGTACGTACGTACGTACGT",
+        reader.getSequence(Genome.HG19, region, true, RepeatMaskType.UPPERCASE).getSequence().toString());
+  }
+
+  @Test
+  public void coalesceTest() throws Exception {
+    final CachedSequenceReader reader = newReader();
+
+    mRelease = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      List<Future<String>> futures = new ArrayList<Future<String>>();
+
+      for (int i = 0; i < 8; ++i) {
+        final int s = 10 + i;
+
+        futures.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws IOException {
+            return reader.getSequence(Genome.HG19, new GenomicRegion(CHR, s, s + 50), true,
+                RepeatMaskType.LOWERCASE).getSequence().toString();
+          }
+        }));
+      }
+
+      // Give every thread time to ask for the tile before the fetch finishes
+      Thread.sleep(200);
+
+      mRelease.countDown();
+
+      for (int i = 0; i < 8; ++i) {
+        assertEquals(bases(10 + i, 60 + i), futures.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, mRequests.get());
+  }
+
+  @Test
+  public void sharedDirTest() throws IOException {
+    Path dir = Files.createTempDirectory("tiles");
+
+    try {
+      GenomicRegion region = new GenomicRegion(CHR, 1, 200);
+
+      // Tile 1 of the first reader and tile 1 of the second cover different
+      // bases so they must not be stored in the same file
+      assertEquals(bases(1, 200), newReader(TILE_SIZE, dir)
+          .getSequence(Genome.HG19, region, true, RepeatMaskType.LOWERCASE).getSequence().toString());
+
+      assertEquals(2, mRequests.get());
+
+      assertEquals(bases(1, 200), newReader(30, dir).getSequence(Genome.HG19, region, true, RepeatMaskType.LOWERCASE)
+          .getSequence().toString());
+
+      assertEquals(9, mRequests.get());
+
+      // New readers of either size are served from disk
+      assertEquals(bases(1, 200), newReader(TILE_SIZE, dir)
+          .getSequence(Genome.HG19, region, true, RepeatMaskType.LOWERCASE).getSequence().toString());
+
+      assertEquals(bases(1, 200), newReader(30, dir).getSequence(Genome.HG19, region, true, RepeatMaskType.LOWERCASE)
+          .getSequence().toString());
+
+      assertEquals(9, mRequests.get());
+    } finally {
+      delete(dir);
+    }
+  }
+
+  private static void delete(Path dir) throws IOException {
+    List<Path> files = new ArrayList<Path>();
+
+    Stream<Path> walk = Files.walk(dir);
+
+    try {
+      walk.forEach(files::add);
+    } finally {
+      walk.close();
+    }
+
+    // Children before parents
+    Collections.reverse(files);
+
+    for (Path file : files) {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.search.Feature;
+import org.jebtk.bioinformatics.search.FeatureCoordinates;
+import org.junit.Test;
+
+/**
+ * Checks the searches of FeatureCoordinates against linear scans on small
+ * random feature lists.
+ */
+public class FeatureCoordinatesTest {
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  private static final int[] SIZES = { 0, 1, 2, 3, 7, 8, 15, 16, 17, 100 };
+
+  @Test
+  public void upperBoundTest() {
+    Random random = new Random(1);
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 20; ++run) {
+        // A narrow range of starts gives plenty of duplicates
+        List<Feature> features = createFeatures(random, n, 1 + random.nextInt(2 * n + 2));
+
+        FeatureCoordinates coordinates = new FeatureCoordinates(features);
+
+        for (int value = -2; value < 2 * n + 6; ++value) {
+          int expected = upperBound(features, value);
+
+          assertEquals(expected, coordinates.upperBound(value));
+          assertEquals(expected, coordinates.upperBoundEytzinger(value));
+
+          for (int hint = 0; hint <= expected; ++hint) {
+            assertEquals(expected, coordinates.gallop(value, hint));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void firstEndingAfterTest() {
+    Random random = new Random(2);
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 20; ++run) {
+        List<Feature> features = createFeatures(random, n, 1 + random.nextInt(2 * n + 2));
+
+        FeatureCoordinates coordinates = new FeatureCoordinates(features);
+
+        for (int value = -2; value < 3 * n + 20; ++value) {
+          int expected = firstEndingAfter(features, value);
+
+          assertEquals(expected, coordinates.firstEndingAfter(value));
+
+          for (int hint = 0; hint <= expected; ++hint) {
+            assertEquals(expected, coordinates.firstEndingAfter(value, hint));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void overlapTest() {
+    Random random = new Random(3);
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 20; ++run) {
+        List<Feature> features = createFeatures(random, n, 1 + random.nextInt(2 * n + 2));
+
+        FeatureCoordinates coordinates = new FeatureCoordinates(features);
+
+        int hint = 0;
+
+        // Sorted starts so that each result is a valid hint for the next
+        for (int start = -2; start < 3 * n + 20; start += random.nextInt(3)) {
+          int end = start + random.nextInt(10);
+
+          List<Feature> expected = overlap(features, start, end);
+
+          List<Feature> single = new ArrayList<Feature>();
+          coordinates.getFeatures(features, start, end, single);
+
+          List<Feature> batch = new ArrayList<Feature>();
+          hint = coordinates.getFeatures(features, start, end, hint, batch);
+
+          assertEquals(expected, single);
+          assertEquals(expected, batch);
+
+          if (random.nextInt(5) == 0) {
+            ++start;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Create features sorted by start, with starts in [1, range] and lengths
+   * that are mostly short so that some features overlap and some do not.
+   */
+  private static List<Feature> createFeatures(Random random, int n, int range) {
+    List<Feature> features = new ArrayList<Feature>(n);
+
+    for (int i = 0; i < n; ++i) {
+      int start = 1 + random.nextInt(range);
+      int length = random.nextInt(4) == 0 ? random.nextInt(2 * n + 10) : random.nextInt(3);
+
+      features.add(new Feature("f" + i, CHR, start, start + length));
+    }
+
+    Collections.sort(features, new Comparator<Feature>() {
+      @Override
+      public int compare(Feature f1, Feature f2) {
+        return Integer.compare(f1.getStart(), f2.getStart());
+      }
+    });
+
+    return features;
+  }
+
+  private static int upperBound(List<Feature> features, int value) {
+    int i = 0;
+
+    while (i < features.size() && features.get(i).getStart() <= value) {
+      ++i;
+    }
+
+    return i;
+  }
+
+  private static int firstEndingAfter(List<Feature> features, int value) {
+    int max = Integer.MIN_VALUE;
+
+    for (int i = 0; i < features.size(); ++i) {
+      max = Math.max(max, features.get(i).getEnd());
+
+      if (max >= value) {
+        return i;
+      }
+    }
+
+    return features.size();
+  }
+
+  private static List<Feature> overlap(List<Feature> features, int start, int end) {
+    List<Feature> ret = new ArrayList<Feature>();
+
+    for (Feature feature : features) {
+      if (feature.getStart() <= end && feature.getEnd() >= start) {
+        ret.add(feature);
+      }
+    }
+
+    return ret;
+  }
+}
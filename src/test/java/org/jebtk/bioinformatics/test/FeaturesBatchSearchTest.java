@@ -0,0 +1,202 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.search.Feature;
+import org.jebtk.bioinformatics.search.FeaturesBinarySearch;
+import org.jebtk.bioinformatics.search.FeaturesSkipSearch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the batch searches of FeaturesBinarySearch and
+ * FeaturesSkipSearch return the same features as searching each region on
+ * its own.
+ */
+public class FeaturesBatchSearchTest {
+  /** Features are on chr1 to chr3, chr4 has none. */
+  private static final int CHRS = 4;
+
+  private static final Comparator<GenomicRegion> ORDER = new Comparator<GenomicRegion>() {
+    @Override
+    public int compare(GenomicRegion r1, GenomicRegion r2) {
+      int c = r1.getChr().compareTo(r2.getChr());
+
+      return c != 0 ? c : Integer.compare(r1.getStart(), r2.getStart());
+    }
+  };
+
+  private Path mDir;
+
+  @Before
+  public void start() throws IOException {
+    mDir = Files.createTempDirectory("batch");
+  }
+
+  @After
+  public void stop() throws IOException {
+    DirectoryStream<Path> files = Files.newDirectoryStream(mDir);
+
+    try {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    } finally {
+      files.close();
+    }
+
+    Files.delete(mDir);
+  }
+
+  @Test
+  public void binarySearchTest() throws IOException {
+    // Binary search needs features that do not overlap, though they may touch
+    FeaturesBinarySearch search = new FeaturesBinarySearch("binary", "binary", write(false));
+
+    Random random = new Random(1);
+
+    for (int run = 0; run < 20; ++run) {
+      List<GenomicRegion> regions = createRegions(random, 200);
+
+      assertBatch(search, regions);
+
+      Collections.sort(regions, ORDER);
+
+      assertBatch(search, regions);
+    }
+  }
+
+  @Test
+  public void skipSearchTest() throws IOException {
+    FeaturesSkipSearch search = new FeaturesSkipSearch("skip", "skip", write(true));
+
+    Random random = new Random(2);
+
+    for (int run = 0; run < 20; ++run) {
+      List<GenomicRegion> regions = createRegions(random, 200);
+
+      assertBatch(search, regions);
+
+      Collections.sort(regions, ORDER);
+
+      assertBatch(search, regions);
+    }
+  }
+
+  @Test
+  public void singleChrTest() throws IOException {
+    FeaturesBinarySearch binary = new FeaturesBinarySearch("binary", "binary", write(false));
+    FeaturesSkipSearch skip = new FeaturesSkipSearch("skip", "skip", write(true));
+
+    Chromosome chr = Chromosome.newChr("chr1");
+
+    List<GenomicRegion> regions = new ArrayList<GenomicRegion>();
+
+    // Before the first feature, repeated, going backwards and past the end
+    regions.add(new GenomicRegion(chr, -10, 0));
+    regions.add(new GenomicRegion(chr, 1, 1));
+    regions.add(new GenomicRegion(chr, 1, 1));
+    regions.add(new GenomicRegion(chr, 500, 2000));
+    regions.add(new GenomicRegion(chr, 100, 150));
+    regions.add(new GenomicRegion(chr, 100000, 200000));
+
+    assertBatch(binary, regions);
+    assertBatch(skip, regions);
+
+    assertBatch(binary, new ArrayList<GenomicRegion>());
+    assertBatch(skip, new ArrayList<GenomicRegion>());
+  }
+
+  /**
+   * Write features on chr1 to chr3 in start order. Without overlaps each
+   * feature starts at or after the base following the previous end, so some
+   * features touch.
+   */
+  private Path write(boolean overlap) throws IOException {
+    Path file = mDir.resolve((overlap ? "overlap" : "separate") + ".txt");
+
+    Random random = new Random(overlap ? 3 : 4);
+
+    BufferedWriter writer = Files.newBufferedWriter(file);
+
+    try {
+      writer.write("name\tchr\tstart\tend");
+      writer.newLine();
+
+      for (int c = 1; c < CHRS; ++c) {
+        int start = 1;
+
+        for (int i = 0; i < 300; ++i) {
+          int length = random.nextInt(random.nextInt(10) == 0 ? 1000 : 50);
+
+          writer.write("f" + c + "_" + i + "\tchr" + c + "\t" + start + "\t" + (start + length));
+          writer.newLine();
+
+          start = overlap ? start + random.nextInt(40) : start + length + 1 + random.nextInt(3) * random.nextInt(50);
+        }
+      }
+    } finally {
+      writer.close();
+    }
+
+    return file;
+  }
+
+  /**
+   * Regions on all of the chromosomes in no particular order.
+   */
+  private static List<GenomicRegion> createRegions(Random random, int n) {
+    List<GenomicRegion> ret = new ArrayList<GenomicRegion>(n);
+
+    for (int i = 0; i < n; ++i) {
+      int start = random.nextInt(12000) - 100;
+      int end = start + random.nextInt(random.nextInt(10) == 0 ? 5000 : 100);
+
+      ret.add(new GenomicRegion(Chromosome.newChr("chr" + (1 + random.nextInt(CHRS))), start, end));
+    }
+
+    return ret;
+  }
+
+  private static void assertBatch(FeaturesBinarySearch search, List<GenomicRegion> regions) {
+    List<List<Feature>> batch = search.getFeatures(regions);
+
+    assertEquals(regions.size(), batch.size());
+
+    for (int i = 0; i < regions.size(); ++i) {
+      GenomicRegion region = regions.get(i);
+
+      assertEquals(search.getFeatures(region.getChr(), region.getStart(), region.getEnd()).toString(),
+          batch.get(i).toString());
+    }
+  }
+}
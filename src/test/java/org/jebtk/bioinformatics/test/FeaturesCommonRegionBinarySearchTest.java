@@ -0,0 +1,196 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.search.FeaturesCommonRegionBinarySearch;
+import org.jebtk.bioinformatics.search.FeaturesCommonRegionBinarySearchWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes bin files and a bin index with FeaturesCommonRegionBinarySearchWriter
+ * and checks that searches loaded from the index give the same results as
+ * searches loaded from the text files.
+ */
+public class FeaturesCommonRegionBinarySearchTest {
+  private static final int CHRS = 4;
+
+  private Path mDir;
+
+  private String mPrefix;
+
+  @Before
+  public void start() throws IOException {
+    mDir = Files.createTempDirectory("bins");
+
+    Path file = mDir.resolve("genes.txt");
+
+    Random random = new Random(1);
+
+    BufferedWriter writer = Files.newBufferedWriter(file);
+
+    try {
+      writer.write("name\tchr\tstart\tend");
+      writer.newLine();
+
+      for (int i = 0; i < 1000; ++i) {
+        int start = 1 + random.nextInt(50000);
+        int end = start + random.nextInt(random.nextInt(10) == 0 ? 10000 : 500);
+
+        writer.write("g" + i + "\tchr" + (1 + random.nextInt(CHRS)) + "\t" + start + "\t" + end);
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+
+    new FeaturesCommonRegionBinarySearchWriter("genes", file).write();
+
+    mPrefix = mDir.resolve("genes").toString();
+  }
+
+  @After
+  public void stop() throws IOException {
+    List<Path> files = new ArrayList<Path>();
+
+    Stream<Path> walk = Files.walk(mDir);
+
+    try {
+      walk.forEach(files::add);
+    } finally {
+      walk.close();
+    }
+
+    Collections.reverse(files);
+
+    for (Path file : files) {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void roundTripTest() throws IOException {
+    FeaturesCommonRegionBinarySearch index = new FeaturesCommonRegionBinarySearch("index", "index", mPrefix);
+    index.cacheFeatures();
+
+    assertSameSearch(text(), index);
+  }
+
+  @Test
+  public void corruptChrCountTest() throws IOException {
+    // The chromosome count follows the check and version
+    corrupt(5, Integer.MAX_VALUE);
+
+    FeaturesCommonRegionBinarySearch index = new FeaturesCommonRegionBinarySearch("index", "index", mPrefix);
+    index.cacheFeatures();
+
+    assertSameSearch(text(), index);
+  }
+
+  @Test
+  public void corruptNameLengthTest() throws IOException {
+    corrupt(9, -1);
+
+    FeaturesCommonRegionBinarySearch index = new FeaturesCommonRegionBinarySearch("index", "index", mPrefix);
+    index.cacheFeatures();
+
+    assertSameSearch(text(), index);
+  }
+
+  /**
+   * Load the search from the text files only by moving the index aside.
+   */
+  private FeaturesCommonRegionBinarySearch text() throws IOException {
+    Path index = mDir.resolve("genes" + FeaturesCommonRegionBinarySearch.BIN_INDEX_FILE_ENDING);
+    Path aside = mDir.resolve("aside");
+
+    Files.move(index, aside);
+
+    try {
+      FeaturesCommonRegionBinarySearch text = new FeaturesCommonRegionBinarySearch("text", "text", mPrefix);
+      text.cacheFeatures();
+
+      return text;
+    } finally {
+      Files.move(aside, index);
+    }
+  }
+
+  /**
+   * Overwrite an int in the index.
+   */
+  private void corrupt(int position, int value) throws IOException {
+    Path index = mDir.resolve("genes" + FeaturesCommonRegionBinarySearch.BIN_INDEX_FILE_ENDING);
+
+    FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE);
+
+    try {
+      ByteBuffer buf = ByteBuffer.allocate(4);
+      buf.putInt(value);
+      buf.flip();
+
+      channel.write(buf, position);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static void assertSameSearch(FeaturesCommonRegionBinarySearch expected,
+      FeaturesCommonRegionBinarySearch search) {
+    assertEquals(expected.size(), search.size());
+
+    Random random = new Random(2);
+
+    // One chromosome past the end has no features
+    for (int c = 1; c <= CHRS + 1; ++c) {
+      Chromosome chr = Chromosome.newChr("chr" + c);
+
+      assertEquals(expected.getFeatures(chr).toString(), search.getFeatures(chr).toString());
+
+      for (int i = 0; i < 500; ++i) {
+        int start = random.nextInt(65000);
+        int end = start + random.nextInt(5000);
+
+        assertEquals(expected.getFeatures(chr, start, end).toString(),
+            search.getFeatures(chr, start, end).toString());
+
+        assertEquals(expected.getFeatures(chr, start).toString(),
+            search.getFeatures(chr, start).toString());
+      }
+    }
+
+    for (int i = 0; i < 1000; i += 7) {
+      assertEquals(expected.getFeature("g" + i).toString(), search.getFeature("g" + i).toString());
+    }
+  }
+}
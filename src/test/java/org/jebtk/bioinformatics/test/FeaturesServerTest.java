@@ -0,0 +1,197 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.jebtk.bioinformatics.GeneSynonymsService;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.search.AbstractFeaturesSearch;
+import org.jebtk.bioinformatics.search.FeatureNameIndex;
+import org.jebtk.bioinformatics.search.FeaturesServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs tracks from small feature files through the shared FeaturesServer.
+ */
+public class FeaturesServerTest {
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  private Path mDir;
+
+  @Before
+  public void start() throws IOException {
+    mDir = Files.createTempDirectory("tracks");
+
+    // Start with nothing loaded since the server is shared between tests
+    FeaturesServer.getInstance().freeMemory();
+  }
+
+  @After
+  public void stop() throws IOException {
+    FeaturesServer.getInstance().setCacheLimit(Long.MAX_VALUE);
+
+    List<Path> files = new ArrayList<Path>();
+
+    Stream<Path> walk = Files.walk(mDir);
+
+    try {
+      walk.forEach(files::add);
+    } finally {
+      walk.close();
+    }
+
+    Collections.reverse(files);
+
+    for (Path file : files) {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * Add a track of n features, each 100 bp long and named after the track.
+   */
+  private void addTrack(String group, String name, int n) throws IOException {
+    Path file = mDir.resolve(group + "_" + name + ".txt");
+
+    BufferedWriter writer = Files.newBufferedWriter(file);
+
+    try {
+      writer.write("name\tchr\tstart\tend");
+      writer.newLine();
+
+      for (int i = 0; i < n; ++i) {
+        int start = 1 + 200 * i;
+
+        writer.write(name + i + "\tchr1\t" + start + "\t" + (start + 99));
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+
+    FeaturesServer.getInstance().addBasicSearch(Genome.HG19, group, name, name, file);
+  }
+
+  @Test
+  public void evictIdleTest() throws IOException {
+    FeaturesServer server = FeaturesServer.getInstance();
+
+    addTrack("evict", "busy", 10);
+    addTrack("evict", "idle", 10);
+    addTrack("evict", "other", 10);
+
+    // Room for two of the three tracks
+    server.setCacheLimit(25);
+
+    AbstractFeaturesSearch busy = server.get(Genome.HG19, "evict", "busy");
+    AbstractFeaturesSearch idle = server.get(Genome.HG19, "evict", "idle");
+
+    // Busy was requested from the server first, but is queried directly
+    // after idle was requested
+    assertEquals(10, busy.getFeatures(CHR, 1, 2000).size());
+
+    AbstractFeaturesSearch other = server.get(Genome.HG19, "evict", "other");
+
+    assertTrue(other.isCached());
+    assertTrue(busy.isCached());
+    assertTrue(!idle.isCached());
+
+    assertEquals(0, server.getStats(busy).getEvictions());
+    assertEquals(1, server.getStats(idle).getEvictions());
+
+    // An evicted track reloads itself when it is queried
+    assertEquals(10, idle.getFeatures(CHR, 1, 2000).size());
+  }
+
+  @Test
+  public void findTest() throws IOException {
+    FeaturesServer server = FeaturesServer.getInstance();
+
+    addTrack("find", "alpha", 20);
+    addTrack("find", "beta", 5);
+
+    server.get(Genome.HG19, "find", "alpha");
+    server.get(Genome.HG19, "find", "beta");
+
+    List<FeatureNameIndex.Hit> hits = server.find("ALPHA3");
+
+    assertEquals(1, hits.size());
+    assertEquals("alpha3", hits.get(0).getName());
+    assertEquals("alpha", hits.get(0).getSearch().getName());
+    assertEquals(601, hits.get(0).getFeature().getStart());
+
+    assertEquals(0, server.find("alpha").size());
+
+    // alpha1 and alpha10 to alpha19
+    assertEquals(11, server.findPrefix("Alpha1").size());
+    assertEquals(5, server.findPrefix("beta").size());
+    assertEquals(0, server.findPrefix("gamma").size());
+  }
+
+  @Test
+  public void findSynonymsTest() throws IOException {
+    FeaturesServer server = FeaturesServer.getInstance();
+
+    GeneSynonymsService.getInstance().add("Delta1", "epsilon2");
+    GeneSynonymsService.getInstance().add("Delta1", "EPSILON2");
+
+    addTrack("synonyms", "delta", 3);
+    addTrack("synonyms", "epsilon", 3);
+
+    server.get(Genome.HG19, "synonyms", "delta");
+    server.get(Genome.HG19, "synonyms", "epsilon");
+
+    List<FeatureNameIndex.Hit> hits = server.findSynonyms("DELTA1");
+
+    // Synonyms that differ only in case find epsilon2 once
+    assertEquals(2, hits.size());
+    assertEquals("delta1", hits.get(0).getName());
+    assertEquals("epsilon2", hits.get(1).getName());
+
+    assertEquals(1, server.findSynonyms("epsilon2").size());
+  }
+
+  @Test
+  public void findWithoutLoadTest() throws Exception {
+    FeaturesServer server = FeaturesServer.getInstance();
+
+    addTrack("unloaded", "zeta", 4);
+
+    // The lookup does not wait for the track to load
+    assertEquals(0, server.find("zeta2").size());
+
+    // The track loads in the background and is indexed when it has
+    for (int i = 0; i < 500 && server.find("zeta2").isEmpty(); ++i) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(1, server.find("zeta2").size());
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jebtk.bioinformatics.gapsearch.GapSearchOperators;
+import org.jebtk.bioinformatics.gapsearch.IntervalIndex;
+import org.jebtk.bioinformatics.gapsearch.RegionRuns;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.junit.Test;
+
+/**
+ * Checks merge, complement, depth and windows on small sets of features
+ * whose results are worked out by hand.
+ */
+public class GapSearchOperatorsTest {
+  private static final Chromosome CHR1 = Chromosome.newChr("chr1");
+  private static final Chromosome CHR2 = Chromosome.newChr("chr2");
+
+  @Test
+  public void mergeTest() {
+    // 1-10 and 5-20 overlap, 21-30 touches 5-20 and 32-40 is one base from
+    // 21-30. 50-100 contains 60-70 and 101 touches 50-100.
+    IntervalIndex index = index(CHR1, 1, 10, 5, 20, 21, 30, 32, 40, 50, 100, 60, 70, 101, 101);
+
+    assertEquals("1-30:3 32-40:1 50-101:3", runs(GapSearchOperators.merge(index, 0)));
+    assertEquals("1-40:4 50-101:3", runs(GapSearchOperators.merge(index, 1)));
+    assertEquals("1-101:7", runs(GapSearchOperators.merge(index, 9)));
+
+    assertEquals("", runs(GapSearchOperators.merge(index(CHR1), 0)));
+  }
+
+  @Test
+  public void mergeChrsTest() {
+    Map<Chromosome, List<GenomicRegion>> regions = new TreeMap<Chromosome, List<GenomicRegion>>();
+
+    regions.put(CHR1, regions(CHR1, 1, 10, 11, 20));
+    // Features on different chromosomes are never merged
+    regions.put(CHR2, regions(CHR2, 15, 30));
+
+    Map<Chromosome, RegionRuns> merged = GapSearchOperators.create(regions.entrySet()).merge(0);
+
+    assertEquals(2, merged.size());
+    assertEquals(CHR1, merged.get(CHR1).getChr());
+    assertEquals("1-20:2", runs(merged.get(CHR1)));
+    assertEquals("15-30:1", runs(merged.get(CHR2)));
+  }
+
+  @Test
+  public void complementTest() {
+    // Touching and overlapping features leave no gap between them and the
+    // last feature ends on the last base of the chromosome
+    IntervalIndex index = index(CHR1, 1, 10, 11, 20, 15, 30, 41, 50, 100, 100);
+
+    assertEquals("31-40:0 51-99:0", runs(GapSearchOperators.complement(CHR1, index, 100)));
+
+    // Gaps at both ends of the chromosome
+    index = index(CHR1, 5, 10);
+
+    assertEquals("1-4:0 11-20:0", runs(GapSearchOperators.complement(CHR1, index, 20)));
+
+    // Features running past the end of the chromosome are clipped
+    index = index(CHR1, 5, 10, 15, 30);
+
+    assertEquals("1-4:0 11-14:0", runs(GapSearchOperators.complement(CHR1, index, 20)));
+
+    index = index(CHR1, 5, 10, 30, 40);
+
+    assertEquals("1-4:0 11-20:0", runs(GapSearchOperators.complement(CHR1, index, 20)));
+
+    // Without a size there is no gap after the last feature
+    index = index(CHR1, 5, 10, 20, 30);
+
+    assertEquals("1-4:0 11-19:0", runs(GapSearchOperators.complement(CHR1, index, 0)));
+
+    // A chromosome without features is one gap
+    assertEquals("1-10:0", runs(GapSearchOperators.complement(CHR1, null, 10)));
+    assertEquals("", runs(GapSearchOperators.complement(CHR1, null, 0)));
+  }
+
+  @Test
+  public void depthTest() {
+    // 11-15 starts the base after 1-10 ends so the depth does not change.
+    // 30-40 and 41-50 touch and 60 is covered twice.
+    IntervalIndex index = index(CHR1, 1, 10, 5, 20, 11, 15, 30, 40, 41, 50, 60, 60, 60, 60);
+
+    assertEquals("1-4:1 5-15:2 16-20:1 30-50:1 60-60:2", runs(GapSearchOperators.depth(index)));
+
+    // A feature inside another
+    index = index(CHR1, 1, 100, 40, 60);
+
+    assertEquals("1-39:1 40-60:2 61-100:1", runs(GapSearchOperators.depth(index)));
+
+    assertEquals("", runs(GapSearchOperators.depth(index(CHR1))));
+  }
+
+  @Test
+  public void windowsTest() {
+    // Windows 1-10, 11-20 and a short last window 21-25. 10-11 spans the
+    // first two windows and 5-30 runs past the end of the chromosome.
+    IntervalIndex index = index(CHR1, 1, 10, 5, 30, 10, 11, 21, 21);
+
+    assertEquals("1-10:3 11-20:2 21-25:2", runs(GapSearchOperators.windows(CHR1, index, 25, 10)));
+
+    // Without a size the windows stop at the end of the last feature
+    index = index(CHR1, 1, 10, 15, 15);
+
+    assertEquals("1-10:1 11-15:1", runs(GapSearchOperators.windows(CHR1, index, 0, 10)));
+
+    assertEquals("1-10:0 11-20:0 21-25:0", runs(GapSearchOperators.windows(CHR1, null, 25, 10)));
+  }
+
+  /**
+   * Create an index from pairs of starts and ends, which must be in start
+   * order.
+   */
+  private static IntervalIndex index(Chromosome chr, int... coordinates) {
+    IntervalIndex.Builder builder = new IntervalIndex.Builder(chr);
+
+    for (int i = 0; i < coordinates.length; i += 2) {
+      builder.add(coordinates[i], coordinates[i + 1], Strand.SENSE, null);
+    }
+
+    return builder.build();
+  }
+
+  private static List<GenomicRegion> regions(Chromosome chr, int... coordinates) {
+    List<GenomicRegion> ret = new ArrayList<GenomicRegion>();
+
+    for (int i = 0; i < coordinates.length; i += 2) {
+      ret.add(new GenomicRegion(chr, coordinates[i], coordinates[i + 1]));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Each run as start-end:value.
+   */
+  private static String runs(RegionRuns runs) {
+    StringBuilder buffer = new StringBuilder();
+
+    for (int i = 0; i < runs.size(); ++i) {
+      if (i > 0) {
+        buffer.append(" ");
+      }
+
+      buffer.append(runs.getStart(i)).append("-").append(runs.getEnd(i)).append(":").append(runs.getValue(i));
+    }
+
+    return buffer.toString();
+  }
+}
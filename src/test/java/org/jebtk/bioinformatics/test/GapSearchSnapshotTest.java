@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.gapsearch.GapSearchCodec;
+import org.jebtk.bioinformatics.gapsearch.GapSearchSnapshot;
+import org.jebtk.bioinformatics.gapsearch.IntervalGapSearch;
+import org.jebtk.bioinformatics.gapsearch.IntervalIndex;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes gap searches to snapshot files and checks that the mapped searches
+ * read back from them hold the same features and answer queries in the same
+ * way.
+ */
+public class GapSearchSnapshotTest {
+  private static final Chromosome[] CHRS = { Chromosome.newChr("chr1"), Chromosome.newChr("chr2"),
+      Chromosome.newChr("chr3") };
+
+  private Path mFile;
+
+  @Before
+  public void start() throws IOException {
+    mFile = Files.createTempFile("snapshot", ".gss");
+  }
+
+  @After
+  public void stop() throws IOException {
+    Files.delete(mFile);
+  }
+
+  @Test
+  public void roundTripTest() throws IOException {
+    Random random = new Random(1);
+
+    IntervalGapSearch<String> search = new IntervalGapSearch<String>();
+
+    add(random, search, 0, 2000);
+
+    GapSearchSnapshot.write(search, GapSearchCodec.STRING, mFile);
+
+    IntervalGapSearch<String> mapped = GapSearchSnapshot.read(mFile, GapSearchCodec.STRING);
+
+    assertEquals(search.size(), mapped.size());
+
+    for (Chromosome chr : CHRS) {
+      IntervalIndex index = search.getIndex(chr);
+      IntervalIndex mappedIndex = mapped.getIndex(chr);
+
+      assertEquals(index.size(), mappedIndex.size());
+
+      for (int i = 0; i < index.size(); ++i) {
+        assertEquals(index.getStart(i), mappedIndex.getStart(i));
+        assertEquals(index.getEnd(i), mappedIndex.getEnd(i));
+        assertEquals(index.getStrand(i), mappedIndex.getStrand(i));
+        assertEquals(index.getValue(i), mappedIndex.getValue(i));
+      }
+    }
+
+    assertSameQueries(random, search, mapped);
+  }
+
+  @Test
+  public void addTest() throws IOException {
+    Random random = new Random(2);
+
+    IntervalGapSearch<String> search = new IntervalGapSearch<String>();
+
+    add(random, search, 0, 500);
+
+    GapSearchSnapshot.write(search, GapSearchCodec.STRING, mFile);
+
+    IntervalGapSearch<String> mapped = GapSearchSnapshot.read(mFile, GapSearchCodec.STRING);
+
+    // Adding to a mapped search copies its features out of the mapping
+    add(new Random(3), search, 500, 200);
+    add(new Random(3), mapped, 500, 200);
+
+    assertEquals(search.size(), mapped.size());
+
+    assertSameQueries(random, search, mapped);
+  }
+
+  @Test(expected = IOException.class)
+  public void notSnapshotTest() throws IOException {
+    Files.write(mFile, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+
+    GapSearchSnapshot.read(mFile, GapSearchCodec.STRING);
+  }
+
+  /**
+   * Add n features named after their number, mostly short so that some
+   * overlap and some are separated by gaps.
+   */
+  private static void add(Random random, IntervalGapSearch<String> search, int first, int n) {
+    for (int i = first; i < first + n; ++i) {
+      int start = 1 + random.nextInt(50000);
+      int end = start + random.nextInt(random.nextInt(10) == 0 ? 5000 : 200);
+
+      search.add(new GenomicRegion(CHRS[random.nextInt(CHRS.length)], start, end,
+          random.nextBoolean() ? Strand.SENSE : Strand.ANTISENSE), "f" + i);
+    }
+  }
+
+  private static void assertSameQueries(Random random, IntervalGapSearch<String> expected,
+      IntervalGapSearch<String> search) {
+    for (int q = 0; q < 1000; ++q) {
+      int start = random.nextInt(60000);
+      int end = start + random.nextInt(1000);
+
+      GenomicRegion region = new GenomicRegion(CHRS[random.nextInt(CHRS.length)], start, end);
+
+      int minBp = 1 + random.nextInt(50);
+
+      assertEquals(expected.find(region, minBp), search.find(region, minBp));
+      assertEquals(expected.countOverlappingFeatures(region, minBp), search.countOverlappingFeatures(region, minBp));
+      assertEquals(expected.getNearestFeatures(region, 3), search.getNearestFeatures(region, 3));
+    }
+  }
+}
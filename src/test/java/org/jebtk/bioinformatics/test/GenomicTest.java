@@ -15,11 +15,14 @@
  */
 package org.jebtk.bioinformatics.test;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.IOException;
 import java.text.ParseException;
 
 import org.jebtk.bioinformatics.genomic.Genome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
 import org.junit.Test;
 
 public class GenomicTest {
@@ -32,4 +35,40 @@ public class GenomicTest {
   public void genomicParseSingleTest() throws IOException, ParseException {
     System.err.println(GenomicRegion.parse(Genome.HG19, "chrY:100"));
   }
+
+  @Test
+  public void genomicParseCommaTest() throws IOException, ParseException {
+    assertRegion("chr1", 1000, 2000, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1:1,000-2,000"));
+    assertRegion("chr2", 1234567, 1234567, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr2:1,234,567"));
+  }
+
+  @Test
+  public void genomicParseStrandTest() throws IOException, ParseException {
+    assertRegion("chr1", 1000, 2000, Strand.ANTISENSE, GenomicRegion.parse(Genome.HG19, "chr1:1,000-2,000:-"));
+    assertRegion("chr1", 1000, 2000, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1:1000-2000:+"));
+    assertRegion("chrX", 5, 10, Strand.ANTISENSE, GenomicRegion.parse(Genome.HG19, "chrX:5-10 -"));
+  }
+
+  @Test
+  public void genomicParseZeroBasedTest() throws IOException, ParseException {
+    assertRegion("chr1", 1000, 2000, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1:999-2000", true));
+    assertRegion("chr1", 1000, 2000, Strand.ANTISENSE, GenomicRegion.parse(Genome.HG19, "chr1:999-2000:-", true));
+
+    // Not handled by the fast parser
+    assertRegion("chr1", 1000, 2000, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1 999 2000", true));
+  }
+
+  @Test
+  public void genomicParseSinglePositionTest() throws IOException, ParseException {
+    assertRegion("chr1", 999, 999, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1:999"));
+    assertRegion("chr1", 1000, 1000, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1:999", true));
+    assertRegion("chr1", 1000, 1000, Strand.SENSE, GenomicRegion.parse(Genome.HG19, "chr1 999", true));
+  }
+
+  private static void assertRegion(String chr, int start, int end, Strand strand, GenomicRegion region) {
+    assertEquals(chr, region.getChr().toString());
+    assertEquals(start, region.getStart());
+    assertEquals(end, region.getEnd());
+    assertEquals(strand, region.getStrand());
+  }
 }
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.gapsearch.Direction;
+import org.jebtk.bioinformatics.gapsearch.IntervalHits;
+import org.jebtk.bioinformatics.gapsearch.IntervalIndex;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.junit.Test;
+
+/**
+ * Checks the queries of IntervalIndex against linear scans on random
+ * features.
+ */
+public class IntervalIndexTest {
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  /** Sizes either side of the powers of two where the tree gains a level. */
+  private static final int[] SIZES = { 0, 1, 2, 3, 7, 8, 9, 15, 16, 17, 31, 33, 100, 1000 };
+
+  @Test
+  public void overlapTest() {
+    Random random = new Random(1);
+
+    IntervalHits hits = new IntervalHits();
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 10; ++run) {
+        IntervalIndex index = createIndex(random, n);
+
+        for (int q = 0; q < 200; ++q) {
+          int start = random.nextInt(12 * n + 100) - 50;
+          int end = start + random.nextInt(50);
+
+          hits.clear();
+
+          assertEquals(overlap(index, start, end, 1).size(), index.overlap(start, end, hits));
+          assertEquals(overlap(index, start, end, 1), toList(hits));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void countAnyFirstTest() {
+    Random random = new Random(2);
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 10; ++run) {
+        IntervalIndex index = createIndex(random, n);
+
+        for (int q = 0; q < 200; ++q) {
+          int start = random.nextInt(12 * n + 100) - 50;
+          int end = start + random.nextInt(50);
+          int minBp = 1 + random.nextInt(20);
+
+          List<Integer> expected = overlap(index, start, end, minBp);
+
+          assertEquals(expected.size(), index.count(start, end, minBp));
+          assertEquals(!expected.isEmpty(), index.any(start, end, minBp));
+          assertEquals(expected.isEmpty() ? -1 : expected.get(0), index.first(start, end, minBp));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void nearestTest() {
+    Random random = new Random(3);
+
+    IntervalHits hits = new IntervalHits();
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 10; ++run) {
+        IntervalIndex index = createIndex(random, n);
+
+        for (int q = 0; q < 200; ++q) {
+          int start = random.nextInt(12 * n + 100) - 50;
+          int end = start + random.nextInt(20);
+          int k = 1 + random.nextInt(5);
+          int maxDistance = random.nextInt(3) == 0 ? -1 : random.nextInt(200);
+          Direction direction = Direction.values()[random.nextInt(Direction.values().length)];
+
+          List<Integer> expected = nearest(index, start, end, k, maxDistance, direction);
+
+          // Hits already in the list are kept
+          hits.clear();
+          hits.add(-1);
+
+          assertEquals(expected.size(), index.nearest(start, end, k, maxDistance, direction, hits));
+
+          List<Integer> actual = toList(hits);
+
+          assertEquals(-1, (int) actual.remove(0));
+          assertEquals(expected, actual);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void closestTest() {
+    Random random = new Random(4);
+
+    IntervalHits hits = new IntervalHits();
+
+    for (int n : SIZES) {
+      for (int run = 0; run < 10; ++run) {
+        IntervalIndex index = createIndex(random, n);
+
+        for (int q = 0; q < 200; ++q) {
+          int p = random.nextInt(12 * n + 100) - 50;
+
+          List<Integer> expected = closest(index, p);
+
+          hits.clear();
+
+          assertEquals(expected.isEmpty() ? -1 : index.distance(expected.get(0), p), index.closest(p, hits));
+          assertEquals(expected, toList(hits));
+        }
+      }
+    }
+  }
+
+  /**
+   * Create an index of n features with random strands, mostly short so that
+   * some overlap, some touch and some are separated by gaps.
+   */
+  private static IntervalIndex createIndex(Random random, int n) {
+    IntervalIndex.Builder builder = new IntervalIndex.Builder(CHR, 1);
+
+    for (int i = 0; i < n; ++i) {
+      int start = 1 + random.nextInt(10 * n + 10);
+      int length = random.nextInt(8) == 0 ? random.nextInt(200) : random.nextInt(10);
+
+      builder.add(start, start + length, random.nextBoolean() ? Strand.SENSE : Strand.ANTISENSE, i);
+    }
+
+    return builder.build();
+  }
+
+  private static List<Integer> toList(IntervalHits hits) {
+    List<Integer> ret = new ArrayList<Integer>(hits.size());
+
+    for (int i = 0; i < hits.size(); ++i) {
+      ret.add(hits.get(i));
+    }
+
+    return ret;
+  }
+
+  /**
+   * The features overlapping a range by at least minBp, in start order.
+   */
+  private static List<Integer> overlap(IntervalIndex index, int start, int end, int minBp) {
+    List<Integer> ret = new ArrayList<Integer>();
+
+    for (int i = 0; i < index.size(); ++i) {
+      int bp = Math.min(index.getEnd(i), end) - Math.max(index.getStart(i), start) + 1;
+
+      if (bp >= minBp) {
+        ret.add(i);
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * The features tied for the smallest distance to a position, in start
+   * order.
+   */
+  private static List<Integer> closest(IntervalIndex index, int p) {
+    List<Integer> ret = new ArrayList<Integer>();
+
+    int minD = Integer.MAX_VALUE;
+
+    for (int i = 0; i < index.size(); ++i) {
+      int d = index.distance(i, p);
+
+      if (d < minD) {
+        ret.clear();
+        minD = d;
+      }
+
+      if (d == minD) {
+        ret.add(i);
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * The k features nearest a range, ordered by distance and then start.
+   */
+  private static List<Integer> nearest(final IntervalIndex index, final int start, final int end, int k,
+      int maxDistance, Direction direction) {
+    List<Integer> ret = new ArrayList<Integer>();
+
+    for (int i = 0; i < index.size(); ++i) {
+      if (maxDistance >= 0 && distance(index, i, start, end) > maxDistance) {
+        continue;
+      }
+
+      if (isDirection(index, i, start, end, direction)) {
+        ret.add(i);
+      }
+    }
+
+    Collections.sort(ret, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        int c = Integer.compare(distance(index, i1, start, end), distance(index, i2, start, end));
+
+        return c != 0 ? c : Integer.compare(i1, i2);
+      }
+    });
+
+    return ret.subList(0, Math.min(k, ret.size()));
+  }
+
+  private static int distance(IntervalIndex index, int i, int start, int end) {
+    return Math.max(0, Math.max(index.getStart(i) - end, start - index.getEnd(i)));
+  }
+
+  private static boolean isDirection(IntervalIndex index, int i, int start, int end, Direction direction) {
+    if (direction == Direction.BOTH || distance(index, i, start, end) == 0) {
+      return true;
+    }
+
+    boolean before = end < index.getStart(i);
+
+    boolean upstream = before == (index.getStrand(i) == Strand.SENSE);
+
+    return upstream == (direction == Direction.UPSTREAM);
+  }
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.dna.Chr2Bit;
+import org.jebtk.bioinformatics.dna.KmerCounter;
+import org.jebtk.bioinformatics.dna.KmerCounts;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.junit.Test;
+
+/**
+ * Checks KmerCounter and KmerCounts against counting k-mer strings in a
+ * HashMap.
+ */
+public class KmerCounterTest {
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  private static final String BASES = "ACGT";
+
+  @Test
+  public void encodeTest() {
+    assertEquals(0, KmerCounter.encode("A"));
+    assertEquals(27, KmerCounter.encode("ACGT"));
+    assertEquals(27, KmerCounter.encode("acgt"));
+    assertEquals(-1, KmerCounter.encode("ACNT"));
+
+    // The longest k-mer uses every bit but the sign
+    assertEquals(Long.MAX_VALUE >>> 1, KmerCounter.encode(repeat('T', KmerCounter.MAX_K)));
+
+    Random random = new Random(1);
+
+    for (int i = 0; i < 1000; ++i) {
+      String kmer = randomBases(random, 1 + random.nextInt(KmerCounter.MAX_K));
+
+      assertEquals(kmer, KmerCounter.decode(KmerCounter.encode(kmer), kmer.length()));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxKTest() {
+    new KmerCounter(KmerCounter.MAX_K + 1, false);
+  }
+
+  @Test
+  public void countTest() {
+    Random random = new Random(2);
+
+    for (int run = 0; run < 300; ++run) {
+      char[] seq = randomSequence(random, 1 + random.nextInt(400));
+
+      Chr2Bit chr = pack(seq);
+
+      // Ranges may start and end anywhere, including past the ends
+      int start = random.nextInt(seq.length + 10) - 5;
+      int end = start + random.nextInt(seq.length + 10);
+
+      int k = random.nextInt(4) == 0 ? 1 + random.nextInt(KmerCounter.MAX_K) : 1 + random.nextInt(6);
+      boolean canonical = random.nextBoolean();
+
+      KmerCounts counts = new KmerCounts(k, 4);
+
+      new KmerCounter(k, canonical).count(chr, start, end, counts);
+
+      assertCounts(naive(seq, start, end, k, canonical), counts);
+    }
+  }
+
+  @Test
+  public void countChrTest() {
+    // N runs long enough to cover whole bytes of the N mask, at both ends
+    char[] seq = randomSequence(new Random(3), 200);
+
+    fill(seq, 0, 20);
+    fill(seq, 64, 100);
+    fill(seq, 190, 200);
+
+    Chr2Bit chr = pack(seq);
+
+    for (int k = 1; k <= 8; ++k) {
+      KmerCounts counts = new KmerCounts(k);
+
+      new KmerCounter(k, true).count(chr, counts);
+
+      assertCounts(naive(seq, 0, seq.length - 1, k, true), counts);
+    }
+  }
+
+  @Test
+  public void growTest() {
+    Random random = new Random(4);
+
+    // Start small so the table grows many times
+    KmerCounts counts = new KmerCounts(KmerCounter.MAX_K, 1);
+
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+
+    for (int i = 0; i < 100000; ++i) {
+      // Keys sharing their low bits probe the same slots
+      long kmer = random.nextBoolean() ? random.nextInt(5000) : (long) random.nextInt(1000) << 40;
+      long count = 1 + random.nextInt(3);
+
+      counts.add(kmer, count);
+      add(expected, kmer, count);
+    }
+
+    assertCounts(expected, counts);
+
+    // Merging adds the counts of k-mers in both tables
+    KmerCounts other = new KmerCounts(KmerCounter.MAX_K);
+
+    for (long kmer = 4000; kmer < 6000; ++kmer) {
+      other.increment(kmer);
+      add(expected, kmer, 1);
+    }
+
+    counts.addAll(other);
+
+    assertCounts(expected, counts);
+  }
+
+  @Test
+  public void cappedTest() {
+    KmerCounts counts = new KmerCounts(KmerCounter.MAX_K, 1, 16);
+
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+
+    // Past the load factor the table stops growing and fills up to one empty
+    // slot
+    for (int i = 0; i < 14; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        counts.increment(i * 1000L);
+        add(expected, i * 1000L, 1);
+      }
+    }
+
+    assertCounts(expected, counts);
+
+    // Lookups of missing k-mers still stop at the empty slot
+    assertEquals(0, counts.get(1));
+
+    try {
+      counts.increment(14000);
+
+      fail("Expected the table to be full");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * Count the k-mers of a zero based range by building each as a string.
+   */
+  private static Map<Long, Long> naive(char[] seq, int start, int end, int k, boolean canonical) {
+    Map<Long, Long> ret = new HashMap<Long, Long>();
+
+    start = Math.max(0, start);
+    end = Math.min(end, seq.length - 1);
+
+    for (int i = start; i + k - 1 <= end; ++i) {
+      String kmer = new String(seq, i, k);
+
+      if (kmer.indexOf('N') != -1) {
+        continue;
+      }
+
+      long code = KmerCounter.encode(kmer);
+
+      if (canonical) {
+        code = Math.min(code, KmerCounter.encode(reverseComplement(kmer)));
+      }
+
+      add(ret, code, 1);
+    }
+
+    return ret;
+  }
+
+  private static void add(Map<Long, Long> counts, long kmer, long count) {
+    Long c = counts.get(kmer);
+
+    counts.put(kmer, c != null ? c + count : count);
+  }
+
+  private static void assertCounts(final Map<Long, Long> expected, KmerCounts counts) {
+    assertEquals(expected.size(), counts.size());
+
+    for (Map.Entry<Long, Long> e : expected.entrySet()) {
+      assertEquals((long) e.getValue(), counts.get(e.getKey()));
+    }
+
+    final Map<Long, Long> visited = new HashMap<Long, Long>();
+
+    counts.visit((kmer, count) -> visited.put(kmer, count));
+
+    assertEquals(expected, visited);
+  }
+
+  private static String reverseComplement(String kmer) {
+    StringBuilder buffer = new StringBuilder(kmer.length());
+
+    for (int i = kmer.length() - 1; i >= 0; --i) {
+      buffer.append(BASES.charAt(3 - BASES.indexOf(kmer.charAt(i))));
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * Pack bases into 2 bits each, with a 1 bit mask of the Ns.
+   */
+  private static Chr2Bit pack(char[] seq) {
+    byte[] dna = new byte[(seq.length + 3) / 4];
+    byte[] n = new byte[(seq.length + 7) / 8];
+
+    for (int i = 0; i < seq.length; ++i) {
+      if (seq[i] == 'N') {
+        n[i >> 3] |= 1 << (7 - (i & 7));
+      } else {
+        dna[i >> 2] |= BASES.indexOf(seq[i]) << (6 - ((i & 3) << 1));
+      }
+    }
+
+    return new Chr2Bit(CHR, seq.length, dna, n, null);
+  }
+
+  /**
+   * Random bases with occasional runs of N.
+   */
+  private static char[] randomSequence(Random random, int length) {
+    char[] ret = randomBases(random, length).toCharArray();
+
+    for (int i = 0; i < length; ++i) {
+      if (random.nextInt(50) == 0) {
+        int end = Math.min(length, i + 1 + random.nextInt(random.nextBoolean() ? 3 : 30));
+
+        fill(ret, i, end);
+
+        i = end;
+      }
+    }
+
+    return ret;
+  }
+
+  private static String randomBases(Random random, int length) {
+    char[] ret = new char[length];
+
+    for (int i = 0; i < length; ++i) {
+      ret[i] = BASES.charAt(random.nextInt(4));
+    }
+
+    return new String(ret);
+  }
+
+  private static void fill(char[] seq, int start, int end) {
+    for (int i = start; i < end; ++i) {
+      seq[i] = 'N';
+    }
+  }
+
+  private static String repeat(char c, int n) {
+    char[] ret = new char[n];
+
+    for (int i = 0; i < n; ++i) {
+      ret[i] = c;
+    }
+
+    return new String(ret);
+  }
+}
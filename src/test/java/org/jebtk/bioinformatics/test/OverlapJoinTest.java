@@ -0,0 +1,329 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.gapsearch.IntervalGapSearch;
+import org.jebtk.bioinformatics.gapsearch.OverlapJoin;
+import org.jebtk.bioinformatics.gapsearch.OverlapJoin.StrandMode;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.junit.Test;
+
+/**
+ * Checks OverlapJoin against a comparison of every pair of regions.
+ */
+public class OverlapJoinTest {
+  private static final Chromosome[] CHRS = { Chromosome.newChr("chr1"), Chromosome.newChr("chr2"),
+      Chromosome.newChr("chr3") };
+
+  private static final Comparator<GenomicRegion> ORDER = new Comparator<GenomicRegion>() {
+    @Override
+    public int compare(GenomicRegion r1, GenomicRegion r2) {
+      int c = r1.getChr().compareTo(r2.getChr());
+
+      return c != 0 ? c : Integer.compare(r1.getStart(), r2.getStart());
+    }
+  };
+
+  @Test
+  public void randomTest() {
+    Random random = new Random(1);
+
+    for (int run = 0; run < 200; ++run) {
+      // Either side may be empty
+      List<GenomicRegion> a = createRegions(random, random.nextInt(50));
+      List<GenomicRegion> b = createRegions(random, random.nextInt(50));
+
+      int minBp = 1 + random.nextInt(3);
+      double fraction = random.nextBoolean() ? random.nextDouble() : 0;
+      StrandMode strandMode = StrandMode.values()[random.nextInt(StrandMode.values().length)];
+
+      OverlapJoin join = new OverlapJoin().minBp(minBp).fraction(fraction).strand(strandMode);
+
+      List<String> expected = bruteForce(a, b, minBp, fraction, strandMode);
+
+      assertEquals(expected, joinStreams(join, a, b));
+      assertEquals(expected, joinMaps(join, a, b));
+      assertEquals(expected, joinSearch(join, a, b));
+    }
+  }
+
+  @Test
+  public void identicalStartsTest() {
+    Chromosome chr = CHRS[0];
+
+    List<GenomicRegion> a = new ArrayList<GenomicRegion>();
+    a.add(new GenomicRegion(chr, 10, 10));
+    a.add(new GenomicRegion(chr, 10, 30));
+
+    List<GenomicRegion> b = new ArrayList<GenomicRegion>();
+    b.add(new GenomicRegion(chr, 10, 12));
+    b.add(new GenomicRegion(chr, 10, 10));
+    b.add(new GenomicRegion(chr, 10, 40));
+
+    List<String> expected = list("0:0", "0:1", "0:2", "1:0", "1:1", "1:2");
+
+    OverlapJoin join = new OverlapJoin();
+
+    assertEquals(expected, joinStreams(join, a, b));
+    assertEquals(expected, joinMaps(join, a, b));
+    assertEquals(expected, joinSearch(join, a, b));
+  }
+
+  @Test
+  public void touchingTest() {
+    Chromosome chr = CHRS[0];
+
+    List<GenomicRegion> a = new ArrayList<GenomicRegion>();
+    a.add(new GenomicRegion(chr, 10, 20));
+
+    List<GenomicRegion> b = new ArrayList<GenomicRegion>();
+    // Ends next to a, sharing no bases
+    b.add(new GenomicRegion(chr, 1, 9));
+    // Shares one base at each end
+    b.add(new GenomicRegion(chr, 5, 10));
+    b.add(new GenomicRegion(chr, 20, 25));
+    // Starts next to a
+    b.add(new GenomicRegion(chr, 21, 30));
+
+    OverlapJoin join = new OverlapJoin();
+
+    assertEquals(list("0:1", "0:2"), joinStreams(join, a, b));
+    assertEquals(list("0:1", "0:2"), joinMaps(join, a, b));
+    assertEquals(list("0:1", "0:2"), joinSearch(join, a, b));
+
+    // A single shared base is not enough
+    join.minBp(2);
+
+    assertEquals(list(), joinStreams(join, a, b));
+    assertEquals(list(), joinSearch(join, a, b));
+  }
+
+  @Test
+  public void emptyTest() {
+    List<GenomicRegion> empty = new ArrayList<GenomicRegion>();
+    List<GenomicRegion> regions = createRegions(new Random(2), 20);
+
+    OverlapJoin join = new OverlapJoin();
+
+    assertEquals(list(), joinStreams(join, empty, regions));
+    assertEquals(list(), joinStreams(join, regions, empty));
+    assertEquals(list(), joinStreams(join, empty, empty));
+    assertEquals(list(), joinMaps(join, empty, regions));
+    assertEquals(list(), joinMaps(join, regions, empty));
+    assertEquals(list(), joinSearch(join, regions, empty));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsortedFirstTest() {
+    List<GenomicRegion> a = new ArrayList<GenomicRegion>();
+    a.add(new GenomicRegion(CHRS[0], 20, 30));
+    a.add(new GenomicRegion(CHRS[0], 10, 15));
+
+    joinStreams(new OverlapJoin(), a, createRegions(new Random(3), 20));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsortedSecondTest() {
+    List<GenomicRegion> a = new ArrayList<GenomicRegion>();
+    a.add(new GenomicRegion(CHRS[0], 1, 1000));
+
+    List<GenomicRegion> b = new ArrayList<GenomicRegion>();
+    b.add(new GenomicRegion(CHRS[0], 20, 30));
+    b.add(new GenomicRegion(CHRS[0], 10, 15));
+
+    joinStreams(new OverlapJoin(), a, b);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsortedChrTest() {
+    List<GenomicRegion> a = new ArrayList<GenomicRegion>();
+    a.add(new GenomicRegion(CHRS[1], 1, 10));
+    a.add(new GenomicRegion(CHRS[0], 1, 10));
+
+    joinStreams(new OverlapJoin(), a, new ArrayList<GenomicRegion>());
+  }
+
+  @Test
+  public void unsortedMapTest() {
+    // Lists in a map are sorted before they are joined
+    List<GenomicRegion> a = new ArrayList<GenomicRegion>();
+    a.add(new GenomicRegion(CHRS[0], 20, 30));
+    a.add(new GenomicRegion(CHRS[0], 10, 15));
+
+    List<GenomicRegion> b = new ArrayList<GenomicRegion>();
+    b.add(new GenomicRegion(CHRS[0], 25, 26));
+    b.add(new GenomicRegion(CHRS[0], 12, 12));
+
+    assertEquals(list("0:0", "1:1"), joinMaps(new OverlapJoin(), a, b));
+  }
+
+  /**
+   * Create regions sorted by chromosome and start. Starts are drawn from a
+   * narrow range so that there are identical starts and touching regions.
+   */
+  private static List<GenomicRegion> createRegions(Random random, int n) {
+    List<GenomicRegion> ret = new ArrayList<GenomicRegion>(n);
+
+    for (int i = 0; i < n; ++i) {
+      int start = 1 + random.nextInt(100);
+      int end = start + (random.nextInt(5) == 0 ? random.nextInt(50) : random.nextInt(5));
+
+      ret.add(new GenomicRegion(CHRS[random.nextInt(CHRS.length)], start, end,
+          random.nextBoolean() ? Strand.SENSE : Strand.ANTISENSE));
+    }
+
+    Collections.sort(ret, ORDER);
+
+    return ret;
+  }
+
+  private static List<String> list(String... pairs) {
+    List<String> ret = new ArrayList<String>();
+
+    Collections.addAll(ret, pairs);
+
+    return ret;
+  }
+
+  /**
+   * Each pair as the indices of its regions, in the order of a and then b.
+   */
+  private static List<String> pairs(List<GenomicRegion> a, List<GenomicRegion> b, List<GenomicRegion[]> found) {
+    Map<GenomicRegion, Integer> ia = indices(a);
+    Map<GenomicRegion, Integer> ib = indices(b);
+
+    List<int[]> pairs = new ArrayList<int[]>();
+
+    for (GenomicRegion[] pair : found) {
+      pairs.add(new int[] { ia.get(pair[0]), ib.get(pair[1]) });
+    }
+
+    Collections.sort(pairs, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] p1, int[] p2) {
+        int c = Integer.compare(p1[0], p2[0]);
+
+        return c != 0 ? c : Integer.compare(p1[1], p2[1]);
+      }
+    });
+
+    List<String> ret = new ArrayList<String>();
+
+    for (int[] pair : pairs) {
+      ret.add(pair[0] + ":" + pair[1]);
+    }
+
+    return ret;
+  }
+
+  private static Map<GenomicRegion, Integer> indices(List<GenomicRegion> regions) {
+    Map<GenomicRegion, Integer> ret = new IdentityHashMap<GenomicRegion, Integer>();
+
+    for (int i = 0; i < regions.size(); ++i) {
+      ret.put(regions.get(i), i);
+    }
+
+    return ret;
+  }
+
+  private static List<String> bruteForce(List<GenomicRegion> a, List<GenomicRegion> b, int minBp, double fraction,
+      StrandMode strandMode) {
+    List<GenomicRegion[]> found = new ArrayList<GenomicRegion[]>();
+
+    for (GenomicRegion ra : a) {
+      for (GenomicRegion rb : b) {
+        if (!ra.getChr().equals(rb.getChr())) {
+          continue;
+        }
+
+        int bp = Math.min(ra.getEnd(), rb.getEnd()) - Math.max(ra.getStart(), rb.getStart()) + 1;
+
+        if (bp < minBp || bp < fraction * (ra.getEnd() - ra.getStart() + 1)) {
+          continue;
+        }
+
+        if (strandMode == StrandMode.SAME && ra.getStrand() != rb.getStrand()) {
+          continue;
+        }
+
+        if (strandMode == StrandMode.OPPOSITE && ra.getStrand() == rb.getStrand()) {
+          continue;
+        }
+
+        found.add(new GenomicRegion[] { ra, rb });
+      }
+    }
+
+    return pairs(a, b, found);
+  }
+
+  private static List<String> joinStreams(OverlapJoin join, List<GenomicRegion> a, List<GenomicRegion> b) {
+    final List<GenomicRegion[]> found = new ArrayList<GenomicRegion[]>();
+
+    join.join(a.iterator(), b.iterator(), (ra, rb) -> found.add(new GenomicRegion[] { ra, rb }));
+
+    return pairs(a, b, found);
+  }
+
+  private static List<String> joinMaps(OverlapJoin join, List<GenomicRegion> a, List<GenomicRegion> b) {
+    final List<GenomicRegion[]> found = Collections.synchronizedList(new ArrayList<GenomicRegion[]>());
+
+    join.join(byChr(a), byChr(b), (ra, rb) -> found.add(new GenomicRegion[] { ra, rb }));
+
+    return pairs(a, b, found);
+  }
+
+  private static List<String> joinSearch(OverlapJoin join, List<GenomicRegion> a, List<GenomicRegion> b) {
+    IntervalGapSearch<GenomicRegion> search = new IntervalGapSearch<GenomicRegion>();
+
+    for (GenomicRegion rb : b) {
+      search.add(rb, rb);
+    }
+
+    final List<GenomicRegion[]> found = Collections.synchronizedList(new ArrayList<GenomicRegion[]>());
+
+    join.join(byChr(a), search, (ra, rb) -> found.add(new GenomicRegion[] { ra, rb }));
+
+    return pairs(a, b, found);
+  }
+
+  private static Map<Chromosome, List<GenomicRegion>> byChr(List<GenomicRegion> regions) {
+    Map<Chromosome, List<GenomicRegion>> ret = new HashMap<Chromosome, List<GenomicRegion>>();
+
+    for (GenomicRegion region : regions) {
+      if (!ret.containsKey(region.getChr())) {
+        ret.put(region.getChr(), new ArrayList<GenomicRegion>());
+      }
+
+      ret.get(region.getChr()).add(region);
+    }
+
+    return ret;
+  }
+}
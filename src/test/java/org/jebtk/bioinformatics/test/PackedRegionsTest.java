@@ -0,0 +1,213 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.PackedRegions;
+import org.jebtk.bioinformatics.genomic.Strand;
+import org.junit.Test;
+
+/**
+ * Checks that PackedRegions stores regions in the same way as GenomicRegion.
+ */
+public class PackedRegionsTest {
+  private static final Chromosome CHR1 = Chromosome.newChr("chr1");
+  private static final Chromosome CHR2 = Chromosome.newChr("chr2");
+
+  @Test
+  public void addTest() {
+    PackedRegions regions = new PackedRegions();
+
+    assertEquals(0, regions.add(CHR1, 10, 20));
+
+    // Swapped, and then clamped to the first base
+    assertEquals(1, regions.add(CHR1, 20, 10, Strand.ANTISENSE));
+    assertEquals(2, regions.add(CHR2, -5, 0));
+    assertEquals(3, regions.add(CHR2, 7, -3, Strand.ANTISENSE));
+
+    assertEquals(4, regions.size());
+
+    assertRegion(regions, 0, CHR1, 10, 20, Strand.SENSE);
+    assertRegion(regions, 1, CHR1, 10, 20, Strand.ANTISENSE);
+    assertRegion(regions, 2, CHR2, 1, 1, Strand.SENSE);
+    assertRegion(regions, 3, CHR2, 1, 7, Strand.ANTISENSE);
+
+    // The same corrections as a GenomicRegion
+    GenomicRegion region = new GenomicRegion(CHR2, 7, -3, Strand.ANTISENSE);
+
+    assertEquals(region.getStart(), regions.getStart(3));
+    assertEquals(region.getEnd(), regions.getEnd(3));
+  }
+
+  @Test
+  public void strandTest() {
+    PackedRegions regions = new PackedRegions();
+
+    // The strand shares an int with the chromosome index so use enough
+    // chromosomes that the index has several bits
+    for (int i = 0; i < 100; ++i) {
+      Chromosome chr = Chromosome.newChr("chr" + (i % 37));
+
+      regions.add(chr, i + 1, i + 10, i % 3 == 0 ? Strand.ANTISENSE : Strand.SENSE);
+    }
+
+    for (int i = 0; i < 100; ++i) {
+      assertRegion(regions, i, Chromosome.newChr("chr" + (i % 37)), i + 1, i + 10,
+          i % 3 == 0 ? Strand.ANTISENSE : Strand.SENSE);
+    }
+
+    PackedRegions.View view = regions.view(3);
+
+    assertEquals(Strand.ANTISENSE, view.getStrand());
+    assertEquals(13, view.getStrStart());
+    assertEquals(4, view.getStrEnd());
+
+    view.moveTo(4);
+
+    assertEquals(Strand.SENSE, view.getStrand());
+    assertEquals(5, view.getStrStart());
+    assertEquals(14, view.getStrEnd());
+  }
+
+  @Test
+  public void iteratorTest() {
+    PackedRegions regions = PackedRegions.create(createRegions(new Random(1), 50));
+
+    Iterator<PackedRegions.View> iter = regions.iterator();
+
+    PackedRegions.View first = null;
+
+    int i = 0;
+
+    while (iter.hasNext()) {
+      PackedRegions.View view = iter.next();
+
+      // The same view is moved along the regions
+      if (first == null) {
+        first = view;
+      }
+
+      assertSame(first, view);
+      assertEquals(i, view.getIndex());
+      assertEquals(regions.getStart(i), view.getStart());
+      assertEquals(regions.getEnd(i), view.getEnd());
+      assertEquals(regions.getEnd(i) - regions.getStart(i) + 1, view.getLength());
+      assertEquals(regions.getChr(i), view.getChr());
+      assertEquals(regions.getStrand(i), view.getStrand());
+
+      ++i;
+    }
+
+    assertEquals(regions.size(), i);
+
+    try {
+      iter.next();
+
+      fail("Expected the iterator to be at the end");
+    } catch (NoSuchElementException e) {
+      // Expected
+    }
+
+    assertFalse(new PackedRegions().iterator().hasNext());
+  }
+
+  @Test
+  public void trimTest() {
+    PackedRegions regions = new PackedRegions(100);
+
+    regions.add(CHR1, 1, 10);
+    regions.add(CHR2, 5, 6, Strand.ANTISENSE);
+
+    regions.trimToSize();
+
+    // Adding grows the arrays again
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(2 + i, regions.add(CHR1, 100 + i, 200 + i));
+    }
+
+    assertRegion(regions, 0, CHR1, 1, 10, Strand.SENSE);
+    assertRegion(regions, 1, CHR2, 5, 6, Strand.ANTISENSE);
+
+    for (int i = 0; i < 10; ++i) {
+      assertRegion(regions, 2 + i, CHR1, 100 + i, 200 + i, Strand.SENSE);
+    }
+
+    // An empty store can also be trimmed and added to
+    PackedRegions empty = new PackedRegions();
+
+    empty.trimToSize();
+
+    assertEquals(0, empty.add(CHR2, 3, 4));
+    assertRegion(empty, 0, CHR2, 3, 4, Strand.SENSE);
+  }
+
+  @Test
+  public void toRegionsTest() {
+    List<GenomicRegion> expected = createRegions(new Random(2), 1000);
+
+    PackedRegions regions = PackedRegions.create(expected);
+
+    List<GenomicRegion> actual = regions.toRegions();
+
+    assertEquals(expected.size(), actual.size());
+
+    for (int i = 0; i < expected.size(); ++i) {
+      assertSameRegion(expected.get(i), actual.get(i));
+      assertSameRegion(expected.get(i), regions.view(i).toRegion());
+      assertEquals(expected.get(i).getLocation(), regions.view(i).getLocation());
+    }
+  }
+
+  private static List<GenomicRegion> createRegions(Random random, int n) {
+    List<GenomicRegion> ret = new ArrayList<GenomicRegion>(n);
+
+    for (int i = 0; i < n; ++i) {
+      int start = 1 + random.nextInt(100000);
+
+      ret.add(new GenomicRegion(random.nextBoolean() ? CHR1 : CHR2, start, start + random.nextInt(500),
+          random.nextBoolean() ? Strand.SENSE : Strand.ANTISENSE));
+    }
+
+    return ret;
+  }
+
+  private static void assertRegion(PackedRegions regions, int i, Chromosome chr, int start, int end,
+      Strand strand) {
+    assertEquals(chr, regions.getChr(i));
+    assertEquals(start, regions.getStart(i));
+    assertEquals(end, regions.getEnd(i));
+    assertEquals(strand, regions.getStrand(i));
+  }
+
+  private static void assertSameRegion(GenomicRegion expected, GenomicRegion region) {
+    assertEquals(expected.getChr(), region.getChr());
+    assertEquals(expected.getStart(), region.getStart());
+    assertEquals(expected.getEnd(), region.getEnd());
+    assertEquals(expected.getStrand(), region.getStrand());
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2016 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jebtk.bioinformatics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.RepeatMaskType;
+import org.jebtk.bioinformatics.genomic.SequenceReader;
+import org.jebtk.bioinformatics.genomic.SequenceRegion;
+import org.jebtk.bioinformatics.genomic.SequenceService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the asynchronous sequence API of SequenceService against a reader
+ * that records its calls and can be held open.
+ */
+public class SequenceServiceAsyncTest {
+  private static final Chromosome CHR = Chromosome.newChr("chr1");
+
+  /** Fetching this start throws an IOException. */
+  private static final int FAIL_START = 666;
+
+  private static final AtomicInteger GENOMES = new AtomicInteger();
+
+  /**
+   * Reader that returns ACGT for every region, counting calls and the
+   * number of fetches running at once.
+   */
+  private static class TestReader extends SequenceReader {
+    private final Genome mGenome;
+
+    private final AtomicInteger mCalls = new AtomicInteger();
+    private final AtomicInteger mActive = new AtomicInteger();
+    private final AtomicInteger mMaxActive = new AtomicInteger();
+
+    private volatile CountDownLatch mRelease = new CountDownLatch(0);
+
+    /** Counted down as each fetch starts. */
+    private volatile CountDownLatch mStarted = new CountDownLatch(0);
+
+    private TestReader(Genome genome) {
+      mGenome = genome;
+    }
+
+    @Override
+    public String getName() {
+      return "test";
+    }
+
+    @Override
+    public List<Genome> getGenomes() {
+      List<Genome> ret = new ArrayList<Genome>();
+      ret.add(mGenome);
+      return ret;
+    }
+
+    @Override
+    public SequenceRegion getSequence(Genome genome, GenomicRegion region, boolean displayUpper,
+        RepeatMaskType repeatMaskType) throws IOException {
+      mCalls.incrementAndGet();
+
+      int active = mActive.incrementAndGet();
+
+      mMaxActive.accumulateAndGet(active, Math::max);
+
+      mStarted.countDown();
+
+      try {
+        mRelease.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        mActive.decrementAndGet();
+      }
+
+      if (region.getStart() == FAIL_START) {
+        throw new IOException("fail");
+      }
+
+      return new SequenceRegion(region, "ACGT");
+    }
+  }
+
+  private ExecutorService mExecutor;
+
+  private Genome mGenome;
+
+  private TestReader mReader;
+
+  @Before
+  public void start() {
+    mExecutor = Executors.newFixedThreadPool(8);
+
+    // Each test has its own genome since the service is shared
+    mGenome = new Genome("async", "test" + GENOMES.incrementAndGet());
+
+    mReader = new TestReader(mGenome);
+    mReader.setExecutor(mExecutor, 1);
+
+    SequenceService.getInstance().add(mReader);
+    SequenceService.getInstance().cache();
+
+    // Find the reader now so fetches are queued in the order they are made
+    assertTrue(SequenceService.getInstance().get(mGenome) == mReader);
+  }
+
+  @After
+  public void stop() {
+    mExecutor.shutdownNow();
+  }
+
+  private CompletableFuture<SequenceRegion> fetch(int start) {
+    return SequenceService.getInstance().getSequenceAsync(mGenome, new GenomicRegion(CHR, start, start + 3), true,
+        RepeatMaskType.UPPERCASE);
+  }
+
+  @Test
+  public void completeTest() throws Exception {
+    assertEquals("ACGT", fetch(1).get(5, TimeUnit.SECONDS).getSequence().toString());
+
+    List<GenomicRegion> regions = new ArrayList<GenomicRegion>();
+    regions.add(new GenomicRegion(CHR, 1, 4));
+    regions.add(new GenomicRegion(CHR, 11, 14));
+
+    List<SequenceRegion> sequences = SequenceService.getInstance()
+        .getSequencesAsync(mGenome, regions, true, RepeatMaskType.UPPERCASE).get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, sequences.size());
+    assertEquals(11, sequences.get(1).getStart());
+  }
+
+  @Test
+  public void unknownGenomeTest() throws Exception {
+    assertEquals(null, SequenceService.getInstance()
+        .getSequenceAsync(new Genome("async", "none"), new GenomicRegion(CHR, 1, 4), true, RepeatMaskType.UPPERCASE)
+        .get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void exceptionTest() throws Exception {
+    try {
+      fetch(FAIL_START).get(5, TimeUnit.SECONDS);
+
+      fail("Expected the fetch to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void cancelQueuedTest() throws Exception {
+    mReader.mRelease = new CountDownLatch(1);
+    mReader.mStarted = new CountDownLatch(1);
+
+    CompletableFuture<SequenceRegion> first = fetch(1);
+
+    // The first fetch holds the reader's only slot
+    assertTrue(mReader.mStarted.await(5, TimeUnit.SECONDS));
+
+    CompletableFuture<SequenceRegion> queued = fetch(11);
+
+    assertTrue(queued.cancel(false));
+
+    CompletableFuture<SequenceRegion> last = fetch(21);
+
+    mReader.mRelease.countDown();
+
+    first.get(5, TimeUnit.SECONDS);
+
+    // Fetches run in order so the cancelled one has been reached by now
+    last.get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, mReader.mCalls.get());
+  }
+
+  @Test
+  public void concurrencyLimitTest() throws Exception {
+    mReader.setExecutor(mExecutor, 2);
+
+    mReader.mRelease = new CountDownLatch(1);
+    mReader.mStarted = new CountDownLatch(2);
+
+    List<CompletableFuture<SequenceRegion>> futures = new ArrayList<CompletableFuture<SequenceRegion>>();
+
+    for (int i = 0; i < 10; ++i) {
+      futures.add(fetch(1 + 10 * i));
+    }
+
+    assertTrue(mReader.mStarted.await(5, TimeUnit.SECONDS));
+
+    // Give any fetch over the limit a chance to start
+    Thread.sleep(100);
+
+    assertEquals(2, mReader.mActive.get());
+
+    mReader.mRelease.countDown();
+
+    for (CompletableFuture<SequenceRegion> f : futures) {
+      f.get(5, TimeUnit.SECONDS);
+    }
+
+    assertEquals(2, mReader.mMaxActive.get());
+    assertEquals(10, mReader.mCalls.get());
+  }
+}